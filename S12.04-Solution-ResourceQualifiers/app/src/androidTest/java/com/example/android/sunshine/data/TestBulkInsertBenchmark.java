@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Times inserting a forecast of 14, 1,000 and 100,000 days, with the compiled INSERT statement
+ * and with SQLiteDatabase#insert, and logs how many rows a second each manages. The timings
+ * depend too much on the device to fail a test on, so only the number of rows inserted is
+ * checked.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestBulkInsertBenchmark {
+
+    private static final String TAG = TestBulkInsertBenchmark.class.getSimpleName();
+
+    private static final int WARM_UP_ROUNDS = 1;
+    private static final int ROUNDS = 3;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        WeatherProvider.setCompiledInsertEnabled(true);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void testFourteenRows() {
+        compareInserts(14);
+    }
+
+    @Test
+    public void testThousandRows() {
+        compareInserts(1000);
+    }
+
+    @Test
+    public void testHundredThousandRows() {
+        compareInserts(100000);
+    }
+
+    private void compareInserts(int rows) {
+        ForecastBatch batch = new ForecastBatch();
+        for (int i = 0; i < rows; i++) {
+            batch.add(TestUtilities.DATE_NORMALIZED + i * SunshineDateUtils.DAY_IN_MILLIS,
+                    800 + i % 5, i % 30, i % 30 + 8, i % 100, 1000 + i % 40, i % 10, i % 360);
+        }
+
+        long insertNanos = medianInsertNanos(batch, false);
+        long compiledNanos = medianInsertNanos(batch, true);
+        Log.i(TAG, rows + " rows, SQLiteDatabase#insert: " + rowsPerSecond(rows, insertNanos)
+                + " rows/s, compiled statement: " + rowsPerSecond(rows, compiledNanos)
+                + " rows/s");
+    }
+
+    private long medianInsertNanos(ForecastBatch batch, boolean compiled) {
+        WeatherProvider.setCompiledInsertEnabled(compiled);
+        ContentResolver resolver = mContext.getContentResolver();
+
+        long[] nanos = new long[ROUNDS];
+        for (int round = -WARM_UP_ROUNDS; round < ROUNDS; round++) {
+            resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+
+            long start = System.nanoTime();
+            int inserted = WeatherProvider.bulkInsert(resolver, WeatherEntry.CONTENT_URI, batch);
+            if (round >= 0) {
+                nanos[round] = System.nanoTime() - start;
+            }
+            assertEquals(batch.size(), inserted);
+        }
+        Arrays.sort(nanos);
+        return nanos[ROUNDS / 2];
+    }
+
+    private static long rowsPerSecond(int rows, long nanos) {
+        return rows * 1000000000L / Math.max(1, nanos);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class TestForecastBatch {
+
+    @Test
+    public void testAddGrowsPastInitialCapacity() {
+        ForecastBatch batch = new ForecastBatch();
+        for (int i = 0; i < 100; i++) {
+            batch.add(i, 800 + i, -i, i, i % 100, 1000 + i, i / 2.0, i * 3);
+        }
+
+        assertEquals(100, batch.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, batch.getDate(i));
+            assertEquals(800 + i, batch.getWeatherId(i));
+            assertEquals((double) -i, batch.getMinTemp(i));
+            assertEquals((double) i, batch.getMaxTemp(i));
+            assertEquals(i % 100, batch.getHumidity(i));
+            assertEquals(1000.0 + i, batch.getPressure(i));
+            assertEquals(i / 2.0, batch.getWindSpeed(i));
+            assertEquals(i * 3.0, batch.getDegrees(i));
+        }
+    }
+
+    @Test
+    public void testSameDayComparesEveryColumn() {
+        ForecastBatch batch = new ForecastBatch();
+        batch.add(1475280000000L, 801, 1, 2, 3, 4, 5, 6);
+        ForecastBatch other = new ForecastBatch();
+        other.add(1475280000000L, 801, 1, 2, 3, 4, 5, 6);
+        other.add(1475366400000L, 801, 1, 2, 3, 4, 5, 6);
+        other.add(1475280000000L, 802, 1, 2, 3, 4, 5, 6);
+        other.add(1475280000000L, 801, 1, 2, 4, 4, 5, 6);
+        other.add(1475280000000L, 801, 1, 2, 3, 4, 5, 6.5);
+
+        assertTrue(batch.isSameDay(0, other, 0));
+        for (int i = 1; i < other.size(); i++) {
+            assertFalse("Day " + i + " was the same", batch.isSameDay(0, other, i));
+        }
+    }
+
+    @Test
+    public void testAddAndSetCopyOneDay() {
+        ForecastBatch other = new ForecastBatch();
+        other.add(1475280000000L, 801, 1, 2, 3, 4, 5, 6);
+        other.add(1475366400000L, 500, 7, 8, 9, 10, 11, 12);
+
+        ForecastBatch batch = new ForecastBatch();
+        batch.add(other, 1);
+        assertEquals(1, batch.size());
+        assertTrue(batch.isSameDay(0, other, 1));
+
+        batch.set(0, other, 0);
+        assertEquals(1, batch.size());
+        assertTrue(batch.isSameDay(0, other, 0));
+    }
+
+    @Test
+    public void testToContentValuesMatchesParserColumns() {
+        ForecastBatch batch = new ForecastBatch();
+        batch.add(1475280000000L, 321, 65.5, 75.5, 42, 1013.2, 5.5, 180);
+
+        ContentValues expected = new ContentValues();
+        expected.put(WeatherEntry.COLUMN_DATE, 1475280000000L);
+        expected.put(WeatherEntry.COLUMN_HUMIDITY, 42);
+        expected.put(WeatherEntry.COLUMN_PRESSURE, 1013.2);
+        expected.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        expected.put(WeatherEntry.COLUMN_DEGREES, 180.0);
+        expected.put(WeatherEntry.COLUMN_MAX_TEMP, 75.5);
+        expected.put(WeatherEntry.COLUMN_MIN_TEMP, 65.5);
+        expected.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+
+        ContentValues[] values = batch.toContentValues();
+        assertEquals(1, values.length);
+        assertEquals(expected, values[0]);
+    }
+
+    @Test
+    public void testRecycledBatchIsReusedEmpty() {
+        ForecastBatch batch = ForecastBatch.obtain();
+        batch.add(0, 800, 1, 2, 3, 4, 5, 6);
+        batch.recycle();
+
+        ForecastBatch reused = ForecastBatch.obtain();
+        assertSame(batch, reused);
+        assertEquals(0, reused.size());
+        reused.recycle();
+    }
+
+    @Test
+    public void testRecyclingTwiceFails() {
+        ForecastBatch batch = ForecastBatch.obtain();
+        batch.recycle();
+        try {
+            batch.recycle();
+            fail("A batch was recycled twice");
+        } catch (IllegalStateException expected) {
+        }
+        /* Take it back out of the pool so other tests get a clean one */
+        ForecastBatch.obtain();
+    }
+
+    @Test
+    public void testReadingPastSizeFails() {
+        ForecastBatch batch = new ForecastBatch();
+        batch.add(0, 800, 1, 2, 3, 4, 5, 6);
+        batch.clear();
+        try {
+            batch.getDate(0);
+            fail("A cleared batch still had a day in it");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+}
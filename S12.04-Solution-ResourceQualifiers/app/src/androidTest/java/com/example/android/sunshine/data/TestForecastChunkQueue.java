@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class TestForecastChunkQueue {
+
+    @Test
+    public void testChunksAreCopiedAndEndWithNull() throws Exception {
+        ForecastChunkQueue chunks = new ForecastChunkQueue(2, 4);
+        ForecastBatch days = new ForecastBatch();
+        days.add(0, 800, 1, 2, 3, 4, 5, 6);
+        days.add(1, 801, 1, 2, 3, 4, 5, 6);
+
+        chunks.put(days);
+        days.clear();
+        chunks.finish();
+
+        ForecastBatch chunk = chunks.take();
+        assertEquals(2, chunk.size());
+        assertEquals(801, chunk.getWeatherId(1));
+        chunk.recycle();
+        assertNull(chunks.take());
+    }
+
+    /**
+     * A writer can wait for the first chunk before it starts writing, without taking it.
+     */
+    @Test
+    public void testAwaitChunkLeavesTheChunkForTake() throws Exception {
+        final ForecastChunkQueue chunks = new ForecastChunkQueue(1, 2);
+        final ForecastBatch day = new ForecastBatch();
+        day.add(0, 800, 1, 2, 3, 4, 5, 6);
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    chunks.awaitChunk();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        writer.start();
+        writer.join(300);
+        assertTrue("The writer should wait until a chunk arrives", writer.isAlive());
+
+        chunks.put(day);
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+
+        chunks.finish();
+        ForecastBatch chunk = chunks.take();
+        assertEquals(800, chunk.getWeatherId(0));
+        chunk.recycle();
+        assertNull(chunks.take());
+    }
+
+    @Test
+    public void testAbortCancelsTheWriter() throws Exception {
+        ForecastChunkQueue chunks = new ForecastChunkQueue(1, 2);
+        ForecastBatch day = new ForecastBatch();
+        day.add(0, 800, 1, 2, 3, 4, 5, 6);
+
+        /* Even a chunk put before the abort must not reach the writer */
+        chunks.put(day);
+        chunks.put(day);
+        chunks.abort();
+
+        try {
+            chunks.take();
+            fail("The writer should have been told the forecast was abandoned");
+        } catch (CancellationException expected) {
+        }
+    }
+
+    /**
+     * A parser that's ahead of the writer waits for room, and gives up if the writer stops
+     * rather than waiting forever.
+     */
+    @Test
+    public void testPutWaitsForTheWriterAndFailsWhenItStops() throws Exception {
+        final ForecastChunkQueue chunks = new ForecastChunkQueue(1, 1);
+        final ForecastBatch day = new ForecastBatch();
+        day.add(0, 800, 1, 2, 3, 4, 5, 6);
+        chunks.put(day);
+
+        final CountDownLatch putStarted = new CountDownLatch(1);
+        final AtomicReference<Exception> putError = new AtomicReference<Exception>();
+        Thread parser = new Thread() {
+            @Override
+            public void run() {
+                putStarted.countDown();
+                try {
+                    chunks.put(day);
+                } catch (IOException e) {
+                    putError.set(e);
+                }
+            }
+        };
+        parser.start();
+
+        assertTrue(putStarted.await(5, TimeUnit.SECONDS));
+        parser.join(300);
+        assertTrue("The parser should wait while the queue is full", parser.isAlive());
+
+        chunks.close();
+        parser.join(5000);
+        assertTrue(putError.get() instanceof IOException);
+    }
+}
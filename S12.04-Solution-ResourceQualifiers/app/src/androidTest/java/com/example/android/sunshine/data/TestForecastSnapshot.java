@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TestForecastSnapshot {
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long FIRST_DAY = 1475280000000L;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("forecast", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void testSnapshotReadsBackWhatWasWritten() throws Exception {
+        ForecastBatch batch = buildForecast(14);
+        ForecastSnapshot.write(mFile, batch, 40.7128, -74.0059, 1234L);
+
+        ForecastSnapshot snapshot = ForecastSnapshot.read(mFile);
+
+        assertEquals(14, snapshot.size());
+        assertEquals(1234L, snapshot.getWrittenAt());
+        assertEquals(40.7128, snapshot.getCityLatitude());
+        assertEquals(-74.0059, snapshot.getCityLongitude());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(batch.getDate(i), snapshot.getDate(i));
+            assertEquals(batch.getWeatherId(i), snapshot.getWeatherId(i));
+            assertEquals(batch.getMinTemp(i), snapshot.getMinTemp(i));
+            assertEquals(batch.getMaxTemp(i), snapshot.getMaxTemp(i));
+            assertEquals(batch.getHumidity(i), snapshot.getHumidity(i));
+            assertEquals(batch.getPressure(i), snapshot.getPressure(i));
+            assertEquals(batch.getWindSpeed(i), snapshot.getWindSpeed(i));
+            assertEquals(batch.getDegrees(i), snapshot.getDegrees(i));
+        }
+    }
+
+    @Test
+    public void testEmptyForecastReadsBack() throws Exception {
+        ForecastSnapshot.write(mFile, new ForecastBatch(), 0, 0, 0);
+
+        ForecastSnapshot snapshot = ForecastSnapshot.read(mFile);
+
+        assertEquals(0, snapshot.size());
+        assertFalse(snapshot.hasDaysFrom(FIRST_DAY));
+    }
+
+    @Test
+    public void testCursorStartsFromTheGivenDay() throws Exception {
+        ForecastSnapshot.write(mFile, buildForecast(5), 0, 0, 0);
+        ForecastSnapshot snapshot = ForecastSnapshot.read(mFile);
+
+        String[] projection = {WeatherEntry.COLUMN_MAX_TEMP, WeatherEntry.COLUMN_DATE};
+        Cursor cursor = snapshot.toCursor(projection, FIRST_DAY + 2 * DAY_IN_MILLIS);
+
+        assertEquals(3, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(FIRST_DAY + 2 * DAY_IN_MILLIS, cursor.getLong(1));
+        assertEquals(snapshot.getMaxTemp(2), cursor.getDouble(0));
+        cursor.close();
+
+        assertEquals(4, snapshot.indexOfDate(FIRST_DAY + 4 * DAY_IN_MILLIS));
+        assertEquals(-1, snapshot.indexOfDate(FIRST_DAY + 5 * DAY_IN_MILLIS));
+        assertTrue(snapshot.hasDaysFrom(FIRST_DAY + 4 * DAY_IN_MILLIS));
+        assertFalse(snapshot.hasDaysFrom(FIRST_DAY + 5 * DAY_IN_MILLIS));
+    }
+
+    @Test
+    public void testMissingSnapshotReadsAsNull() throws Exception {
+        mFile.delete();
+        assertNull(ForecastSnapshot.read(mFile));
+    }
+
+    @Test
+    public void testSnapshotOfAnotherVersionIsIgnored() throws Exception {
+        ForecastSnapshot.write(mFile, buildForecast(3), 0, 0, 0);
+
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(4);
+            file.writeInt(ForecastSnapshot.VERSION + 1);
+        } finally {
+            file.close();
+        }
+
+        assertNull(ForecastSnapshot.read(mFile));
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsIgnored() throws Exception {
+        ForecastSnapshot.write(mFile, buildForecast(3), 0, 0, 0);
+
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() - 8);
+        } finally {
+            file.close();
+        }
+
+        assertNull(ForecastSnapshot.read(mFile));
+    }
+
+    private static ForecastBatch buildForecast(int days) {
+        ForecastBatch batch = new ForecastBatch();
+        for (int i = 0; i < days; i++) {
+            batch.add(FIRST_DAY + i * DAY_IN_MILLIS, 800 + i, -i - 0.25, i + 0.75, i % 100,
+                    1000 + i, i / 2.0, i * 3);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.content.CursorLoader;
+import android.util.Log;
+
+import com.example.android.sunshine.MainActivity;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Times how long it takes to read the forecast for the main list, from the snapshot and with
+ * the query MainActivity's CursorLoader makes, and logs the median of each. Reading the snapshot
+ * is what lets the list show before that query finishes, so it should be the quicker of the two,
+ * but timings depend too much on the device to fail a test on.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastSnapshotBenchmark {
+
+    private static final String TAG = TestForecastSnapshotBenchmark.class.getSimpleName();
+
+    private static final int DAYS = 14;
+
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 11;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private long mToday;
+
+    @Before
+    public void setUp() {
+        mToday = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        ForecastBatch batch = new ForecastBatch();
+        for (int i = 0; i < DAYS; i++) {
+            batch.add(mToday + i * SunshineDateUtils.DAY_IN_MILLIS, 800 + i % 5, i, i + 10,
+                    50, 1013, 5, 180);
+        }
+
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        WeatherProvider.bulkInsert(resolver, WeatherEntry.CONTENT_URI, batch);
+        assertTrue(ForecastSnapshot.save(mContext, batch, 40.7128, -74.0059));
+    }
+
+    @After
+    public void tearDown() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        ForecastSnapshot.delete(mContext);
+    }
+
+    @Test
+    public void testSnapshotAndDatabaseReads() {
+        long[] snapshotNanos = new long[ROUNDS];
+        long[] queryNanos = new long[ROUNDS];
+        for (int round = -WARM_UP_ROUNDS; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            Cursor snapshot = ForecastSnapshot.load(mContext)
+                    .toCursor(MainActivity.MAIN_FORECAST_PROJECTION, mToday);
+            assertEquals(DAYS, readAll(snapshot));
+            long snapshotDone = System.nanoTime();
+
+            Cursor query = new CursorLoader(mContext,
+                    WeatherEntry.CONTENT_URI,
+                    MainActivity.MAIN_FORECAST_PROJECTION,
+                    WeatherEntry.getSqlSelectForTodayOnwards(),
+                    null,
+                    WeatherEntry.COLUMN_DATE + " ASC").loadInBackground();
+            assertEquals(DAYS, readAll(query));
+            long queryDone = System.nanoTime();
+
+            if (round >= 0) {
+                snapshotNanos[round] = snapshotDone - start;
+                queryNanos[round] = queryDone - snapshotDone;
+            }
+        }
+
+        Arrays.sort(snapshotNanos);
+        Arrays.sort(queryNanos);
+        long snapshotMedian = snapshotNanos[ROUNDS / 2];
+        long queryMedian = queryNanos[ROUNDS / 2];
+        Log.i(TAG, "Snapshot: " + snapshotMedian / 1000 + "us, "
+                + "query: " + queryMedian / 1000 + "us");
+    }
+
+    /* Reads every value of every row, as the list does, and returns the number of rows */
+    private static int readAll(Cursor cursor) {
+        int rows = 0;
+        while (cursor.moveToNext()) {
+            cursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+            cursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
+            cursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
+            cursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+            rows++;
+        }
+        cursor.close();
+        return rows;
+    }
+}
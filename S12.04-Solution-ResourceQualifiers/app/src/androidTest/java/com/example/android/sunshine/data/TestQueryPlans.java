@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.DetailActivity;
+import com.example.android.sunshine.MainActivity;
+import com.example.android.sunshine.data.WeatherContract.HourlyEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.NotificationUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Asks SQLite how it would run each query WeatherProvider serves, with EXPLAIN QUERY PLAN, and
+ * checks that each is answered from the index {@link WeatherDbHelper} says answers it, without
+ * reading the whole table or sorting its rows. A new column in a projection, or a new query,
+ * that the indexes don't answer fails here rather than slowing down quietly. The one whole-table
+ * read, of the stored forecast a sync is merged into, is checked to stay a single unsorted pass.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestQueryPlans {
+
+    private static final String DATABASE_NAME = "query-plans.db";
+
+    /* The names SQLite gives the indexes it creates for each table's UNIQUE (date) */
+    private static final String WEATHER_DATE_INDEX =
+            "sqlite_autoindex_" + WeatherEntry.TABLE_NAME + "_1";
+    private static final String HOURLY_DATE_INDEX =
+            "sqlite_autoindex_" + HourlyEntry.TABLE_NAME + "_1";
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private WeatherDbHelper mHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mContext.deleteDatabase(DATABASE_NAME);
+        mHelper = new WeatherDbHelper(mContext, DATABASE_NAME, false);
+        mDatabase = mHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void testForecastListIsReadFromItsCoveringIndex() {
+        List<String> plan = explain(
+                WeatherEntry.TABLE_NAME,
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+
+        assertNoScanOrSort(plan);
+        assertUsesIndex(plan, "COVERING INDEX " + WeatherDbHelper.WEATHER_FORECAST_INDEX);
+    }
+
+    @Test
+    public void testCheckForEmptyDoesNotScan() {
+        List<String> plan = explain(
+                WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry._ID},
+                WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                null);
+
+        assertNoScanOrSort(plan);
+        /* Both indexes hold the date and, as every index does, the _ID */
+        assertUsesIndex(plan, WEATHER_DATE_INDEX, WeatherDbHelper.WEATHER_FORECAST_INDEX);
+    }
+
+    @Test
+    public void testOneDayIsLookedUpByDate() {
+        String[] today = {Long.toString(TestUtilities.DATE_NORMALIZED)};
+
+        List<String> detailPlan = explain(
+                WeatherEntry.TABLE_NAME,
+                DetailActivity.WEATHER_DETAIL_PROJECTION,
+                WeatherEntry.COLUMN_DATE + " = ? ",
+                today,
+                null);
+        assertNoScanOrSort(detailPlan);
+        assertUsesIndex(detailPlan, WEATHER_DATE_INDEX);
+
+        List<String> notificationPlan = explain(
+                WeatherEntry.TABLE_NAME,
+                NotificationUtils.WEATHER_NOTIFICATION_PROJECTION,
+                WeatherEntry.COLUMN_DATE + " = ? ",
+                today,
+                null);
+        assertNoScanOrSort(notificationPlan);
+        assertUsesIndex(notificationPlan, WEATHER_DATE_INDEX);
+    }
+
+    @Test
+    public void testHourlyRangeDoesNotScan() {
+        String[] range = {
+                Long.toString(TestUtilities.DATE_NORMALIZED),
+                Long.toString(TestUtilities.DATE_NORMALIZED + HourlyEntry.PERIOD_IN_MILLIS * 8)};
+
+        List<String> plan = explain(
+                HourlyEntry.TABLE_NAME,
+                null,
+                HourlyEntry.COLUMN_DATE + " >= ? AND " + HourlyEntry.COLUMN_DATE + " < ?",
+                range,
+                HourlyEntry.COLUMN_DATE + " ASC");
+
+        assertNoScanOrSort(plan);
+        assertUsesIndex(plan, HOURLY_DATE_INDEX);
+    }
+
+    /*
+     * ForecastMerger reads every stored row on purpose, so this only checks that it stays one
+     * pass over the table, with nothing joined or sorted
+     */
+    @Test
+    public void testMergerReadsStoredForecastInOnePass() {
+        String[] tables = {WeatherEntry.TABLE_NAME, HourlyEntry.TABLE_NAME};
+        for (String table : tables) {
+            List<String> plan = explain(table, WeatherProvider.BATCH_COLUMNS, null, null, null);
+
+            assertEquals("Steps reading " + table + ": " + plan, 1, plan.size());
+            assertTrue("Not reading " + table + ": " + plan, plan.get(0).contains(table));
+            assertFalse("Sort: " + plan, plan.get(0).contains("TEMP B-TREE"));
+        }
+    }
+
+    /*
+     * Builds the query the way SQLiteDatabase#query, which WeatherProvider uses, does, and
+     * returns the detail of each step of its plan
+     */
+    private List<String> explain(String table, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        String sql = SQLiteQueryBuilder.buildQueryString(
+                false, table, projection, selection, null, null, sortOrder, null);
+
+        List<String> plan = new ArrayList<String>();
+        Cursor cursor = mDatabase.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        } finally {
+            cursor.close();
+        }
+        assertFalse("No plan for " + sql, plan.isEmpty());
+        return plan;
+    }
+
+    /*
+     * SQLite describes reading a whole table, or a whole index, as SCAN, and sorting rows the
+     * index didn't give it in order as USE TEMP B-TREE
+     */
+    private static void assertNoScanOrSort(List<String> plan) {
+        for (String step : plan) {
+            assertFalse("Full scan: " + plan, step.startsWith("SCAN"));
+            assertFalse("Sort: " + plan, step.contains("TEMP B-TREE"));
+        }
+    }
+
+    /* Passes if any step of the plan reads from any of the given indexes */
+    private static void assertUsesIndex(List<String> plan, String... indexes) {
+        for (String step : plan) {
+            for (String index : indexes) {
+                if (step.contains(index)) {
+                    return;
+                }
+            }
+        }
+        fail("Not using " + Arrays.toString(indexes) + ": " + plan);
+    }
+}
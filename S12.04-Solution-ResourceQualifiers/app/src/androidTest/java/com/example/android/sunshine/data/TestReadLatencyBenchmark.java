@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.MainActivity;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Times the query MainActivity's loader makes while a sync writes 100,000 rows in one
+ * transaction, with write-ahead logging and with SQLite's rollback journal, and logs the 99th
+ * percentile of each. With the rollback journal, a read waits for the whole write to commit;
+ * with write-ahead logging it shouldn't have to wait for it at all. The timings depend too much
+ * on the device to fail a test on, so only the journal mode of each database is checked.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestReadLatencyBenchmark {
+
+    private static final String TAG = TestReadLatencyBenchmark.class.getSimpleName();
+
+    private static final String WAL_DATABASE_NAME = "read-latency-wal.db";
+    private static final String JOURNAL_DATABASE_NAME = "read-latency-journal.db";
+
+    private static final int WRITTEN_ROWS = 100000;
+    private static final int FORECAST_DAYS = 14;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(WAL_DATABASE_NAME);
+        mContext.deleteDatabase(JOURNAL_DATABASE_NAME);
+    }
+
+    @Test
+    public void testReadsDuringWrites() throws Exception {
+        long journalNanos = p99ReadNanosDuringWrite(JOURNAL_DATABASE_NAME, false);
+        long walNanos = p99ReadNanosDuringWrite(WAL_DATABASE_NAME, true);
+        Log.i(TAG, "p99 of reads during a " + WRITTEN_ROWS + " row write, rollback journal: "
+                + journalNanos / 1000 + "us, write-ahead log: " + walNanos / 1000 + "us");
+    }
+
+    /*
+     * Stores a forecast, then writes a very large one on another thread and times the loader's
+     * query over and over until it commits
+     */
+    private long p99ReadNanosDuringWrite(String name, boolean writeAheadLogging)
+            throws Exception {
+        mContext.deleteDatabase(name);
+        final WeatherDbHelper helper = new WeatherDbHelper(mContext, name, writeAheadLogging);
+        try {
+            long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+            SQLiteDatabase db = helper.getWritableDatabase();
+
+            /* Before Honeycomb, both databases have a rollback journal */
+            boolean expectWal = writeAheadLogging
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+            assertEquals(name, expectWal, "wal".equalsIgnoreCase(getJournalMode(db)));
+
+            db.beginTransaction();
+            try {
+                insertDays(db, today, FORECAST_DAYS);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            final CountDownLatch writing = new CountDownLatch(1);
+            final long firstWrittenDay = today + FORECAST_DAYS * SunshineDateUtils.DAY_IN_MILLIS;
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SQLiteDatabase db = helper.getWritableDatabase();
+                    db.beginTransaction();
+                    try {
+                        writing.countDown();
+                        insertDays(db, firstWrittenDay, WRITTEN_ROWS);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                }
+            });
+            writer.start();
+            writing.await();
+
+            long[] nanos = new long[1024];
+            int reads = 0;
+            String[] selectionArgs = {Long.toString(today)};
+            do {
+                long start = System.nanoTime();
+                Cursor cursor = helper.getReadableDatabase().query(
+                        WeatherEntry.TABLE_NAME,
+                        MainActivity.MAIN_FORECAST_PROJECTION,
+                        WeatherEntry.COLUMN_DATE + " >= ?",
+                        selectionArgs,
+                        null,
+                        null,
+                        WeatherEntry.COLUMN_DATE + " ASC");
+                /* getCount runs the query and fills the cursor's first window */
+                cursor.getCount();
+                cursor.close();
+                if (reads == nanos.length) {
+                    nanos = Arrays.copyOf(nanos, reads * 2);
+                }
+                nanos[reads++] = System.nanoTime() - start;
+            } while (writer.isAlive());
+            writer.join();
+
+            Arrays.sort(nanos, 0, reads);
+            return nanos[Math.min(reads - 1, reads * 99 / 100)];
+        } finally {
+            helper.close();
+        }
+    }
+
+    private static String getJournalMode(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA journal_mode", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void insertDays(SQLiteDatabase db, long firstDay, int days) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + WeatherEntry.TABLE_NAME
+                + " (" + WeatherEntry.COLUMN_DATE
+                + ", " + WeatherEntry.COLUMN_WEATHER_ID
+                + ", " + WeatherEntry.COLUMN_MIN_TEMP
+                + ", " + WeatherEntry.COLUMN_MAX_TEMP
+                + ", " + WeatherEntry.COLUMN_HUMIDITY
+                + ", " + WeatherEntry.COLUMN_PRESSURE
+                + ", " + WeatherEntry.COLUMN_WIND_SPEED
+                + ", " + WeatherEntry.COLUMN_DEGREES
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        try {
+            for (int i = 0; i < days; i++) {
+                insert.bindLong(1, firstDay + i * SunshineDateUtils.DAY_IN_MILLIS);
+                insert.bindLong(2, 800 + i % 5);
+                insert.bindDouble(3, i % 30);
+                insert.bindDouble(4, i % 30 + 8);
+                insert.bindLong(5, i % 100);
+                insert.bindDouble(6, 1000 + i % 40);
+                insert.bindDouble(7, i % 10);
+                insert.bindDouble(8, i % 360);
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+}
@@ -193,7 +193,7 @@ public class TestSunshineDatabase {
 
     @Test
     public void testDatabaseVersionWasIncremented() {
-        int expectedDatabaseVersion = 3;
+        int expectedDatabaseVersion = 5;
         String databaseVersionShouldBe1 = "Database version should be "
                 + expectedDatabaseVersion + " but isn't."
                 + "\n Database version: ";
@@ -382,9 +382,10 @@ public class TestSunshineDatabase {
     }
 
     /**
-     * This method tests the {@link WeatherDbHelper#onUpgrade(SQLiteDatabase, int, int)}. The proper
-     * behavior for this method in our case is to simply DROP (or delete) the weather table from
-     * the database and then have the table recreated.
+     * This method tests the {@link WeatherDbHelper#onUpgrade(SQLiteDatabase, int, int)} from a
+     * version there are no migrations for. The proper behavior for this method in that case is to
+     * simply DROP (or delete) the weather table from the database and then have the table
+     * recreated. Upgrades that keep the data are tested in {@link TestWeatherMigrations}.
      */
     @Test
     public void testOnUpgradeBehavesCorrectly() {
@@ -37,6 +37,10 @@ public class TestUriMatcher {
     private static final Uri TEST_WEATHER_DIR = WeatherContract.WeatherEntry.CONTENT_URI;
     private static final Uri TEST_WEATHER_WITH_DATE_DIR = WeatherContract.WeatherEntry
             .buildWeatherUriWithDate(TestUtilities.DATE_NORMALIZED);
+    private static final Uri TEST_HOURLY_DIR = WeatherContract.HourlyEntry.CONTENT_URI;
+    private static final Uri TEST_HOURLY_WITH_RANGE_DIR = WeatherContract.HourlyEntry
+            .buildHourlyUriWithRange(TestUtilities.DATE_NORMALIZED,
+                    TestUtilities.DATE_NORMALIZED + WeatherContract.HourlyEntry.PERIOD_IN_MILLIS);
 
     private static final String weatherCodeVariableName = "CODE_WEATHER";
     private static int REFLECTED_WEATHER_CODE;
@@ -44,6 +48,12 @@ public class TestUriMatcher {
     private static final String weatherCodeWithDateVariableName = "CODE_WEATHER_WITH_DATE";
     private static int REFLECTED_WEATHER_WITH_DATE_CODE;
 
+    private static final String hourlyCodeVariableName = "CODE_HOURLY";
+    private static int REFLECTED_HOURLY_CODE;
+
+    private static final String hourlyCodeWithRangeVariableName = "CODE_HOURLY_WITH_RANGE";
+    private static int REFLECTED_HOURLY_WITH_RANGE_CODE;
+
     private UriMatcher testMatcher;
 
     @Before
@@ -61,6 +71,14 @@ public class TestUriMatcher {
                     WeatherProvider.class,
                     weatherCodeWithDateVariableName);
 
+            REFLECTED_HOURLY_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    hourlyCodeVariableName);
+
+            REFLECTED_HOURLY_WITH_RANGE_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    hourlyCodeWithRangeVariableName);
+
         } catch (NoSuchFieldException e) {
             fail(studentReadableNoSuchField(e));
         } catch (IllegalAccessException e) {
@@ -101,5 +119,13 @@ public class TestUriMatcher {
         assertEquals(weatherWithDateUriCodeDoesNotMatch,
                 expectedWeatherWithDateCode,
                 actualWeatherWithDateCode);
+
+        assertEquals("Error: The CODE_HOURLY URI was matched incorrectly.",
+                REFLECTED_HOURLY_CODE,
+                testMatcher.match(TEST_HOURLY_DIR));
+
+        assertEquals("Error: The CODE_HOURLY_WITH_RANGE URI was matched incorrectly.",
+                REFLECTED_HOURLY_WITH_RANGE_CODE,
+                testMatcher.match(TEST_HOURLY_WITH_RANGE_DIR));
     }
 }
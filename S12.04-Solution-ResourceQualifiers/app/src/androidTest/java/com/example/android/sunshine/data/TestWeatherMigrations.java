@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Creates databases as each earlier version of Sunshine left them, opens them with
+ * {@link WeatherDbHelper}, and checks that they end up with the same schema as a new database.
+ * Databases that can be migrated must keep their forecast; older ones are rebuilt empty.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherMigrations {
+
+    private static final String UPGRADED_DATABASE_NAME = "migration-upgraded.db";
+    private static final String FRESH_DATABASE_NAME = "migration-fresh.db";
+
+    private static final int FORECAST_DAYS = 14;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(UPGRADED_DATABASE_NAME);
+        mContext.deleteDatabase(FRESH_DATABASE_NAME);
+    }
+
+    @Test
+    public void testEveryVersionUpgradesToTheCurrentSchema() {
+        int currentVersion = getCurrentVersion();
+        String expectedSchema = describeSchema(FRESH_DATABASE_NAME);
+
+        for (int version = 1; version < currentVersion; version++) {
+            mContext.deleteDatabase(UPGRADED_DATABASE_NAME);
+            createDatabase(UPGRADED_DATABASE_NAME, version);
+
+            assertEquals("Upgrading from version " + version,
+                    expectedSchema,
+                    describeSchema(UPGRADED_DATABASE_NAME));
+        }
+    }
+
+    @Test
+    public void testMigratedDatabasesKeepTheirForecast() {
+        int currentVersion = getCurrentVersion();
+
+        for (int version = WeatherMigrations.OLDEST_MIGRATABLE_VERSION;
+                version < currentVersion; version++) {
+            mContext.deleteDatabase(UPGRADED_DATABASE_NAME);
+            createDatabase(UPGRADED_DATABASE_NAME, version);
+
+            assertKeptForecast(UPGRADED_DATABASE_NAME, "Upgrading from version " + version);
+        }
+    }
+
+    @Test
+    public void testDatabasesTooOldToMigrateAreRebuilt() {
+        for (int version = 1; version < WeatherMigrations.OLDEST_MIGRATABLE_VERSION; version++) {
+            mContext.deleteDatabase(UPGRADED_DATABASE_NAME);
+            createDatabase(UPGRADED_DATABASE_NAME, version);
+
+            WeatherDbHelper helper = new WeatherDbHelper(mContext, UPGRADED_DATABASE_NAME, false);
+            try {
+                Cursor cursor = helper.getReadableDatabase().query(WeatherEntry.TABLE_NAME,
+                        null, null, null, null, null, null);
+                assertEquals(0, cursor.getCount());
+                cursor.close();
+            } finally {
+                helper.close();
+            }
+        }
+    }
+
+    /*
+     * Rebuilds the weather table the way a step that changes its columns' constraints would,
+     * within the upgrade's transaction, and checks the database still has the current schema and
+     * its forecast
+     */
+    @Test
+    public void testRebuildingTheWeatherTableKeepsTheForecast() {
+        int currentVersion = getCurrentVersion();
+        createDatabase(UPGRADED_DATABASE_NAME, currentVersion);
+
+        SQLiteDatabase db = openDatabase(UPGRADED_DATABASE_NAME);
+        try {
+            db.beginTransaction();
+            try {
+                WeatherMigrations.rebuildTable(db, WeatherEntry.TABLE_NAME,
+                        createWeatherTableSql(), WeatherProvider.BATCH_COLUMNS);
+                db.execSQL("CREATE INDEX " + WeatherDbHelper.WEATHER_FORECAST_INDEX
+                        + " ON " + WeatherEntry.TABLE_NAME + " ("
+                        + WeatherEntry.COLUMN_DATE + ", "
+                        + WeatherEntry.COLUMN_MAX_TEMP + ", "
+                        + WeatherEntry.COLUMN_MIN_TEMP + ", "
+                        + WeatherEntry.COLUMN_WEATHER_ID + ")");
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            db.close();
+        }
+
+        assertEquals(describeSchema(FRESH_DATABASE_NAME), describeSchema(UPGRADED_DATABASE_NAME));
+        assertKeptForecast(UPGRADED_DATABASE_NAME, "Rebuilding the weather table");
+    }
+
+    @Test
+    public void testRebuildTableKeepsItsRows() {
+        SQLiteDatabase db = openDatabase(UPGRADED_DATABASE_NAME);
+        try {
+            db.execSQL("CREATE TABLE rebuilt (_id INTEGER PRIMARY KEY, value INTEGER)");
+            for (int i = 0; i < 10; i++) {
+                db.execSQL("INSERT INTO rebuilt (value) VALUES (" + i + ")");
+            }
+
+            /* Adding a constraint is one of the changes ALTER TABLE can't make */
+            WeatherMigrations.rebuildTable(db, "rebuilt",
+                    "CREATE TABLE rebuilt (_id INTEGER PRIMARY KEY, value INTEGER NOT NULL, "
+                            + "UNIQUE (value))",
+                    new String[]{"_id", "value"});
+
+            Cursor cursor = db.rawQuery("SELECT _id, value FROM rebuilt ORDER BY _id", null);
+            assertEquals(10, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals(i + 1, cursor.getLong(0));
+                assertEquals(i, cursor.getInt(1));
+            }
+            cursor.close();
+
+            Cursor tables = db.rawQuery(
+                    "SELECT name FROM sqlite_master WHERE name = 'rebuilt_old'", null);
+            assertEquals(0, tables.getCount());
+            tables.close();
+        } finally {
+            db.close();
+        }
+    }
+
+    private int getCurrentVersion() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, FRESH_DATABASE_NAME, false);
+        try {
+            return helper.getReadableDatabase().getVersion();
+        } finally {
+            helper.close();
+        }
+    }
+
+    /*
+     * Creates a database as the given version of Sunshine left it, with a forecast stored in it.
+     * Version 3 is the first one with the weather table of today. Migrated databases of later
+     * versions are built from it by the released steps, which never change. Versions 1 and 2 are
+     * stood in for by a weather table of a different shape, which can only be rebuilt.
+     */
+    private void createDatabase(String name, int version) {
+        SQLiteDatabase db = openDatabase(name);
+        try {
+            if (version < WeatherMigrations.OLDEST_MIGRATABLE_VERSION) {
+                db.execSQL("CREATE TABLE " + WeatherEntry.TABLE_NAME + " ("
+                        + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "location_id INTEGER NOT NULL, "
+                        + "date TEXT NOT NULL, "
+                        + "short_desc TEXT NOT NULL)");
+            } else {
+                db.execSQL(createWeatherTableSql());
+                for (int i = 0; i < FORECAST_DAYS; i++) {
+                    db.insert(WeatherEntry.TABLE_NAME, null, createDay(i));
+                }
+                WeatherMigrations.migrate(db, WeatherMigrations.OLDEST_MIGRATABLE_VERSION, version);
+            }
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    /* The weather table as version 3 created it */
+    private static String createWeatherTableSql() {
+        return "CREATE TABLE " + WeatherEntry.TABLE_NAME + " ("
+                + WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, "
+                + WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL,"
+                + WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, "
+                + WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, "
+                + WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, "
+                + WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, "
+                + WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, "
+                + WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, "
+                + " UNIQUE (" + WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+    }
+
+    /* Opens a database with WeatherDbHelper and checks it has the forecast createDatabase stored */
+    private void assertKeptForecast(String name, String message) {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, name, false);
+        try {
+            Cursor cursor = helper.getReadableDatabase().query(WeatherEntry.TABLE_NAME,
+                    null, null, null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals("Days kept: " + message, FORECAST_DAYS, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                TestUtilities.validateCurrentRecord(message + ", day " + i, cursor, createDay(i));
+            }
+            cursor.close();
+        } finally {
+            helper.close();
+        }
+    }
+
+    private SQLiteDatabase openDatabase(String name) {
+        File file = mContext.getDatabasePath(name);
+        file.getParentFile().mkdirs();
+        return SQLiteDatabase.openOrCreateDatabase(file, null);
+    }
+
+    private static ContentValues createDay(int day) {
+        ContentValues values = new ContentValues();
+        /* Doubles for the REAL columns, so they read back as the same strings */
+        values.put(WeatherEntry.COLUMN_DATE,
+                TestUtilities.DATE_NORMALIZED + day * SunshineDateUtils.DAY_IN_MILLIS);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + day);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, day - 10.0);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, day + 0.5);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, 50.0 + day);
+        values.put(WeatherEntry.COLUMN_PRESSURE, 1000.0 + day);
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, day / 4.0);
+        values.put(WeatherEntry.COLUMN_DEGREES, day * 10.0);
+        return values;
+    }
+
+    /*
+     * Opens a database with WeatherDbHelper, upgrading or creating it, and describes its tables'
+     * columns and indexes, sorted so that the order they were created in doesn't matter
+     */
+    private String describeSchema(String name) {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, name, false);
+        try {
+            SQLiteDatabase db = helper.getReadableDatabase();
+            List<String> lines = new ArrayList<String>();
+
+            Cursor tables = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table'"
+                    + " AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+            while (tables.moveToNext()) {
+                String table = tables.getString(0);
+
+                Cursor columns = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+                while (columns.moveToNext()) {
+                    lines.add(table + " column " + columns.getString(1)
+                            + " " + columns.getString(2)
+                            + " notnull=" + columns.getInt(3)
+                            + " pk=" + columns.getInt(5));
+                }
+                columns.close();
+
+                Cursor indexes = db.rawQuery("PRAGMA index_list(" + table + ")", null);
+                while (indexes.moveToNext()) {
+                    String index = indexes.getString(1);
+                    StringBuilder line = new StringBuilder(table)
+                            .append(" index unique=").append(indexes.getInt(2));
+                    Cursor indexColumns = db.rawQuery("PRAGMA index_info(" + index + ")", null);
+                    while (indexColumns.moveToNext()) {
+                        line.append(' ').append(indexColumns.getString(2));
+                    }
+                    indexColumns.close();
+                    lines.add(line.toString());
+                }
+                indexes.close();
+            }
+            tables.close();
+
+            assertTrue("No tables in " + name, !lines.isEmpty());
+            Collections.sort(lines);
+            StringBuilder schema = new StringBuilder();
+            for (String line : lines) {
+                schema.append(line).append('\n');
+            }
+            return schema.toString();
+        } finally {
+            helper.close();
+        }
+    }
+}
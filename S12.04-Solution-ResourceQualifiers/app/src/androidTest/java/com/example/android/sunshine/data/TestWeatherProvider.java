@@ -27,6 +27,8 @@ import android.net.Uri;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -34,6 +36,7 @@ import org.junit.runner.RunWith;
 import static com.example.android.sunshine.data.TestUtilities.BULK_INSERT_RECORDS_TO_INSERT;
 import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
@@ -326,6 +329,311 @@ public class TestWeatherProvider {
         cursor.close();
     }
 
+    /**
+     * This test inserts a {@link ForecastBatch} with
+     * {@link WeatherProvider#bulkInsert(ContentResolver, Uri, ForecastBatch)}, which hands the
+     * batch straight to our provider, and checks that the rows are the same ones the batch's
+     * ContentValues would have inserted.
+     */
+    @Test
+    public void testBulkInsertForecastBatch() {
+
+        ContentValues[] bulkInsertTestContentValues = createBulkInsertTestWeatherValues();
+
+        ForecastBatch batch = ForecastBatch.obtain();
+        for (ContentValues values : bulkInsertTestContentValues) {
+            batch.add(values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE),
+                    values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY).intValue(),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES));
+        }
+        ContentValues[] expectedValues = batch.toContentValues();
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                true,
+                weatherObserver);
+
+        int insertCount = WeatherProvider.bulkInsert(
+                contentResolver,
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                batch);
+        batch.recycle();
+
+        weatherObserver.waitForNotificationOrFail();
+        contentResolver.unregisterContentObserver(weatherObserver);
+
+        assertEquals("Number of expected records inserted does not match actual inserted "
+                + "record count", BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testBulkInsertForecastBatch. Error validating WeatherEntry " + i,
+                    cursor,
+                    expectedValues[i]);
+        }
+
+        cursor.close();
+    }
+
+    /**
+     * This test inserts a forecast with SQLiteDatabase#insert, and then the same days again with
+     * the compiled INSERT statement, and checks that the second forecast replaced the first day
+     * for day, as the ON CONFLICT REPLACE of the table makes the first way do.
+     */
+    @Test
+    public void testCompiledInsertReplacesExistingDays() {
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        ForecastBatch batch = ForecastBatch.obtain();
+        try {
+            for (int i = 0; i < 14; i++) {
+                batch.add(TestUtilities.DATE_NORMALIZED + i * SunshineDateUtils.DAY_IN_MILLIS,
+                        800, 1, 2, 3, 4, 5, 6);
+            }
+            WeatherProvider.setCompiledInsertEnabled(false);
+            WeatherProvider.bulkInsert(
+                    contentResolver,
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    batch);
+
+            batch.clear();
+            for (int i = 0; i < 14; i++) {
+                batch.add(TestUtilities.DATE_NORMALIZED + i * SunshineDateUtils.DAY_IN_MILLIS,
+                        500 + i, -i, i + 0.5, i, 1000 + i, i / 4.0, i * 10);
+            }
+            WeatherProvider.setCompiledInsertEnabled(true);
+            int insertCount = WeatherProvider.bulkInsert(
+                    contentResolver,
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    batch);
+            assertEquals(14, insertCount);
+
+            ContentValues[] expectedValues = batch.toContentValues();
+            Cursor cursor = contentResolver.query(
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    null,
+                    null,
+                    null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+            assertEquals(14, cursor.getCount());
+            cursor.moveToFirst();
+            for (int i = 0; i < 14; i++, cursor.moveToNext()) {
+                TestUtilities.validateCurrentRecord(
+                        "testCompiledInsertReplacesExistingDays. Error validating day " + i,
+                        cursor,
+                        expectedValues[i]);
+            }
+            cursor.close();
+        } finally {
+            WeatherProvider.setCompiledInsertEnabled(true);
+            batch.recycle();
+        }
+    }
+
+    /**
+     * This test replaces a stored forecast with
+     * {@link WeatherProvider#replaceForecast(ContentResolver, Uri, ForecastBatch)} and checks that
+     * only the days that changed were written: unchanged and updated days keep their row ids,
+     * days the new forecast doesn't have and days before today are gone, and replacing the
+     * forecast with itself doesn't notify anyone.
+     */
+    @Test
+    public void testReplaceForecastOnlyWritesChanges() throws Exception {
+
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        long day = SunshineDateUtils.DAY_IN_MILLIS;
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        /* Yesterday, and the next 14 days */
+        ForecastBatch batch = ForecastBatch.obtain();
+        try {
+            for (int i = -1; i < 14; i++) {
+                batch.add(today + i * day, 800, 1, 2, 3, 4, 5, 6);
+            }
+            WeatherProvider.bulkInsert(
+                    contentResolver,
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    batch);
+            long[] idsBefore = queryIds(contentResolver);
+
+            /* Change the third day, and leave out the last one */
+            batch.clear();
+            for (int i = 0; i < 13; i++) {
+                batch.add(today + i * day, i == 2 ? 500 : 800, 1, 2, 3, 4, 5, 6);
+            }
+
+            TestUtilities.TestContentObserver weatherObserver =
+                    TestUtilities.getTestContentObserver();
+            contentResolver.registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    true,
+                    weatherObserver);
+            int daysStored = WeatherProvider.replaceForecast(
+                    contentResolver,
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    batch);
+            weatherObserver.waitForNotificationOrFail();
+            contentResolver.unregisterContentObserver(weatherObserver);
+            assertEquals(13, daysStored);
+
+            Cursor cursor = contentResolver.query(
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    new String[]{
+                            WeatherContract.WeatherEntry._ID,
+                            WeatherContract.WeatherEntry.COLUMN_DATE,
+                            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID},
+                    null,
+                    null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals(13, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals("Day " + i + " was rewritten", idsBefore[i + 1], cursor.getLong(0));
+                assertEquals(today + i * day, cursor.getLong(1));
+                assertEquals(i == 2 ? 500 : 800, cursor.getInt(2));
+            }
+            cursor.close();
+
+            /* The same forecast again changes nothing, so no one is told about it */
+            TestUtilities.TestContentObserver unchangedObserver =
+                    TestUtilities.getTestContentObserver();
+            contentResolver.registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    true,
+                    unchangedObserver);
+            daysStored = WeatherProvider.replaceForecast(
+                    contentResolver,
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    batch);
+            Thread.sleep(500);
+            contentResolver.unregisterContentObserver(unchangedObserver);
+            unchangedObserver.mHT.quit();
+            assertEquals(13, daysStored);
+            assertFalse("An unchanged forecast notified observers",
+                    unchangedObserver.mContentChanged);
+        } finally {
+            batch.recycle();
+        }
+    }
+
+    /**
+     * This test replaces the forecast with one that has some dates twice, and checks that each
+     * date is stored and counted once, and that the same forecast again changes nothing.
+     */
+    @Test
+    public void testReplaceForecastStoresRepeatedDatesOnce() throws Exception {
+
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        long day = SunshineDateUtils.DAY_IN_MILLIS;
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        ForecastBatch batch = ForecastBatch.obtain();
+        try {
+            int[] days = {0, 1, 0, 2, 1};
+            for (int i : days) {
+                batch.add(today + i * day, 800 + i, 1, 2, 3, 4, 5, 6);
+            }
+
+            int daysStored = WeatherProvider.replaceForecast(
+                    contentResolver,
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    batch);
+            assertEquals(3, daysStored);
+            assertEquals(3, queryIds(contentResolver).length);
+
+            TestUtilities.TestContentObserver unchangedObserver =
+                    TestUtilities.getTestContentObserver();
+            contentResolver.registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    true,
+                    unchangedObserver);
+            daysStored = WeatherProvider.replaceForecast(
+                    contentResolver,
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    batch);
+            Thread.sleep(500);
+            contentResolver.unregisterContentObserver(unchangedObserver);
+            unchangedObserver.mHT.quit();
+            assertEquals(3, daysStored);
+            assertFalse("An unchanged forecast notified observers",
+                    unchangedObserver.mContentChanged);
+        } finally {
+            batch.recycle();
+        }
+    }
+
+    private static long[] queryIds(ContentResolver contentResolver) {
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
+
+    /**
+     * This test inserts an hourly forecast and checks that a range of it can be queried, from
+     * the first time up to, but not including, the second.
+     */
+    @Test
+    public void testHourlyRangeQuery() {
+
+        long start = TestUtilities.DATE_NORMALIZED;
+        long period = WeatherContract.HourlyEntry.PERIOD_IN_MILLIS;
+
+        ForecastBatch batch = ForecastBatch.obtain();
+        for (int i = 0; i < 16; i++) {
+            batch.add(start + i * period, 800, 10 + i, 12 + i, 50, 1010, 3, 90);
+        }
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        int insertCount = WeatherProvider.bulkInsert(
+                contentResolver,
+                WeatherContract.HourlyEntry.CONTENT_URI,
+                batch);
+        batch.recycle();
+        assertEquals(16, insertCount);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.HourlyEntry.buildHourlyUriWithRange(
+                        start + 2 * period, start + 10 * period),
+                new String[]{WeatherContract.HourlyEntry.COLUMN_DATE},
+                null,
+                null,
+                WeatherContract.HourlyEntry.COLUMN_DATE + " ASC");
+
+        assertNotNull(cursor);
+        assertEquals(8, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(start + 2 * period, cursor.getLong(0));
+        cursor.moveToLast();
+        assertEquals(start + 9 * period, cursor.getLong(0));
+        cursor.close();
+    }
+
     /**
      * This test deletes all records from the weather table using the ContentProvider. It also
      * verifies that registered ContentObservers receive onChange callbacks when data is deleted.
@@ -442,6 +750,7 @@ public class TestWeatherProvider {
 
         /* The delete method deletes all of the desired rows from the table, not the table itself */
         database.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.HourlyEntry.TABLE_NAME, null, null);
 
         /* Always close the database when you're through with it */
         database.close();
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.data.WeatherDbHelper;
+import com.example.android.sunshine.utilities.ForecastResponseCache;
+import com.example.android.sunshine.utilities.NetworkUtils;
+import com.example.android.sunshine.utils.StubHttpServer;
+import com.example.android.sunshine.utils.StubHttpServer.StubResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.HttpURLConnection;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Runs whole syncs against a {@link StubHttpServer}, to check that a sync after the stored
+ * forecast was thrown away downloads it again, rather than asking the server whether the
+ * forecast it no longer has has changed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSunshineSyncTask {
+
+    private static final String ETAG = "\"forecast-v1\"";
+
+    private static final int DAYS = 3;
+    private static final String FORECAST_JSON = "{"
+            + "\"city\":{\"id\":1,\"name\":\"Test\",\"coord\":{\"lon\":-74.0059,\"lat\":40.7128}},"
+            + "\"cod\":\"200\",\"list\":["
+            + "{\"dt\":1479211200,\"temp\":{\"min\":8.25,\"max\":15.75},\"pressure\":1013.25,"
+            + "\"humidity\":81,\"weather\":[{\"id\":500}],\"speed\":4.1,\"deg\":225},"
+            + "{\"dt\":1479297600,\"temp\":{\"min\":11.5,\"max\":20},\"pressure\":1009,"
+            + "\"humidity\":60,\"weather\":[{\"id\":800}],\"speed\":2,\"deg\":90},"
+            + "{\"dt\":1479384000,\"temp\":{\"min\":9,\"max\":17.5},\"pressure\":1011.5,"
+            + "\"humidity\":72,\"weather\":[{\"id\":801}],\"speed\":3.5,\"deg\":180}"
+            + "]}";
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private StubHttpServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        clearStoredForecast();
+        mServer = new StubHttpServer();
+        mServer.start();
+        NetworkUtils.setForecastBaseUrl(mServer.getUrl("/weather").toString());
+        NetworkUtils.setHourlyForecastBaseUrl(null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        NetworkUtils.setForecastBaseUrl(BuildConfig.FORECAST_BASE_URL);
+        NetworkUtils.setHourlyForecastBaseUrl(BuildConfig.HOURLY_FORECAST_BASE_URL);
+        mServer.shutdown();
+        clearStoredForecast();
+        SunshinePreferences.resetLocationCoordinates(mContext);
+    }
+
+    @Test
+    public void testSyncAfterTablesAreDroppedDownloadsTheForecast() throws Exception {
+        syncAndCheckStored();
+
+        /* What onUpgrade does with a database too old to migrate */
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            helper.onUpgrade(db, 1, db.getVersion());
+        } finally {
+            helper.close();
+        }
+        assertEquals(0, getStoredDays());
+
+        syncAndCheckUnconditional();
+    }
+
+    @Test
+    public void testSyncAfterWeatherIsDeletedDownloadsTheForecast() throws Exception {
+        syncAndCheckStored();
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        assertEquals(0, getStoredDays());
+
+        syncAndCheckUnconditional();
+    }
+
+    /* The first sync has no validators to send, and saves the ones the server sends */
+    private void syncAndCheckStored() {
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON)
+                .setHeader("ETag", ETAG));
+
+        assertFalse(SunshineSyncTask.syncWeather(mContext));
+        assertEquals(DAYS, getStoredDays());
+    }
+
+    /*
+     * A server that still has the same forecast would answer a conditional request with a 304,
+     * so the request after the forecast was thrown away must not be one
+     */
+    private void syncAndCheckUnconditional() {
+        ForecastResponseCache.getInstance(mContext).clear();
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON)
+                .setHeader("ETag", ETAG));
+
+        assertFalse(SunshineSyncTask.syncWeather(mContext));
+
+        assertEquals(2, mServer.getRequests().size());
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(1);
+        assertNull(request.getHeader("If-None-Match"));
+        assertEquals(DAYS, getStoredDays());
+    }
+
+    private int getStoredDays() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void clearStoredForecast() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        SunshinePreferences.resetForecastValidators(mContext);
+        ForecastResponseCache.getInstance(mContext).clear();
+        ForecastSnapshot.delete(mContext);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Times parsing a bulk response of a few hundred cities on one thread and on a thread per core,
+ * and logs the median of each. On a device with more than one core, the threads should make it
+ * quicker, but by how much depends too much on the device to fail a test on.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestBulkParseBenchmark {
+
+    private static final String TAG = TestBulkParseBenchmark.class.getSimpleName();
+
+    private static final int CITIES = 300;
+
+    private static final int WARM_UP_ROUNDS = 2;
+    private static final int ROUNDS = 7;
+
+    @Test
+    public void testParsingOnOneThreadAndOnEveryCore() throws Exception {
+        String[] cities = new String[CITIES];
+        for (int i = 0; i < CITIES; i++) {
+            cities[i] = TestOpenWeatherBulkJsonUtils.buildCity(i);
+        }
+        String json = TestOpenWeatherBulkJsonUtils.buildBulkResponse(cities);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        ExecutorService oneThread = Executors.newSingleThreadExecutor();
+        ExecutorService threadPerCore = Executors.newFixedThreadPool(cores);
+        try {
+            long sequentialNanos = medianParseNanos(json, oneThread);
+            long parallelNanos = medianParseNanos(json, threadPerCore);
+            Log.i(TAG, CITIES + " cities on 1 thread: " + sequentialNanos / 1000 + "us, on "
+                    + cores + " threads: " + parallelNanos / 1000 + "us");
+        } finally {
+            oneThread.shutdownNow();
+            threadPerCore.shutdownNow();
+        }
+    }
+
+    private static long medianParseNanos(String json, ExecutorService executor)
+            throws Exception {
+        long[] nanos = new long[ROUNDS];
+        for (int round = -WARM_UP_ROUNDS; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            List<ParsedForecast> forecasts =
+                    OpenWeatherBulkJsonUtils.getForecastsFromJson(json, executor, null);
+            if (round >= 0) {
+                nanos[round] = System.nanoTime() - start;
+            }
+
+            assertEquals(CITIES, forecasts.size());
+            for (ParsedForecast forecast : forecasts) {
+                forecast.recycle();
+            }
+        }
+        Arrays.sort(nanos);
+        return nanos[ROUNDS / 2];
+    }
+}
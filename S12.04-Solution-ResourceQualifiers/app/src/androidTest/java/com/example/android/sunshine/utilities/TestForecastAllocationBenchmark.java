@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.os.Build;
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.ForecastBatch;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Counts the objects allocated parsing the forecasts of a thousand locations into batches, which
+ * is all a sync does before WeatherProvider binds the days to its compiled insert, and parsing
+ * them and then turning them into ContentValues, as the sync did before it wrote batches. The
+ * ContentValues take at least one object a day, and box every column.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastAllocationBenchmark {
+
+    private static final String TAG = TestForecastAllocationBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 1000;
+    private static final int DAYS = 14;
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testBatchesAllocateLessThanContentValues() throws Exception {
+        String[] forecasts = new String[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            forecasts[i] = TestOpenWeatherJsonUtils.buildForecast(DAYS, new Random(i));
+        }
+
+        /* The first pass loads the classes and fills the batch pool, as earlier syncs would */
+        parseAll(forecasts, true);
+
+        long[] contentValues = countAllocations(forecasts, true);
+        long[] batches = countAllocations(forecasts, false);
+
+        Log.i(TAG, LOCATIONS + " locations, ContentValues: " + contentValues[0] + " objects, "
+                + contentValues[1] + " bytes, " + contentValues[2] + " GCs; batches: "
+                + batches[0] + " objects, " + batches[1] + " bytes, " + batches[2] + " GCs");
+
+        assertTrue("Batches allocated " + batches[0] + " objects, ContentValues "
+                        + contentValues[0],
+                contentValues[0] - batches[0] >= LOCATIONS * DAYS);
+    }
+
+    /* Returns the objects and bytes allocated parsing every forecast, and the GCs that caused */
+    @SuppressWarnings("deprecation")
+    private static long[] countAllocations(String[] forecasts, boolean toContentValues)
+            throws Exception {
+        long gcs = getGcCount();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        try {
+            parseAll(forecasts, toContentValues);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return new long[]{
+                Debug.getThreadAllocCount(),
+                Debug.getThreadAllocSize(),
+                getGcCount() - gcs};
+    }
+
+    private static void parseAll(String[] forecasts, boolean toContentValues)
+            throws Exception {
+        for (String json : forecasts) {
+            ParsedForecast forecast =
+                    OpenWeatherJsonUtils.getForecastFromReader(new StringReader(json), null);
+            ForecastBatch weather = forecast.getWeather();
+            if (toContentValues) {
+                ContentValues[] values = weather.toContentValues();
+                assertEquals(DAYS, values.length);
+            } else {
+                assertEquals(DAYS, weather.size());
+            }
+            forecast.recycle();
+        }
+    }
+
+    /* The number of garbage collections so far, where the runtime tells us */
+    private static long getGcCount() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return 0;
+        }
+        String count = Debug.getRuntimeStat("art.gc.gc-count");
+        return count != null ? Long.parseLong(count) : 0;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherProvider;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Times what a sync does with a forecast once it has downloaded: parsing it and replacing the
+ * stored forecast with it, and logs how long a row of each forecast takes. The hourly forecast
+ * has eight times as many rows as the daily one, so if a row of it costs much more than a daily
+ * one, syncing it makes syncs noticeably slower. The timings are only logged, as they depend too
+ * much on the device and what else it is doing to pass or fail a test on.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastIngestBenchmark {
+
+    private static final String TAG = TestForecastIngestBenchmark.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int PERIODS = DAYS * 8;
+
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 11;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(WeatherContract.HourlyEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void testHourlyAndDailyIngest() throws Exception {
+        String daily = TestOpenWeatherJsonUtils.buildForecast(DAYS, new Random(13));
+        String hourly = TestOpenWeatherHourlyJsonUtils.buildHourlyForecast(
+                PERIODS, new Random(13));
+
+        long dailyNanos = medianIngestNanos(daily, false);
+        long hourlyNanos = medianIngestNanos(hourly, true);
+
+        double dailyPerRow = (double) dailyNanos / DAYS;
+        double hourlyPerRow = (double) hourlyNanos / PERIODS;
+        Log.i(TAG, "Daily: " + DAYS + " rows in " + dailyNanos / 1000 + "us, "
+                + "hourly: " + PERIODS + " rows in " + hourlyNanos / 1000 + "us, "
+                + "an hourly row costs " + hourlyPerRow / dailyPerRow + " daily rows");
+    }
+
+    private long medianIngestNanos(String json, boolean hourly) throws Exception {
+        long[] nanos = new long[ROUNDS];
+        for (int round = -WARM_UP_ROUNDS; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            ingest(json, hourly);
+            if (round >= 0) {
+                nanos[round] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(nanos);
+        return nanos[ROUNDS / 2];
+    }
+
+    /* Does what a sync does with a downloaded forecast */
+    private void ingest(String json, boolean hourly) throws Exception {
+        ParsedForecast forecast = hourly
+                ? OpenWeatherHourlyJsonUtils.getHourlyForecastFromReader(
+                        new StringReader(json), null)
+                : OpenWeatherJsonUtils.getForecastFromReader(new StringReader(json), null);
+        Uri uri = hourly
+                ? WeatherContract.HourlyEntry.CONTENT_URI
+                : WeatherContract.WeatherEntry.CONTENT_URI;
+
+        ContentResolver resolver = mContext.getContentResolver();
+        try {
+            resolver.delete(uri, null, null);
+            int inserted = WeatherProvider.bulkInsert(resolver, uri, forecast.getWeather());
+            assertEquals(hourly ? PERIODS : DAYS, inserted);
+        } finally {
+            forecast.recycle();
+        }
+    }
+}
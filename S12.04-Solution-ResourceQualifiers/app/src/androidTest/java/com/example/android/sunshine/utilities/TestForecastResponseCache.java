@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utils.StubHttpServer;
+import com.example.android.sunshine.utils.StubHttpServer.StubResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the ForecastResponseCache, both on its own and as used by NetworkUtils.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastResponseCache {
+
+    private static final String FORECAST_JSON = "{\"cod\":\"200\",\"list\":[]}";
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private StubHttpServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        SunshinePreferences.resetForecastValidators(mContext);
+        ForecastResponseCache.getInstance(mContext).clear();
+        mServer = new StubHttpServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+        ForecastResponseCache.getInstance(mContext).clear();
+    }
+
+    /**
+     * URLs that only differ in parameter order or coordinate precision are the same request.
+     */
+    @Test
+    public void testEquivalentUrlsShareACacheKey() throws Exception {
+        String canonical = ForecastResponseCache.canonicalize(new URL(
+                "https://andfun-weather.udacity.com/weather?lat=37.4219999&lon=-122.0840575"
+                        + "&mode=json&units=metric&cnt=14"));
+
+        assertEquals(canonical, ForecastResponseCache.canonicalize(new URL(
+                "HTTPS://Andfun-Weather.udacity.com/weather?cnt=14&units=metric&mode=json"
+                        + "&lon=-122.084&lat=37.422")));
+
+        assertFalse(canonical.equals(ForecastResponseCache.canonicalize(new URL(
+                "https://andfun-weather.udacity.com/weather?lat=40.7128&lon=-74.0059"
+                        + "&mode=json&units=metric&cnt=14"))));
+    }
+
+    @Test
+    public void testMaxAgeIsReadFromCacheControl() {
+        assertEquals(TimeUnit.SECONDS.toMillis(600),
+                ForecastResponseCache.getMaxAgeMillis("public, max-age=600"));
+        assertEquals(0, ForecastResponseCache.getMaxAgeMillis("no-store"));
+        assertEquals(0, ForecastResponseCache.getMaxAgeMillis("no-cache, max-age=600"));
+        assertTrue(ForecastResponseCache.getMaxAgeMillis(null) > 0);
+    }
+
+    /**
+     * Once a response has been read, an equivalent request must be served from the cache
+     * without going to the network.
+     */
+    @Test
+    public void testFreshResponseIsServedFromCache() throws Exception {
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON)
+                .setHeader("Cache-Control", "max-age=600"));
+
+        ForecastResponse networkResponse = NetworkUtils.openResponseFromHttpUrl(
+                mContext, mServer.getUrl("/weather?lat=37.4219999&lon=-122.0840575"));
+        assertFalse(networkResponse.isFromCache());
+        assertEquals(FORECAST_JSON, networkResponse.readString());
+        networkResponse.close();
+
+        ForecastResponse cachedResponse = NetworkUtils.openResponseFromHttpUrl(
+                mContext, mServer.getUrl("/weather?lon=-122.084&lat=37.422"));
+        assertTrue(cachedResponse.isFromCache());
+        assertEquals(FORECAST_JSON, cachedResponse.readString());
+        cachedResponse.close();
+
+        assertEquals(1, mServer.getRequests().size());
+    }
+
+    /**
+     * Responses the server doesn't allow us to store, and responses that weren't read to the
+     * end, must not be cached.
+     */
+    @Test
+    public void testUncacheableAndPartialResponsesAreNotCached() throws Exception {
+        URL url = mServer.getUrl("/weather?q=94043");
+
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON)
+                .setHeader("Cache-Control", "no-store"));
+        NetworkUtils.openResponseFromHttpUrl(mContext, url).readString();
+        assertNull(ForecastResponseCache.getInstance(mContext).get(url));
+
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON));
+        ForecastResponse partialResponse = NetworkUtils.openResponseFromHttpUrl(mContext, url);
+        partialResponse.getInputStream().read();
+        partialResponse.close();
+        assertNull(ForecastResponseCache.getInstance(mContext).get(url));
+    }
+
+    /**
+     * Rows are dated relative to the day a response is parsed on, so a response fetched on
+     * another UTC day must not be served, even if its max-age hasn't run out.
+     */
+    @Test
+    public void testResponsesFromAnotherDayAreStale() throws Exception {
+        File directory = new File(mContext.getCacheDir(), "test-forecast-responses");
+        ForecastResponseCache cache = new ForecastResponseCache(directory, 1024 * 1024);
+        cache.clear();
+
+        URL url = mServer.getUrl("/weather?q=94043");
+        store(cache, url, FORECAST_JSON);
+
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        ForecastResponse cachedResponse = cache.get(url, today);
+        assertNotNull(cachedResponse);
+        cachedResponse.close();
+
+        assertNull(cache.get(url, today + SunshineDateUtils.DAY_IN_MILLIS));
+        assertNull(cache.get(url, today));
+
+        cache.clear();
+    }
+
+    /**
+     * When the cache grows past its limit, the least recently used entry is evicted first.
+     */
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        File directory = new File(mContext.getCacheDir(), "test-forecast-responses");
+        /* Room for two entries, but not three */
+        ForecastResponseCache cache = new ForecastResponseCache(directory, 2 * 1024 + 512);
+        cache.clear();
+
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 1024) {
+            body.append(FORECAST_JSON);
+        }
+
+        URL first = mServer.getUrl("/weather?q=1");
+        URL second = mServer.getUrl("/weather?q=2");
+        URL third = mServer.getUrl("/weather?q=3");
+
+        store(cache, first, body.toString());
+        store(cache, second, body.toString());
+
+        /* Make sure the entries' timestamps differ, then use the first entry */
+        Thread.sleep(1100);
+        cache.get(first).close();
+
+        store(cache, third, body.toString());
+
+        assertNotNull(cache.get(first));
+        assertNull(cache.get(second));
+        assertNotNull(cache.get(third));
+
+        cache.clear();
+    }
+
+    private void store(ForecastResponseCache cache, URL url, String body) throws Exception {
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, body));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        InputStream in = cache.wrapForStore(url, connection, connection.getInputStream());
+        byte[] buffer = new byte[512];
+        while (in.read(buffer) != -1) {
+            /* Reading the body is what writes it to the cache */
+        }
+        in.close();
+        connection.disconnect();
+        Thread.sleep(1100);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks that JsonNumberParser gives exactly the double Double.parseDouble does, bit for bit.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestJsonNumberParser {
+
+    @Test
+    public void testForecastValuesMatchParseDouble() {
+        Random random = new Random(20);
+        for (int i = 0; i < 100000; i++) {
+            /* Temperatures, pressures, wind speeds and directions, as the server writes them */
+            assertSameDouble(String.format(Locale.US, "%.2f", random.nextDouble() * 200 - 100));
+            assertSameDouble(String.format(Locale.US, "%.2f", 900 + random.nextDouble() * 200));
+            assertSameDouble(String.format(Locale.US, "%.1f", random.nextDouble() * 360));
+            assertSameDouble(Integer.toString(random.nextInt(1000)));
+        }
+    }
+
+    @Test
+    public void testArbitraryDoublesMatchParseDouble() {
+        Random random = new Random(21);
+        for (int i = 0; i < 100000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                assertSameDouble(Double.toString(value));
+            }
+            assertSameDouble(Double.toString(random.nextDouble() * 1000));
+            assertSameDouble(String.format(Locale.US, "%.6e", random.nextGaussian()));
+        }
+    }
+
+    @Test
+    public void testEdgeCasesMatchParseDouble() {
+        String[] numbers = {
+                "0", "-0", "0.0", "-0.0", "00", "1", "-1", "0.1", ".5", "5.", "1e0", "1E+2",
+                "1e-2", "-1.5e-3", "123456789012345", "1234567890123456", "0.000000000000001",
+                "9007199254740993", "1e22", "1e23", "1e-22", "1e-23", "179769313486231570e291",
+                "1e400", "-1e400", "1e-400", "4.9e-324", "2.2250738585072014E-308",
+                "0.30000000000000004", "1000000000000000000000", "1013.25", "1e00001",
+        };
+        for (String number : numbers) {
+            assertSameDouble(number);
+        }
+    }
+
+    @Test
+    public void testNonNumbersAreRejectedLikeParseDouble() {
+        String[] notNumbers = {"", "-", ".", "e5", "1e", "1e+", "1.2.3", "--1", "abc", "1,5"};
+        for (String notNumber : notNumbers) {
+            try {
+                JsonNumberParser.parseDouble(notNumber);
+                fail("\"" + notNumber + "\" should not have been read as a number");
+            } catch (NumberFormatException expected) {
+            }
+        }
+
+        /* Double.parseDouble allows a few things JSON doesn't, and so does the parser */
+        for (String javaNumber : new String[]{" 1 ", "+1", "1d", "1f", "NaN", "-Infinity"}) {
+            assertSameDouble(javaNumber);
+        }
+    }
+
+    private static void assertSameDouble(String number) {
+        assertEquals(number,
+                Double.doubleToRawLongBits(Double.parseDouble(number)),
+                Double.doubleToRawLongBits(JsonNumberParser.parseDouble(number)));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times converting the numbers of a few thousand forecasts with JsonNumberParser and with
+ * Double.parseDouble, and logs the median of each. The parser is only worth having if it's the
+ * quicker of the two, but the timings depend too much on the device to fail a test on.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestJsonNumberParserBenchmark {
+
+    private static final String TAG = TestJsonNumberParserBenchmark.class.getSimpleName();
+
+    /* 14 days of six numbers each, for a thousand forecasts */
+    private static final int NUMBERS = 1000 * 14 * 6;
+
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 11;
+
+    @Test
+    public void testParserAndParseDouble() {
+        Random random = new Random(22);
+        String[] numbers = new String[NUMBERS];
+        for (int i = 0; i < NUMBERS; i += 6) {
+            double low = random.nextDouble() * 40 - 10;
+            numbers[i] = String.format(Locale.US, "%.2f", low);
+            numbers[i + 1] = String.format(Locale.US, "%.2f", low + random.nextDouble() * 10);
+            numbers[i + 2] = String.format(Locale.US, "%.2f", 990 + random.nextDouble() * 40);
+            numbers[i + 3] = Integer.toString(random.nextInt(100));
+            numbers[i + 4] = String.format(Locale.US, "%.2f", random.nextDouble() * 10);
+            numbers[i + 5] = Integer.toString(random.nextInt(360));
+        }
+
+        long[] parserNanos = new long[ROUNDS];
+        long[] parseDoubleNanos = new long[ROUNDS];
+        double sum = 0;
+        for (int round = -WARM_UP_ROUNDS; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String number : numbers) {
+                sum += JsonNumberParser.parseDouble(number);
+            }
+            long parserDone = System.nanoTime();
+            for (String number : numbers) {
+                sum -= Double.parseDouble(number);
+            }
+            long parseDoubleDone = System.nanoTime();
+
+            if (round >= 0) {
+                parserNanos[round] = parserDone - start;
+                parseDoubleNanos[round] = parseDoubleDone - parserDone;
+            }
+        }
+
+        Arrays.sort(parserNanos);
+        Arrays.sort(parseDoubleNanos);
+        long parser = parserNanos[ROUNDS / 2];
+        long parseDouble = parseDoubleNanos[ROUNDS / 2];
+        Log.i(TAG, NUMBERS + " numbers, parser: " + parser / 1000 + "us ("
+                + NUMBERS * 1000000000L / parser + "/s), Double.parseDouble: "
+                + parseDouble / 1000 + "us (" + NUMBERS * 1000000000L / parseDouble
+                + "/s), checksum " + sum);
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utils.StubHttpServer;
+import com.example.android.sunshine.utils.StubHttpServer.StubResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests NetworkUtils against a {@link StubHttpServer} running on the device, so that we can
+ * control exactly what the "weather server" sends back.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestNetworkUtils {
+
+    private static final String FORECAST_JSON = "{\"cod\":\"200\",\"list\":[]}";
+    private static final String ETAG = "\"forecast-v1\"";
+    private static final String LAST_MODIFIED = "Tue, 15 Nov 2016 08:12:31 GMT";
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private StubHttpServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        SunshinePreferences.resetForecastValidators(mContext);
+        ForecastResponseCache.getInstance(mContext).clear();
+        mServer = new StubHttpServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        NetworkUtils.setTransport(new PooledHttpTransport(15 * 1000, 20 * 1000));
+        NetworkUtils.setMaxResponseBytes(NetworkUtils.DEFAULT_MAX_RESPONSE_BYTES);
+        mServer.shutdown();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        SunshinePreferences.resetForecastValidators(mContext);
+        ForecastResponseCache.getInstance(mContext).clear();
+    }
+
+    /**
+     * The first request for a URL has nothing to validate against, so it must be unconditional.
+     */
+    @Test
+    public void testFirstRequestIsUnconditional() throws Exception {
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON)
+                .setHeader("ETag", ETAG)
+                .setHeader("Last-Modified", LAST_MODIFIED));
+
+        URL url = mServer.getUrl("/weather?q=94043");
+        ForecastResponse response = NetworkUtils.openResponseFromHttpUrl(mContext, url);
+        try {
+            assertFalse(response.isNotModified());
+            assertEquals(FORECAST_JSON, response.readString());
+            assertEquals(ETAG, response.getETag());
+            assertEquals(LAST_MODIFIED, response.getLastModified());
+        } finally {
+            response.close();
+        }
+
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(0);
+        assertNull(request.getHeader("If-None-Match"));
+        assertNull(request.getHeader("If-Modified-Since"));
+    }
+
+    /**
+     * Once validators have been saved for a URL, the next request for that URL must send them,
+     * and a 304 from the server must be reported as not modified with an empty body.
+     */
+    @Test
+    public void testStoredValidatorsAreSentAndNotModifiedIsReported() throws Exception {
+        URL url = mServer.getUrl("/weather?q=94043");
+        storeTodaysWeather();
+        SunshinePreferences.saveForecastValidators(
+                mContext, url.toString(), ETAG, LAST_MODIFIED);
+
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_NOT_MODIFIED, ""));
+
+        ForecastResponse response = NetworkUtils.openResponseFromHttpUrl(mContext, url);
+        try {
+            assertTrue(response.isNotModified());
+            assertNull(response.readString());
+        } finally {
+            response.close();
+        }
+
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(0);
+        assertEquals(ETAG, request.getHeader("If-None-Match"));
+        assertEquals(LAST_MODIFIED, request.getHeader("If-Modified-Since"));
+    }
+
+    /**
+     * Validators describe the forecast we stored. Once it's gone from the database, a 304 would
+     * leave us with nothing to show, so the request must be unconditional.
+     */
+    @Test
+    public void testValidatorsAreNotSentWithoutAStoredForecast() throws Exception {
+        URL url = mServer.getUrl("/weather?q=94043");
+        SunshinePreferences.saveForecastValidators(
+                mContext, url.toString(), ETAG, LAST_MODIFIED);
+
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON));
+
+        ForecastResponse response = NetworkUtils.openResponseFromHttpUrl(mContext, url);
+        try {
+            assertFalse(response.isNotModified());
+        } finally {
+            response.close();
+        }
+
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(0);
+        assertNull(request.getHeader("If-None-Match"));
+        assertNull(request.getHeader("If-Modified-Since"));
+    }
+
+    /**
+     * Validators only describe the forecast for the URL they came from. Requesting a different
+     * location must not be made conditional on them.
+     */
+    @Test
+    public void testValidatorsAreNotSentForADifferentUrl() throws Exception {
+        SunshinePreferences.saveForecastValidators(
+                mContext, mServer.getUrl("/weather?q=94043").toString(), ETAG, LAST_MODIFIED);
+
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON));
+
+        URL otherUrl = mServer.getUrl("/weather?q=10001");
+        ForecastResponse response = NetworkUtils.openResponseFromHttpUrl(mContext, otherUrl);
+        try {
+            assertFalse(response.isNotModified());
+            assertEquals(FORECAST_JSON, response.readString());
+        } finally {
+            response.close();
+        }
+
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(0);
+        assertNull(request.getHeader("If-None-Match"));
+        assertNull(request.getHeader("If-Modified-Since"));
+    }
+
+    /**
+     * A gzip encoded body must be decompressed transparently, and the counters must report both
+     * the compressed and the decompressed size.
+     */
+    @Test
+    public void testGzipBodyIsDecompressed() throws Exception {
+        byte[] compressed = gzip(FORECAST_JSON);
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, compressed)
+                .setHeader("Content-Encoding", "gzip"));
+
+        ForecastResponse response =
+                NetworkUtils.openResponseFromHttpUrl(mServer.getUrl("/weather?q=94043"));
+        try {
+            assertEquals(FORECAST_JSON, response.readString());
+            assertEquals(compressed.length, response.getCompressedByteCount());
+            assertEquals(FORECAST_JSON.length(), response.getDecodedByteCount());
+        } finally {
+            response.close();
+        }
+
+        String acceptEncoding = mServer.getRequests().get(0).getHeader("Accept-Encoding");
+        assertTrue(acceptEncoding.contains("gzip"));
+        assertTrue(acceptEncoding.contains("deflate"));
+    }
+
+    /**
+     * "deflate" bodies come both zlib wrapped and raw in the wild, and we should read either.
+     */
+    @Test
+    public void testDeflateBodyIsDecompressed() throws Exception {
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, deflate(FORECAST_JSON, false))
+                .setHeader("Content-Encoding", "deflate"));
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, deflate(FORECAST_JSON, true))
+                .setHeader("Content-Encoding", "deflate"));
+
+        for (int i = 0; i < 2; i++) {
+            String body = NetworkUtils.getResponseFromHttpUrl(mServer.getUrl("/weather"));
+            assertEquals(FORECAST_JSON, body);
+        }
+    }
+
+    /**
+     * With the pooled transport, sequential requests to the same server must share one
+     * connection, even if the caller didn't read the whole body.
+     */
+    @Test
+    public void testPooledTransportReusesConnections() throws Exception {
+        NetworkUtils.setTransport(new PooledHttpTransport(5000, 5000));
+        for (int i = 0; i < 3; i++) {
+            mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON));
+        }
+
+        NetworkUtils.getResponseFromHttpUrl(mServer.getUrl("/weather?q=94043"));
+        NetworkUtils.getResponseFromHttpUrl(mServer.getUrl("/weather?q=10001"));
+
+        /* Read a single byte and leave the rest of the body for the transport to drain */
+        ForecastResponse response =
+                NetworkUtils.openResponseFromHttpUrl(mServer.getUrl("/weather?q=60601"));
+        response.getInputStream().read();
+        response.close();
+
+        assertEquals(3, mServer.getRequests().size());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    /**
+     * The disconnecting transport must open a new connection for every request.
+     */
+    @Test
+    public void testDisconnectingTransportDoesNotReuseConnections() throws Exception {
+        NetworkUtils.setTransport(new DisconnectingHttpTransport(5000, 5000));
+        for (int i = 0; i < 2; i++) {
+            mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON));
+            NetworkUtils.getResponseFromHttpUrl(mServer.getUrl("/weather?q=94043"));
+        }
+
+        assertEquals(2, mServer.getConnectionCount());
+    }
+
+    /**
+     * Error responses must be reported with their status code and Retry-After delay, so that
+     * the sync can decide whether to try again.
+     */
+    @Test
+    public void testErrorStatusIsReported() throws Exception {
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_UNAVAILABLE, "Down for maintenance")
+                .setHeader("Retry-After", "2"));
+
+        try {
+            NetworkUtils.openResponseFromHttpUrl(mServer.getUrl("/weather?q=94043"));
+            fail("A 503 should have been reported as an HttpStatusException");
+        } catch (HttpStatusException e) {
+            assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, e.getStatusCode());
+            assertEquals(2000, e.getRetryAfterMillis());
+            assertTrue(e.isServerError());
+        }
+    }
+
+    /**
+     * Fetching many locations must return one result per location, in order, with failures
+     * reported per location, and must never have more requests in flight than allowed.
+     */
+    @Test
+    public void testFetchForecastsIsParallelButBounded() throws Exception {
+        final int locationCount = 8;
+        final int maxParallelRequests = 3;
+
+        List<ForecastLocation> locations = new ArrayList<ForecastLocation>();
+        List<URL> urls = new ArrayList<URL>();
+        for (int i = 0; i < locationCount; i++) {
+            String path = "/weather?q=" + i;
+            locations.add(ForecastLocation.forQuery(Integer.toString(i)));
+            urls.add(mServer.getUrl(path));
+
+            StubResponse response = i == 5
+                    ? new StubResponse(HttpURLConnection.HTTP_NOT_FOUND, "Unknown location")
+                    : new StubResponse(HttpURLConnection.HTTP_OK, "{\"location\":" + i + "}");
+            mServer.setResponse(path, response.setDelay(100));
+        }
+
+        List<ForecastResult> results =
+                NetworkUtils.fetchForecasts(locations, urls, maxParallelRequests);
+
+        assertEquals(locationCount, results.size());
+        for (int i = 0; i < locationCount; i++) {
+            ForecastResult result = results.get(i);
+            assertEquals(locations.get(i), result.getLocation());
+            if (i == 5) {
+                assertFalse(result.isSuccessful());
+                assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                        ((HttpStatusException) result.getError()).getStatusCode());
+            } else {
+                assertTrue(result.isSuccessful());
+                assertEquals("{\"location\":" + i + "}", result.getJson());
+            }
+        }
+
+        assertTrue(mServer.getMaxConcurrentRequests() > 1);
+        assertTrue(mServer.getMaxConcurrentRequests() <= maxParallelRequests);
+    }
+
+    /**
+     * A response whose Content-Length is over the limit must be refused before it is read.
+     */
+    @Test
+    public void testOversizedContentLengthIsRefused() throws Exception {
+        NetworkUtils.setMaxResponseBytes(FORECAST_JSON.length() - 1);
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON));
+
+        try {
+            NetworkUtils.openResponseFromHttpUrl(mServer.getUrl("/weather?q=94043"));
+            fail("A body over the limit should have been refused");
+        } catch (ResponseTooLargeException e) {
+            assertEquals(FORECAST_JSON.length() - 1, e.getMaxBytes());
+        }
+    }
+
+    /**
+     * A small compressed body that decompresses to more than the limit must fail while it is
+     * being read, rather than being decompressed into memory.
+     */
+    @Test
+    public void testOversizedDecompressedBodyIsAborted() throws Exception {
+        StringBuilder forecast = new StringBuilder();
+        while (forecast.length() < 64 * 1024) {
+            forecast.append(FORECAST_JSON);
+        }
+        byte[] compressed = gzip(forecast.toString());
+        NetworkUtils.setMaxResponseBytes(16 * 1024);
+        assertTrue(compressed.length < 16 * 1024);
+
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, compressed)
+                .setHeader("Content-Encoding", "gzip"));
+
+        ForecastResponse response =
+                NetworkUtils.openResponseFromHttpUrl(mServer.getUrl("/weather?q=94043"));
+        try {
+            response.readString();
+            fail("A body over the limit should have been aborted");
+        } catch (ResponseTooLargeException e) {
+            assertTrue(response.getDecodedByteCount() <= 16 * 1024 + 1);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Once a body has been aborted for being too large, the pooled transport must drop its
+     * connection rather than download the rest of the body to reuse it.
+     */
+    @Test
+    public void testAbortedBodyIsNotDrained() throws Exception {
+        NetworkUtils.setTransport(new PooledHttpTransport(5000, 5000));
+        StringBuilder forecast = new StringBuilder();
+        while (forecast.length() < 64 * 1024) {
+            forecast.append(FORECAST_JSON);
+        }
+        NetworkUtils.setMaxResponseBytes(16 * 1024);
+
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, gzip(forecast.toString()))
+                .setHeader("Content-Encoding", "gzip"));
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON));
+
+        ForecastResponse response =
+                NetworkUtils.openResponseFromHttpUrl(mServer.getUrl("/weather?q=94043"));
+        try {
+            response.readString();
+            fail("A body over the limit should have been aborted");
+        } catch (ResponseTooLargeException e) {
+            /* Expected */
+        } finally {
+            response.close();
+        }
+        NetworkUtils.getResponseFromHttpUrl(mServer.getUrl("/weather?q=94043"));
+
+        assertEquals(2, mServer.getConnectionCount());
+    }
+
+    /**
+     * A body that ends before its Content-Length must fail with a TruncatedResponseException,
+     * which is worth retrying, rather than look like a complete forecast.
+     */
+    @Test
+    public void testTruncatedBodyIsReported() throws Exception {
+        mServer.enqueue(new StubResponse(HttpURLConnection.HTTP_OK, FORECAST_JSON)
+                .truncateAfter(10));
+
+        try {
+            NetworkUtils.getResponseFromHttpUrl(mServer.getUrl("/weather?q=94043"));
+            fail("A truncated body should have been reported");
+        } catch (TruncatedResponseException e) {
+            assertEquals(10, e.getBytesRead());
+            assertEquals(FORECAST_JSON.length(), e.getExpectedBytes());
+            assertTrue(RetryPolicy.isRetryable(e));
+        }
+    }
+
+    private static byte[] gzip(String body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(body.getBytes("UTF-8"));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(String body, boolean raw) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(
+                bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+        out.write(body.getBytes("UTF-8"));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /* Stores a day of weather for today, as a sync that the validators came from would have */
+    private void storeTodaysWeather() {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_DATE, SunshineDateUtils.getNormalizedUtcDateForToday());
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, 8.0);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 15.0);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, 80.0);
+        values.put(WeatherEntry.COLUMN_PRESSURE, 1013.0);
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, 4.0);
+        values.put(WeatherEntry.COLUMN_DEGREES, 225.0);
+        mContext.getContentResolver().bulkInsert(
+                WeatherEntry.CONTENT_URI, new ContentValues[]{values});
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class TestOpenWeatherBulkJsonUtils {
+
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testEachCityMatchesItsOwnForecast() throws Exception {
+        String[] cities = new String[20];
+        for (int i = 0; i < cities.length; i++) {
+            cities[i] = buildCity(i);
+        }
+
+        List<ParsedForecast> forecasts = OpenWeatherBulkJsonUtils.getForecastsFromJson(
+                buildBulkResponse(cities), mExecutor, null);
+
+        assertEquals(cities.length, forecasts.size());
+        for (int i = 0; i < cities.length; i++) {
+            ParsedForecast expected = OpenWeatherJsonUtils.getForecastFromJson(cities[i], null);
+            ParsedForecast actual = forecasts.get(i);
+
+            assertEquals(expected.getCityLatitude(), actual.getCityLatitude());
+            ContentValues[] expectedValues = expected.getWeather().toContentValues();
+            ContentValues[] actualValues = actual.getWeather().toContentValues();
+            assertEquals(expectedValues.length, actualValues.length);
+            for (int day = 0; day < expectedValues.length; day++) {
+                assertEquals("City " + i + ", day " + day,
+                        expectedValues[day], actualValues[day]);
+            }
+
+            expected.recycle();
+            actual.recycle();
+        }
+    }
+
+    @Test
+    public void testCitiesWithErrorsAreNull() throws Exception {
+        String[] cities = {
+                buildCity(0),
+                "{\"cod\":\"404\",\"message\":\"city not found\"}",
+                buildCity(2),
+                "{\"cod\":\"200\",\"city\":{}}",
+                buildCity(4),
+        };
+
+        List<ParsedForecast> forecasts = OpenWeatherBulkJsonUtils.getForecastsFromJson(
+                buildBulkResponse(cities), mExecutor, null);
+
+        assertEquals(5, forecasts.size());
+        assertNull(forecasts.get(1));
+        assertNull(forecasts.get(3));
+        for (int i = 0; i < cities.length; i += 2) {
+            assertEquals(14, forecasts.get(i).getWeather().size());
+            forecasts.get(i).recycle();
+        }
+    }
+
+    @Test
+    public void testReportsOfEveryCityAreAddedUp() throws Exception {
+        String broken = buildCity(1).replaceFirst("\"humidity\":\\d+,", "");
+        String[] cities = {buildCity(0), broken, broken, buildCity(3), buildCity(4)};
+
+        ForecastValidationReport report = new ForecastValidationReport();
+        List<ParsedForecast> forecasts = OpenWeatherBulkJsonUtils.getForecastsFromJson(
+                buildBulkResponse(cities), mExecutor, report);
+
+        assertEquals(5 * 14, report.getDayCount());
+        assertEquals(2, report.getSkippedDays());
+        assertEquals(2, report.getFieldErrors("humidity"));
+        for (ParsedForecast forecast : forecasts) {
+            forecast.recycle();
+        }
+    }
+
+    /**
+     * Only the brackets of the JSON itself split the cities, not ones in strings, however they
+     * are escaped.
+     */
+    @Test
+    public void testBracketsInStringsAreIgnored() throws Exception {
+        String city = buildCity(0).replace("\"name\":\"Test\"",
+                "\"name\":\"a \\\"list\\\":[{,}] \\\\\", \"list\":\"[\"");
+        List<String> cities = OpenWeatherBulkJsonUtils.splitCities(
+                "{\"message\":\"]\",\"list\" : [ " + city + " , " + buildCity(1) + " ]}");
+
+        assertEquals(2, cities.size());
+        assertEquals(city, cities.get(0));
+        assertEquals(buildCity(1), cities.get(1));
+    }
+
+    @Test
+    public void testEmptyListHasNoCities() throws Exception {
+        assertEquals(0, OpenWeatherBulkJsonUtils.splitCities(
+                "{\"cod\":\"200\",\"cnt\":0,\"list\":[ ]}").size());
+    }
+
+    /**
+     * A string value at the top level is never taken for the key of the value after it.
+     */
+    @Test
+    public void testOnlyKeysNameTheList() throws Exception {
+        List<String> cities = OpenWeatherBulkJsonUtils.splitCities(
+                "{\"cod\":\"200\",\"message\":\"list\",\"other\":[{\"a\":1}],"
+                        + "\"list\":[" + buildCity(0) + "]}");
+
+        assertEquals(1, cities.size());
+        assertEquals(buildCity(0), cities.get(0));
+    }
+
+    /**
+     * Dropping an empty element would give every city after it the wrong place in the list.
+     */
+    @Test
+    public void testEmptyElementsAreRejected() throws Exception {
+        String[] lists = {
+                "[" + buildCity(0) + ",," + buildCity(1) + "]",
+                "[ ," + buildCity(0) + "]",
+                "[" + buildCity(0) + ", ]",
+        };
+        for (String list : lists) {
+            try {
+                OpenWeatherBulkJsonUtils.splitCities("{\"cod\":\"200\",\"list\":" + list + "}");
+                fail("An empty element should have been rejected: " + list);
+            } catch (JSONException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testErrorResponseParsesToNull() throws Exception {
+        assertNull(OpenWeatherBulkJsonUtils.getForecastsFromJson(
+                "{\"cod\":\"500\",\"message\":\"Internal error\"}", mExecutor, null));
+    }
+
+    @Test
+    public void testUnbalancedResponseIsRejected() throws Exception {
+        String truncated = buildBulkResponse(new String[]{buildCity(0), buildCity(1)});
+        truncated = truncated.substring(0, truncated.length() / 2);
+        try {
+            OpenWeatherBulkJsonUtils.getForecastsFromJson(truncated, mExecutor, null);
+            fail("A truncated bulk response should have been rejected");
+        } catch (JSONException expected) {
+        }
+    }
+
+    /* A forecast for one city, with coordinates of its own */
+    static String buildCity(int city) {
+        return TestOpenWeatherJsonUtils.buildForecast(14, new Random(city))
+                .replace("\"lat\":40.7128", String.format(Locale.US, "\"lat\":%.4f", -60.0 + city));
+    }
+
+    static String buildBulkResponse(String[] cities) {
+        StringBuilder json = new StringBuilder("{\"cod\":\"200\",\"cnt\":" + cities.length
+                + ",\"list\":[");
+        for (int i = 0; i < cities.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(cities[i]);
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.WeatherContract.HourlyEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Checks that both hourly parsers read the three-hourly forecast the same way.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestOpenWeatherHourlyJsonUtils {
+
+    private static final long START_SECONDS = 1487246400L;
+
+    @Test
+    public void testStreamingParserMatchesDomParser() throws Exception {
+        String json = buildHourlyForecast(112, new Random(5));
+
+        ParsedForecast dom = OpenWeatherHourlyJsonUtils.getHourlyForecastFromJson(json, null);
+        ParsedForecast streaming = OpenWeatherHourlyJsonUtils.getHourlyForecastFromReader(
+                new StringReader(json), null);
+
+        ContentValues[] expected = dom.getWeather().toContentValues();
+        ContentValues[] actual = streaming.getWeather().toContentValues();
+        assertEquals(112, expected.length);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Period " + i, expected[i], actual[i]);
+        }
+
+        assertEquals(40.7128, streaming.getCityLatitude());
+        assertEquals(-74.0059, streaming.getCityLongitude());
+
+        dom.recycle();
+        streaming.recycle();
+    }
+
+    /**
+     * Each row is put at the time it gives, rather than at its place in the list as the days of
+     * the daily forecast are.
+     */
+    @Test
+    public void testRowsAreTimedByTheirDt() throws Exception {
+        String json = buildHourlyForecast(3, new Random(1));
+
+        ParsedForecast forecast = OpenWeatherHourlyJsonUtils.getHourlyForecastFromReader(
+                new StringReader(json), null);
+        ForecastBatch batch = forecast.getWeather();
+
+        assertEquals(3, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(START_SECONDS * 1000 + i * HourlyEntry.PERIOD_IN_MILLIS,
+                    batch.getDate(i));
+        }
+        forecast.recycle();
+    }
+
+    /**
+     * A time within a period is put at the start of it, by both parsers.
+     */
+    @Test
+    public void testTimesAreRoundedDownToTheirPeriod() throws Exception {
+        String json = buildHourlyForecast(2, new Random(3))
+                .replace("\"dt\":" + START_SECONDS + ",", "\"dt\":" + (START_SECONDS + 1234) + ",")
+                .replace("\"dt\":" + (START_SECONDS + 3 * 60 * 60) + ",",
+                        "\"dt\":" + (START_SECONDS + 6 * 60 * 60 - 1) + ",");
+
+        ParsedForecast dom = OpenWeatherHourlyJsonUtils.getHourlyForecastFromJson(json, null);
+        ParsedForecast streaming = OpenWeatherHourlyJsonUtils.getHourlyForecastFromReader(
+                new StringReader(json), null);
+
+        for (ParsedForecast forecast : new ParsedForecast[]{dom, streaming}) {
+            ForecastBatch batch = forecast.getWeather();
+            assertEquals(2, batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(START_SECONDS * 1000 + i * HourlyEntry.PERIOD_IN_MILLIS,
+                        batch.getDate(i));
+            }
+            forecast.recycle();
+        }
+    }
+
+    @Test
+    public void testRowsWithoutATimeAreSkipped() throws Exception {
+        String json = buildHourlyForecast(3, new Random(2))
+                .replace("\"dt\":" + (START_SECONDS + 3 * 60 * 60) + ",", "");
+
+        ForecastValidationReport domReport = new ForecastValidationReport();
+        ParsedForecast dom = OpenWeatherHourlyJsonUtils.getHourlyForecastFromJson(
+                json, domReport);
+        ForecastValidationReport streamingReport = new ForecastValidationReport();
+        ParsedForecast streaming = OpenWeatherHourlyJsonUtils.getHourlyForecastFromReader(
+                new StringReader(json), streamingReport);
+
+        for (ParsedForecast forecast : new ParsedForecast[]{dom, streaming}) {
+            assertEquals(2, forecast.getWeather().size());
+            assertEquals(START_SECONDS * 1000 + 2 * HourlyEntry.PERIOD_IN_MILLIS,
+                    forecast.getWeather().getDate(1));
+            forecast.recycle();
+        }
+        for (ForecastValidationReport report
+                : new ForecastValidationReport[]{domReport, streamingReport}) {
+            assertEquals(3, report.getDayCount());
+            assertEquals(1, report.getSkippedDays());
+            assertEquals(1, report.getFieldErrors("dt"));
+        }
+    }
+
+    @Test
+    public void testErrorResponsesParseToNull() throws Exception {
+        String notFound = "{\"cod\":\"404\",\"message\":\"city not found\"}";
+        assertNull(OpenWeatherHourlyJsonUtils.getHourlyForecastFromJson(notFound, null));
+        assertNull(OpenWeatherHourlyJsonUtils.getHourlyForecastFromReader(
+                new StringReader(notFound), null));
+    }
+
+    static String buildHourlyForecast(int periods, Random random) {
+        StringBuilder json = new StringBuilder("{\"cod\":\"200\",\"message\":0,\"cnt\":"
+                + periods + ",\"list\":[");
+        for (int period = 0; period < periods; period++) {
+            if (period > 0) {
+                json.append(',');
+            }
+            double low = random.nextDouble() * 20;
+            json.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"main\":{\"temp\":%.2f,\"temp_min\":%.2f,\"temp_max\":%.2f,"
+                            + "\"pressure\":%.2f,\"sea_level\":1020,\"humidity\":%d},"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"Clouds\"}],"
+                            + "\"clouds\":{\"all\":%d},\"wind\":{\"speed\":%.2f,\"deg\":%.1f},"
+                            + "\"dt_txt\":\"2017-02-16 12:00:00\"}",
+                    START_SECONDS + period * 3 * 60 * 60L, low + 1, low, low + 2,
+                    990 + random.nextDouble() * 40, random.nextInt(100),
+                    800 + random.nextInt(5), random.nextInt(100), random.nextDouble() * 10,
+                    random.nextDouble() * 360));
+        }
+        return json.append("],\"city\":{\"id\":1,\"name\":\"Test\","
+                + "\"coord\":{\"lat\":40.7128,\"lon\":-74.0059},\"country\":\"US\"}}")
+                .toString();
+    }
+}
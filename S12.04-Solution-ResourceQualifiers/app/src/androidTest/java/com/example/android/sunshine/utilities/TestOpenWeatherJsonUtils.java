@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastChunkQueue;
+import com.example.android.sunshine.data.SunshinePreferences;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks that the streaming parser produces exactly the same rows as the org.json parser.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestOpenWeatherJsonUtils {
+
+    /*
+     * A forecast with the quirks real responses have: numbers sent as strings, fields the app
+     * doesn't read, fields in an unusual order, a fractional humidity and more than one weather
+     * condition for a day.
+     */
+    private static final String FORECAST_JSON = "{"
+            + "\"list\":["
+            + "{\"dt\":1479211200,\"temp\":{\"day\":12.5,\"min\":8.25,\"max\":15.75,"
+            + "\"night\":9,\"eve\":13,\"morn\":8.5},\"pressure\":1013.25,\"humidity\":81.6,"
+            + "\"weather\":[{\"id\":500,\"main\":\"Rain\",\"description\":\"light rain\","
+            + "\"icon\":\"10d\"},{\"id\":701,\"main\":\"Mist\"}],\"speed\":4.1,\"deg\":225,"
+            + "\"clouds\":75,\"rain\":1.2},"
+            + "{\"humidity\":\"60\",\"pressure\":\"1009\",\"deg\":\"90\",\"speed\":\"2\","
+            + "\"temp\":{\"max\":\"20\",\"min\":\"11.5\"},\"weather\":[{\"id\":\"800\"}],"
+            + "\"extra\":{\"nested\":[1,2,{\"deep\":null}],\"flag\":true}}"
+            + "],"
+            + "\"cnt\":2,"
+            + "\"city\":{\"id\":5375480,\"name\":\"Mountain View\","
+            + "\"coord\":{\"lon\":-122.0838,\"lat\":37.3861},\"country\":\"US\"},"
+            + "\"cod\":\"200\",\"message\":0.0123"
+            + "}";
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void testStreamingParserMatchesDomParser() throws Exception {
+        assertSameRows(FORECAST_JSON);
+    }
+
+    @Test
+    public void testStreamingParserMatchesDomParserForLongForecasts() throws Exception {
+        assertSameRows(buildForecast(16, new Random(7)));
+    }
+
+    @Test
+    public void testErrorResponsesParseToNull() throws Exception {
+        String notFound = "{\"cod\":\"404\",\"message\":\"city not found\"}";
+        assertNull(OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, notFound));
+        assertNull(OpenWeatherJsonUtils.getWeatherContentValuesFromReader(
+                mContext, new StringReader(notFound)));
+    }
+
+    /**
+     * A day that is missing a field we can't do without is left out, but the rest of the
+     * forecast is kept, and keeps its dates.
+     */
+    @Test
+    public void testDaysWithMissingFieldsAreSkipped() throws Exception {
+        String missingHumidity = FORECAST_JSON.replace("\"humidity\":81.6,", "");
+
+        ContentValues[] expected =
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, FORECAST_JSON);
+
+        ForecastValidationReport domReport = new ForecastValidationReport();
+        ParsedForecast dom = OpenWeatherJsonUtils.getForecastFromJson(missingHumidity, domReport);
+        ForecastValidationReport streamingReport = new ForecastValidationReport();
+        ParsedForecast streaming = OpenWeatherJsonUtils.getForecastFromReader(
+                new StringReader(missingHumidity), streamingReport);
+
+        for (ParsedForecast forecast : new ParsedForecast[]{dom, streaming}) {
+            assertEquals(1, forecast.getWeather().size());
+            assertEquals(expected[1], forecast.getWeather().toContentValues()[0]);
+            forecast.recycle();
+        }
+        for (ForecastValidationReport report
+                : new ForecastValidationReport[]{domReport, streamingReport}) {
+            assertEquals(2, report.getDayCount());
+            assertEquals(1, report.getSkippedDays());
+            assertEquals(0, report.getRepairedDays());
+            assertEquals(1, report.getFieldErrors("humidity"));
+            assertEquals(1, report.getFieldErrors().size());
+        }
+    }
+
+    /**
+     * Values that are wrong in a way we can put right are repaired, and values of the wrong type
+     * are treated as missing, the same way by both parsers.
+     */
+    @Test
+    public void testBadValuesAreRepairedOrSkipped() throws Exception {
+        String json = "{\"cod\":200,\"city\":{\"coord\":{\"lat\":1,\"lon\":2}},\"list\":["
+                /* Humidity too high, wind direction out of range, low and high swapped */
+                + "{\"temp\":{\"min\":20,\"max\":10},\"pressure\":1000,\"humidity\":120,"
+                + "\"weather\":[{\"id\":800}],\"speed\":3,\"deg\":450},"
+                /* No wind direction at all */
+                + "{\"temp\":{\"min\":1,\"max\":2},\"pressure\":1000,\"humidity\":50,"
+                + "\"weather\":[{\"id\":800}],\"speed\":3},"
+                /* Values of the wrong type */
+                + "{\"temp\":[1,2],\"pressure\":{},\"humidity\":true,"
+                + "\"weather\":\"clear\",\"speed\":\"fast\",\"deg\":null},"
+                /* Not a day at all */
+                + "null,"
+                /* Temperatures in Kelvin */
+                + "{\"temp\":{\"min\":280,\"max\":290},\"pressure\":1000,\"humidity\":50,"
+                + "\"weather\":[{\"id\":800}],\"speed\":3,\"deg\":0}"
+                + "]}";
+
+        ContentValues[] expected = OpenWeatherJsonUtils.getWeatherContentValuesFromJson(
+                mContext, json);
+        ContentValues[] actual = OpenWeatherJsonUtils.getWeatherContentValuesFromReader(
+                mContext, new StringReader(json));
+        assertEquals(2, expected.length);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Day " + i, expected[i], actual[i]);
+        }
+
+        ForecastValidationReport report = new ForecastValidationReport();
+        ParsedForecast forecast =
+                OpenWeatherJsonUtils.getForecastFromReader(new StringReader(json), report);
+        ForecastBatch batch = forecast.getWeather();
+        assertEquals(10.0, batch.getMinTemp(0));
+        assertEquals(20.0, batch.getMaxTemp(0));
+        assertEquals(100, batch.getHumidity(0));
+        assertEquals(90.0, batch.getDegrees(0));
+        assertEquals(0.0, batch.getDegrees(1));
+        assertEquals(batch.getDate(0) + SunshineDateUtils.DAY_IN_MILLIS, batch.getDate(1));
+        forecast.recycle();
+
+        assertEquals(5, report.getDayCount());
+        assertEquals(3, report.getSkippedDays());
+        assertEquals(2, report.getRepairedDays());
+        assertEquals(3, report.getFieldErrors("deg"));
+        assertEquals(1, report.getFieldErrors("list"));
+        assertEquals(2, report.getFieldErrors("min"));
+        assertEquals(1, report.getFieldErrors("temp"));
+    }
+
+    @Test
+    public void testForecastsWithoutDaysAreRejected() throws Exception {
+        String missingList = "{\"cod\":200,\"city\":{\"coord\":{\"lat\":1,\"lon\":2}}}";
+
+        try {
+            OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, missingList);
+            fail("The org.json parser should have rejected a forecast without a list");
+        } catch (JSONException expected) {
+        }
+
+        try {
+            OpenWeatherJsonUtils.getWeatherContentValuesFromReader(
+                    mContext, new StringReader(missingList));
+            fail("The streaming parser should have rejected a forecast without a list");
+        } catch (JSONException expected) {
+        }
+    }
+
+    /**
+     * Parsing leaves the saved coordinates alone. They're only saved when the forecast is
+     * committed, and only written if they've changed.
+     */
+    @Test
+    public void testCoordinatesAreOnlySavedWhenCommitted() throws Exception {
+        SunshinePreferences.setLocationDetails(mContext, 1, 2);
+
+        ParsedForecast dom = OpenWeatherJsonUtils.getForecastFromJson(FORECAST_JSON, null);
+        ParsedForecast streaming = OpenWeatherJsonUtils.getForecastFromReader(
+                new StringReader(FORECAST_JSON), null);
+
+        double[] saved = SunshinePreferences.getLocationCoordinates(mContext);
+        assertEquals(1.0, saved[0]);
+        assertEquals(2.0, saved[1]);
+
+        for (ParsedForecast forecast : new ParsedForecast[]{dom, streaming}) {
+            assertEquals(37.3861, forecast.getCityLatitude());
+            assertEquals(-122.0838, forecast.getCityLongitude());
+        }
+
+        assertTrue(dom.commitLocationDetails(mContext));
+        assertFalse(streaming.commitLocationDetails(mContext));
+        saved = SunshinePreferences.getLocationCoordinates(mContext);
+        assertEquals(37.3861, saved[0]);
+        assertEquals(-122.0838, saved[1]);
+
+        dom.recycle();
+        streaming.recycle();
+    }
+
+    @Test
+    public void testTruncatedJsonIsRejected() throws Exception {
+        String truncated = FORECAST_JSON.substring(0, FORECAST_JSON.length() / 2);
+        try {
+            OpenWeatherJsonUtils.getWeatherContentValuesFromReader(
+                    mContext, new StringReader(truncated));
+            fail("The streaming parser should have rejected truncated JSON");
+        } catch (Exception expected) {
+        }
+    }
+
+    /**
+     * The streaming parser must read the JSON to its end, so that a response being cached as it
+     * is read is seen to be complete.
+     */
+    @Test
+    public void testStreamingParserReadsToTheEnd() throws Exception {
+        StringReader reader = new StringReader(FORECAST_JSON + "\n  ");
+        assertNotNull(OpenWeatherJsonUtils.getWeatherContentValuesFromReader(mContext, reader));
+        assertEquals(-1, reader.read());
+    }
+
+    /**
+     * Handing the days over a chunk at a time, to a writer that's slower than the parser, must
+     * produce the same rows as parsing them all at once.
+     */
+    @Test
+    public void testChunkedParserMatchesDomParser() throws Exception {
+        String json = buildForecast(10, new Random(11));
+        ContentValues[] expected =
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, json);
+
+        ForecastChunkQueue chunks = new ForecastChunkQueue(3, 1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ForecastBatch> writer = executor.submit(collect(chunks));
+
+            ParsedForecast forecast = OpenWeatherJsonUtils.getForecastChunks(
+                    new StringReader(json), chunks, null);
+            assertNotNull(forecast);
+            assertNull(forecast.getWeather());
+
+            ForecastBatch actual = writer.get(10, TimeUnit.SECONDS);
+            assertEquals(expected.length, actual.size());
+            ContentValues[] actualValues = actual.toContentValues();
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("Day " + i, expected[i], actualValues[i]);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The error code can come after the days, which by then have been handed over. The parser
+     * must say the forecast is no good, so the caller can tell the writer to throw them away.
+     */
+    @Test
+    public void testChunkedParserReportsLateErrors() throws Exception {
+        String forecast = buildForecast(6, new Random(3)).replace("\"cod\":\"200\",", "");
+        String json = forecast.substring(0, forecast.length() - 1) + ",\"cod\":\"500\"}";
+
+        ForecastChunkQueue chunks = new ForecastChunkQueue(2, 4);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ForecastBatch> writer = executor.submit(collect(chunks));
+
+            assertNull(OpenWeatherJsonUtils.getForecastChunks(
+                    new StringReader(json), chunks, null));
+            chunks.abort();
+
+            try {
+                writer.get(10, TimeUnit.SECONDS);
+                fail("The writer should have been told to throw the forecast away");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof CancellationException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /* Takes every chunk from the queue, slowly, and returns all of their days together */
+    private static Callable<ForecastBatch> collect(final ForecastChunkQueue chunks) {
+        return new Callable<ForecastBatch>() {
+            @Override
+            public ForecastBatch call() throws Exception {
+                ForecastBatch forecast = new ForecastBatch();
+                try {
+                    ForecastBatch chunk;
+                    while ((chunk = chunks.take()) != null) {
+                        assertTrue(chunk.size() <= chunks.getChunkDays());
+                        Thread.sleep(10);
+                        forecast.addAll(chunk);
+                        chunk.recycle();
+                    }
+                    return forecast;
+                } finally {
+                    chunks.close();
+                }
+            }
+        };
+    }
+
+    private void assertSameRows(String json) throws Exception {
+        ContentValues[] expected =
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, json);
+        ContentValues[] actual = OpenWeatherJsonUtils.getWeatherContentValuesFromReader(
+                mContext, new StringReader(json));
+
+        assertNotNull(actual);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Day " + i, expected[i], actual[i]);
+        }
+    }
+
+    static String buildForecast(int days, Random random) {
+        StringBuilder json = new StringBuilder("{\"city\":{\"id\":1,\"name\":\"Test\","
+                + "\"coord\":{\"lon\":-74.0059,\"lat\":40.7128}},\"cod\":\"200\",\"list\":[");
+        for (int day = 0; day < days; day++) {
+            if (day > 0) {
+                json.append(',');
+            }
+            double low = random.nextDouble() * 20;
+            json.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f},"
+                            + "\"pressure\":%.2f,\"humidity\":%d,"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"Clouds\"}],"
+                            + "\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                    1479211200L + day * 86400L, low + 2, low, low + 5,
+                    990 + random.nextDouble() * 40, random.nextInt(100),
+                    800 + random.nextInt(5), random.nextDouble() * 10, random.nextInt(360),
+                    random.nextInt(100)));
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Counts the objects and bytes allocated for each day parsing the same forecasts with the
+ * org.json parser, which builds the whole document as a tree first, and with the streaming
+ * JsonReader parser, which reads each day straight into the batch. The counts are logged rather
+ * than checked, as they vary with the platform's JSON implementations.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestParserAllocationBenchmark {
+
+    private static final String TAG = TestParserAllocationBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 200;
+    private static final int DAYS = 14;
+
+    @Test
+    public void testAllocationsPerDay() throws Exception {
+        String[] forecasts = new String[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            forecasts[i] = TestOpenWeatherJsonUtils.buildForecast(DAYS, new Random(i));
+        }
+
+        /* The first pass loads the classes and fills the batch pool, as earlier syncs would */
+        parseAll(forecasts, false);
+        parseAll(forecasts, true);
+
+        long[] dom = countAllocations(forecasts, false);
+        long[] streaming = countAllocations(forecasts, true);
+
+        int days = LOCATIONS * DAYS;
+        Log.i(TAG, "Per day, org.json: " + dom[0] / days + " objects, " + dom[1] / days
+                + " bytes; JsonReader: " + streaming[0] / days + " objects, "
+                + streaming[1] / days + " bytes");
+    }
+
+    /* Returns the objects and bytes allocated parsing every forecast with one of the parsers */
+    @SuppressWarnings("deprecation")
+    private static long[] countAllocations(String[] forecasts, boolean streaming)
+            throws Exception {
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        try {
+            parseAll(forecasts, streaming);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return new long[]{Debug.getThreadAllocCount(), Debug.getThreadAllocSize()};
+    }
+
+    private static void parseAll(String[] forecasts, boolean streaming) throws Exception {
+        for (String json : forecasts) {
+            ParsedForecast forecast = streaming
+                    ? OpenWeatherJsonUtils.getForecastFromReader(new StringReader(json), null)
+                    : OpenWeatherJsonUtils.getForecastFromJson(json, null);
+            assertEquals(DAYS, forecast.getWeather().size());
+            forecast.recycle();
+        }
+    }
+}
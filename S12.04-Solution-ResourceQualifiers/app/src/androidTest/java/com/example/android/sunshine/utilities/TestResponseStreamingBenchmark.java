@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastChunkQueue;
+import com.example.android.sunshine.utils.StubHttpServer;
+import com.example.android.sunshine.utils.StubHttpServer.StubResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+
+/**
+ * Downloads a large forecast from a {@link StubHttpServer} the way Sunshine used to, reading the
+ * whole body into a String with a Scanner before parsing it, and the way it does now, parsing
+ * the body as it streams in and handing the days on a chunk at a time. For each it logs the
+ * time until the first day could be stored, and how far the heap grew while it ran. The numbers
+ * depend too much on the device to pass or fail a test on, so they are only logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestResponseStreamingBenchmark {
+
+    private static final String TAG = TestResponseStreamingBenchmark.class.getSimpleName();
+
+    /* Enough days for a body of a few hundred kilobytes, still under the response size limit */
+    private static final int DAYS = 2000;
+
+    private static final int WARM_UP_ROUNDS = 2;
+    private static final int ROUNDS = 7;
+
+    private StubHttpServer mServer;
+    private URL mUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new StubHttpServer();
+        mServer.start();
+        mServer.setResponse("/weather", new StubResponse(HttpURLConnection.HTTP_OK,
+                TestOpenWeatherJsonUtils.buildForecast(DAYS, new Random(5))));
+        mUrl = mServer.getUrl("/weather");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void testStreamingAndScannerDownloads() throws Exception {
+        long[] scanner = medianRun(false);
+        long[] streaming = medianRun(true);
+
+        Log.i(TAG, DAYS + " days, Scanner: first day after " + scanner[0] / 1000 + "us, heap grew "
+                + scanner[1] / 1024 + "KB; streaming: first day after " + streaming[0] / 1000
+                + "us, heap grew " + streaming[1] / 1024 + "KB");
+    }
+
+    /* Returns the median time to the first day, and the median growth of the heap */
+    private long[] medianRun(boolean streaming) throws Exception {
+        long[] nanos = new long[ROUNDS];
+        long[] heapBytes = new long[ROUNDS];
+        for (int round = -WARM_UP_ROUNDS; round < ROUNDS; round++) {
+            System.gc();
+            HeapSampler sampler = new HeapSampler();
+            sampler.start();
+            long start = System.nanoTime();
+            long firstDay;
+            try {
+                firstDay = streaming ? downloadStreaming() : downloadWithScanner();
+            } finally {
+                sampler.finish();
+            }
+            if (round >= 0) {
+                nanos[round] = firstDay - start;
+                heapBytes[round] = sampler.getPeakGrowth();
+            }
+        }
+        Arrays.sort(nanos);
+        Arrays.sort(heapBytes);
+        return new long[]{nanos[ROUNDS / 2], heapBytes[ROUNDS / 2]};
+    }
+
+    /*
+     * What getResponseFromHttpUrl used to do, followed by the parse the sync did with it. No day
+     * is ready until the whole body is in memory and parsed. Returns when the first day was.
+     */
+    private long downloadWithScanner() throws Exception {
+        HttpURLConnection urlConnection = (HttpURLConnection) mUrl.openConnection();
+        try {
+            Scanner scanner = new Scanner(urlConnection.getInputStream());
+            scanner.useDelimiter("\\A");
+            String json = scanner.hasNext() ? scanner.next() : null;
+            scanner.close();
+
+            ParsedForecast forecast = OpenWeatherJsonUtils.getForecastFromJson(json, null);
+            long firstDay = System.nanoTime();
+            assertEquals(DAYS, forecast.getWeather().size());
+            forecast.recycle();
+            return firstDay;
+        } finally {
+            urlConnection.disconnect();
+        }
+    }
+
+    /*
+     * What a sync does now: the days are handed on as they are parsed from the body, a few at a
+     * time, to a writer on another thread. Returns when the writer got the first of them.
+     */
+    private long downloadStreaming() throws Exception {
+        ForecastChunkQueue chunks = new ForecastChunkQueue(4, 2);
+        ChunkCounter counter = new ChunkCounter(chunks);
+        Thread writer = new Thread(counter);
+        writer.start();
+
+        ParsedForecast forecast = null;
+        ForecastResponse response = NetworkUtils.openResponseFromHttpUrl(mUrl);
+        try {
+            forecast = OpenWeatherJsonUtils.getForecastChunks(response.getReader(), chunks, null);
+        } finally {
+            if (forecast == null) {
+                chunks.abort();
+            }
+            response.close();
+            writer.join();
+        }
+        assertNotNull(forecast);
+        assertEquals(DAYS, counter.mDays);
+        return counter.mFirstDayNanos;
+    }
+
+    /* Stands in for the writer: takes the chunks, noting when the first one came */
+    private static final class ChunkCounter implements Runnable {
+        private final ForecastChunkQueue mChunks;
+
+        volatile long mFirstDayNanos;
+        volatile int mDays;
+
+        ChunkCounter(ForecastChunkQueue chunks) {
+            mChunks = chunks;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ForecastBatch chunk;
+                while ((chunk = mChunks.take()) != null) {
+                    if (mDays == 0) {
+                        mFirstDayNanos = System.nanoTime();
+                    }
+                    mDays += chunk.size();
+                    chunk.recycle();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (CancellationException e) {
+                /* The parser failed, which the test reports */
+            } finally {
+                mChunks.close();
+            }
+        }
+    }
+
+    /*
+     * Polls how much of the heap is in use while a download runs, and keeps the most it grew
+     * above where it started. Garbage can be collected between polls, so this is rough, but a
+     * whole body held as a String stands out in it.
+     */
+    private static final class HeapSampler extends Thread {
+        private final Runtime mRuntime = Runtime.getRuntime();
+        private final long mStartBytes = usedBytes();
+
+        private volatile boolean mFinished;
+        private volatile long mPeakBytes = mStartBytes;
+
+        @Override
+        public void run() {
+            while (!mFinished) {
+                mPeakBytes = Math.max(mPeakBytes, usedBytes());
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void finish() throws InterruptedException {
+            mPeakBytes = Math.max(mPeakBytes, usedBytes());
+            mFinished = true;
+            join();
+        }
+
+        long getPeakGrowth() {
+            return mPeakBytes - mStartBytes;
+        }
+
+        private long usedBytes() {
+            return mRuntime.totalMemory() - mRuntime.freeMemory();
+        }
+    }
+}
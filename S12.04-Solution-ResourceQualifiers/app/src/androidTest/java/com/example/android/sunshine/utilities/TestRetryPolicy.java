@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class TestRetryPolicy {
+
+    private static final long BASE_DELAY_MILLIS = 10;
+    private static final long MAX_DELAY_MILLIS = 40;
+
+    @Test
+    public void testTransientFailuresAreRetryable() throws Exception {
+        URL url = new URL("http://127.0.0.1/weather");
+
+        assertTrue(RetryPolicy.isRetryable(new SocketTimeoutException()));
+        assertTrue(RetryPolicy.isRetryable(new ConnectException()));
+        assertTrue(RetryPolicy.isRetryable(new UnknownHostException()));
+        assertTrue(RetryPolicy.isRetryable(new HttpStatusException(500, url, -1)));
+        assertTrue(RetryPolicy.isRetryable(new HttpStatusException(503, url, -1)));
+        assertTrue(RetryPolicy.isRetryable(new HttpStatusException(429, url, -1)));
+
+        assertFalse(RetryPolicy.isRetryable(new HttpStatusException(404, url, -1)));
+        assertFalse(RetryPolicy.isRetryable(new HttpStatusException(401, url, -1)));
+        assertFalse(RetryPolicy.isRetryable(new FileNotFoundException()));
+        assertFalse(RetryPolicy.isRetryable(new InterruptedIOException()));
+        assertFalse(RetryPolicy.isRetryable(new JSONException("Unexpected end of input")));
+    }
+
+    /**
+     * With full jitter, each delay is somewhere between 0 and the exponential ceiling, and the
+     * ceiling never goes past the maximum delay.
+     */
+    @Test
+    public void testDelaysStayWithinTheExponentialCeiling() {
+        RetryPolicy policy = new RetryPolicy(10, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS, new Random(42));
+        IOException failure = new SocketTimeoutException();
+
+        for (int retry = 0; retry < 8; retry++) {
+            long ceiling = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << retry);
+            for (int i = 0; i < 100; i++) {
+                long delay = policy.getDelayMillis(retry, failure);
+                assertTrue("Delay " + delay + " for retry " + retry,
+                        delay >= 0 && delay <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void testRetryAfterIsHonoured() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS, new Random(42));
+        URL url = new URL("http://127.0.0.1/weather");
+
+        assertTrue(policy.getDelayMillis(0, new HttpStatusException(503, url, 30)) >= 30);
+        /* Asking us to wait longer than we are willing to is the same as not retrying */
+        assertEquals(-1, policy.getDelayMillis(0, new HttpStatusException(503, url, 60 * 1000)));
+    }
+
+    @Test
+    public void testRetryableFailuresAreRetriedUntilSuccess() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        String result = policy.execute(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new SocketTimeoutException();
+                }
+                return "forecast";
+            }
+        });
+
+        assertEquals("forecast", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            policy.execute(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    attempts.incrementAndGet();
+                    throw new HttpStatusException(503, new URL("http://127.0.0.1/weather"), -1);
+                }
+            });
+            fail("The last failure should have been rethrown");
+        } catch (HttpStatusException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testPermanentFailuresAreNotRetried() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS);
+        final AtomicInteger attempts = new AtomicInteger();
+        final FileNotFoundException notFound = new FileNotFoundException();
+
+        try {
+            policy.execute(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    attempts.incrementAndGet();
+                    throw notFound;
+                }
+            });
+            fail("The failure should have been rethrown");
+        } catch (FileNotFoundException e) {
+            assertSame(notFound, e);
+        }
+        assertEquals(1, attempts.get());
+    }
+}
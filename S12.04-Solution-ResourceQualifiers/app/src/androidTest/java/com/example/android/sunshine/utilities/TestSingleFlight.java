@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class TestSingleFlight {
+
+    private static final String KEY = "http://127.0.0.1/weather?q=94043";
+
+    /**
+     * Callers that ask for a key while a call for it is running must share that call's result
+     * instead of running their own.
+     */
+    @Test
+    public void testConcurrentCallersShareOneCall() throws Exception {
+        final SingleFlight<String> singleFlight = new SingleFlight<String>();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Callable<String> call = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                release.await(5, TimeUnit.SECONDS);
+                return "forecast";
+            }
+        };
+
+        final int callerCount = 4;
+        final String[] results = new String[callerCount];
+        Thread[] callers = new Thread[callerCount];
+        for (int i = 0; i < callerCount; i++) {
+            final int caller = i;
+            callers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results[caller] = singleFlight.execute(KEY, call);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            callers[i].start();
+        }
+
+        /* Give every caller a chance to join the call before letting it finish */
+        while (!singleFlight.isInFlight(KEY)) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Thread thread : callers) {
+            thread.join(5000);
+        }
+
+        assertEquals(1, calls.get());
+        for (String result : results) {
+            assertEquals("forecast", result);
+        }
+        assertFalse(singleFlight.isInFlight(KEY));
+    }
+
+    /**
+     * An exception thrown by the call must be rethrown to the caller as is.
+     */
+    @Test
+    public void testExceptionIsRethrown() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<String>();
+        final IOException failure = new IOException("Server unreachable");
+
+        try {
+            singleFlight.execute(KEY, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw failure;
+                }
+            });
+            fail("The call's exception should have been rethrown");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    /**
+     * Once a call has completed, the next caller for the same key must run a new call.
+     */
+    @Test
+    public void testCompletedCallsAreNotReused() throws Exception {
+        SingleFlight<Integer> singleFlight = new SingleFlight<Integer>();
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<Integer> call = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return calls.incrementAndGet();
+            }
+        };
+
+        assertEquals(Integer.valueOf(1), singleFlight.execute(KEY, call));
+        assertEquals(Integer.valueOf(2), singleFlight.execute(KEY, call));
+    }
+
+    /**
+     * Calls for different keys must not wait for each other.
+     */
+    @Test
+    public void testDifferentKeysRunIndependently() throws Exception {
+        final SingleFlight<String> singleFlight = new SingleFlight<String>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<String> blockedResult = new AtomicReference<String>();
+
+        Thread blocked = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blockedResult.set(singleFlight.execute(KEY, new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            release.await(5, TimeUnit.SECONDS);
+                            return "first";
+                        }
+                    }));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        blocked.start();
+        while (!singleFlight.isInFlight(KEY)) {
+            Thread.sleep(10);
+        }
+
+        String other = singleFlight.execute("http://127.0.0.1/weather?q=10001",
+                new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return "second";
+                    }
+                });
+        assertEquals("second", other);
+        assertTrue(singleFlight.isInFlight(KEY));
+
+        release.countDown();
+        blocked.join(5000);
+        assertEquals("first", blockedResult.get());
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A tiny HTTP/1.1 server bound to the loopback interface, used to test Sunshine's networking code
+ * without talking to the real weather server. Responses are served in the order they were
+ * enqueued (or, if one was set for the request's path, that response is served every time), and
+ * every request that is received is recorded so tests can assert on its headers.
+ * Connections are kept alive between requests unless the client asks for them to be closed, and
+ * the number of connections accepted is counted so tests can check whether they were reused.
+ */
+public class StubHttpServer {
+
+    /* A canned response to send back for the next request */
+    public static class StubResponse {
+        final int code;
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+        final byte[] body;
+        long delayMillis;
+        int truncateAfter = -1;
+
+        public StubResponse(int code, byte[] body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        public StubResponse(int code, String body) {
+            this(code, body.getBytes());
+        }
+
+        public StubResponse setHeader(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /*
+         * Makes the server send only the first bytes of the body (while still announcing the
+         * full Content-Length) and then drop the connection
+         */
+        public StubResponse truncateAfter(int bytes) {
+            truncateAfter = bytes;
+            return this;
+        }
+
+        /* Makes the server wait before sending this response, like a slow server would */
+        public StubResponse setDelay(long millis) {
+            delayMillis = millis;
+            return this;
+        }
+    }
+
+    /* A request as it was received by the server. Header names are stored lower case. */
+    public static class RecordedRequest {
+        public final String requestLine;
+        public final Map<String, String> headers;
+
+        RecordedRequest(String requestLine, Map<String, String> headers) {
+            this.requestLine = requestLine;
+            this.headers = headers;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    private final ServerSocket mServerSocket;
+    private final BlockingQueue<StubResponse> mResponses =
+            new LinkedBlockingQueue<StubResponse>();
+    private final Map<String, StubResponse> mPathResponses =
+            new ConcurrentHashMap<String, StubResponse>();
+    private final List<RecordedRequest> mRequests =
+            new CopyOnWriteArrayList<RecordedRequest>();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final List<Socket> mOpenSockets = new CopyOnWriteArrayList<Socket>();
+    private final AtomicInteger mActiveRequests = new AtomicInteger();
+    private final AtomicInteger mMaxActiveRequests = new AtomicInteger();
+
+    private Thread mAcceptThread;
+
+    public StubHttpServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    public void enqueue(StubResponse response) {
+        mResponses.add(response);
+    }
+
+    /* Serves the response to every request for the path (including its query) */
+    public void setResponse(String path, StubResponse response) {
+        mPathResponses.put(path, response);
+    }
+
+    public List<RecordedRequest> getRequests() {
+        return new ArrayList<RecordedRequest>(mRequests);
+    }
+
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /* The most requests the server was handling at the same time */
+    public int getMaxConcurrentRequests() {
+        return mMaxActiveRequests.get();
+    }
+
+    public URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", mServerSocket.getLocalPort(), path);
+    }
+
+    public void start() {
+        mAcceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServerSocket.isClosed()) {
+                    try {
+                        final Socket socket = mServerSocket.accept();
+                        mConnectionCount.incrementAndGet();
+                        mOpenSockets.add(socket);
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    serve(socket);
+                                } catch (IOException e) {
+                                    /* The client went away */
+                                }
+                            }
+                        }, "StubHttpServer connection").start();
+                    } catch (IOException e) {
+                        /* The server was shut down */
+                    }
+                }
+            }
+        }, "StubHttpServer");
+        mAcceptThread.start();
+    }
+
+    public void shutdown() throws IOException {
+        mServerSocket.close();
+        for (Socket socket : mOpenSockets) {
+            socket.close();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            OutputStream out = socket.getOutputStream();
+
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null) {
+                Map<String, String> headers = new HashMap<String, String>();
+                String line;
+                while ((line = reader.readLine()) != null && line.length() > 0) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                                line.substring(colon + 1).trim());
+                    }
+                }
+                mRequests.add(new RecordedRequest(requestLine, headers));
+
+                String[] requestParts = requestLine.split(" ");
+                StubResponse response = requestParts.length > 1
+                        ? mPathResponses.get(requestParts[1]) : null;
+                if (response == null) {
+                    response = mResponses.poll();
+                }
+                if (response == null) {
+                    response = new StubResponse(500, "No response was enqueued");
+                }
+
+                int active = mActiveRequests.incrementAndGet();
+                int maxActive;
+                while (active > (maxActive = mMaxActiveRequests.get())
+                        && !mMaxActiveRequests.compareAndSet(maxActive, active)) {
+                    /* Another request raised the maximum first, try again */
+                }
+                try {
+                    if (response.delayMillis > 0) {
+                        Thread.sleep(response.delayMillis);
+                    }
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } finally {
+                    mActiveRequests.decrementAndGet();
+                }
+
+                boolean close = "close".equalsIgnoreCase(headers.get("connection"));
+
+                StringBuilder head = new StringBuilder();
+                head.append("HTTP/1.1 ").append(response.code).append(" Stub\r\n");
+                for (Map.Entry<String, String> header : response.headers.entrySet()) {
+                    head.append(header.getKey()).append(": ").append(header.getValue())
+                            .append("\r\n");
+                }
+                head.append("Content-Length: ").append(response.body.length).append("\r\n");
+                if (close) {
+                    head.append("Connection: close\r\n");
+                }
+                head.append("\r\n");
+
+                out.write(head.toString().getBytes("ISO-8859-1"));
+                if (response.truncateAfter >= 0) {
+                    out.write(response.body, 0, response.truncateAfter);
+                    out.flush();
+                    break;
+                }
+                out.write(response.body);
+                out.flush();
+
+                if (close) {
+                    break;
+                }
+            }
+        } finally {
+            mOpenSockets.remove(socket);
+            socket.close();
+        }
+    }
+}
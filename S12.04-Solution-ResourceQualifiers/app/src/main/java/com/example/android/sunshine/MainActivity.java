@@ -15,11 +15,13 @@
  */
 package com.example.android.sunshine;
 
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.LoaderManager;
+import android.support.v4.content.AsyncTaskLoader;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
@@ -32,9 +34,11 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.ProgressBar;
 
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
 
 public class MainActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor>,
@@ -73,12 +77,17 @@ public class MainActivity extends AppCompatActivity implements
      */
     private static final int ID_FORECAST_LOADER = 44;
 
+    /* The loader that reads the forecast the last sync saved in its snapshot */
+    private static final int ID_SNAPSHOT_LOADER = 45;
+
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
     private int mPosition = RecyclerView.NO_POSITION;
 
     private ProgressBar mLoadingIndicator;
 
+    /* Set once the forecast loader has delivered, after which the snapshot isn't needed */
+    private boolean mForecastLoaded;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -142,9 +151,19 @@ public class MainActivity extends AppCompatActivity implements
         /* Setting the adapter attaches it to the RecyclerView in our layout. */
         mRecyclerView.setAdapter(mForecastAdapter);
 
-
         showLoading();
 
+        /*
+         * Until the forecast loader has queried the database, show the forecast the last sync
+         * saved in its snapshot. That's a small file that reads much quicker than the query, but
+         * it's still on disk, so it is read by a loader of its own rather than right here. If the
+         * forecast loader is left over from before a configuration change, it already has the
+         * forecast, and the snapshot isn't needed.
+         */
+        if (getSupportLoaderManager().getLoader(ID_FORECAST_LOADER) == null) {
+            getSupportLoaderManager().initLoader(ID_SNAPSHOT_LOADER, null, this);
+        }
+
         /*
          * Ensures a loader is initialized and active. If the loader doesn't already exist, one is
          * created and (if the activity/fragment is currently started) starts the loader. Otherwise
@@ -216,6 +235,9 @@ public class MainActivity extends AppCompatActivity implements
                         null,
                         sortOrder);
 
+            case ID_SNAPSHOT_LOADER:
+                return new SnapshotLoader(this);
+
             default:
                 throw new RuntimeException("Loader Not Implemented: " + loaderId);
         }
@@ -235,8 +257,21 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
 
+        if (loader.getId() == ID_SNAPSHOT_LOADER) {
+            /* The snapshot only stands in for the forecast until the database has answered */
+            if (!mForecastLoaded && data != null && data.getCount() != 0) {
+                mForecastAdapter.swapCursor(data);
+                showWeatherDataView();
+            }
+            return;
+        }
 
+        mForecastLoaded = true;
         mForecastAdapter.swapCursor(data);
+
+        /* The Adapter has let go of the snapshot, so the loader can close it */
+        getSupportLoaderManager().destroyLoader(ID_SNAPSHOT_LOADER);
+
         if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
         mRecyclerView.smoothScrollToPosition(mPosition);
         if (data.getCount() != 0) showWeatherDataView();
@@ -250,6 +285,11 @@ public class MainActivity extends AppCompatActivity implements
      */
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        /* Once the forecast has loaded, the Adapter isn't displaying the snapshot's data */
+        if (loader.getId() == ID_SNAPSHOT_LOADER && mForecastLoaded) {
+            return;
+        }
+
         /*
          * Since this Loader's data is now invalid, we need to clear the Adapter that is
          * displaying the data.
@@ -343,4 +383,78 @@ public class MainActivity extends AppCompatActivity implements
 
         return super.onOptionsItemSelected(item);
     }
+
+    /**
+     * Reads the days of the forecast snapshot from today on, on a background thread, as a Cursor
+     * with the columns of {@link #MAIN_FORECAST_PROJECTION}. The result is null if there is no
+     * snapshot, or it has no days left to show.
+     */
+    private static class SnapshotLoader extends AsyncTaskLoader<Cursor> {
+
+        private Cursor mSnapshot;
+
+        SnapshotLoader(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (mSnapshot != null) {
+                deliverResult(mSnapshot);
+            } else {
+                forceLoad();
+            }
+        }
+
+        @Override
+        public Cursor loadInBackground() {
+            ForecastSnapshot snapshot = ForecastSnapshot.load(getContext());
+            long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+            if (snapshot == null || !snapshot.hasDaysFrom(today)) {
+                return null;
+            }
+            return snapshot.toCursor(MAIN_FORECAST_PROJECTION, today);
+        }
+
+        @Override
+        public void deliverResult(Cursor data) {
+            if (isReset()) {
+                if (data != null) {
+                    data.close();
+                }
+                return;
+            }
+
+            Cursor oldSnapshot = mSnapshot;
+            mSnapshot = data;
+            if (isStarted()) {
+                super.deliverResult(data);
+            }
+            if (oldSnapshot != null && oldSnapshot != data) {
+                oldSnapshot.close();
+            }
+        }
+
+        @Override
+        protected void onStopLoading() {
+            cancelLoad();
+        }
+
+        @Override
+        public void onCanceled(Cursor data) {
+            if (data != null) {
+                data.close();
+            }
+        }
+
+        @Override
+        protected void onReset() {
+            super.onReset();
+            onStopLoading();
+            if (mSnapshot != null) {
+                mSnapshot.close();
+                mSnapshot = null;
+            }
+        }
+    }
 }
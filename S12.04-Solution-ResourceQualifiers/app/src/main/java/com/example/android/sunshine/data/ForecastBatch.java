@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+/**
+ * The days of a forecast, kept column by column in primitive arrays rather than as one
+ * ContentValues per day. A ContentValues is a HashMap of boxed values, so handing a forecast from
+ * the parser to {@link WeatherProvider} that way costs a map and eight boxed numbers per day, all
+ * of which are unboxed again straight away. A batch holds the same rows in eight arrays that are
+ * reused from one sync to the next.
+ * <p>
+ * Get a batch with {@link #obtain()} and give it back with {@link #recycle()} once you're done
+ * with it, like a {@link android.os.Message}. A batch is not thread safe.
+ */
+public final class ForecastBatch {
+
+    /* Enough for the 14 days we ask the server for, without growing */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /*
+     * A sync needs one batch, or one for each chunk in flight when it writes while parsing, so
+     * there's no point keeping more than a few
+     */
+    private static final int MAX_POOL_SIZE = 4;
+
+    /* The number of columns copyTo puts into a ContentValues */
+    private static final int COLUMN_COUNT = 8;
+
+    private static final Object sPoolSync = new Object();
+    private static ForecastBatch sPool;
+    private static int sPoolSize = 0;
+
+    private ForecastBatch mNext;
+    private boolean mInPool;
+
+    private int mSize;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private int[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    /**
+     * Creates an empty batch that isn't part of the pool. Prefer {@link #obtain()}.
+     */
+    public ForecastBatch() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return An empty batch, reused from the pool if there is one in it
+     */
+    public static ForecastBatch obtain() {
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                ForecastBatch batch = sPool;
+                sPool = batch.mNext;
+                batch.mNext = null;
+                batch.mInPool = false;
+                sPoolSize--;
+                return batch;
+            }
+        }
+        return new ForecastBatch();
+    }
+
+    /**
+     * Empties this batch and returns it to the pool. It must not be used after this.
+     */
+    public void recycle() {
+        if (mInPool) {
+            throw new IllegalStateException("This batch has already been recycled");
+        }
+        clear();
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                mInPool = true;
+                mNext = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    /**
+     * Removes every day from this batch, keeping its arrays for the next forecast.
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @return The number of days in this batch
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Appends a day to the end of this batch.
+     *
+     * @param date      The normalized UTC date of the day, in milliseconds
+     * @param weatherId The weather condition code
+     * @param minTemp   The low temperature, in Celsius
+     * @param maxTemp   The high temperature, in Celsius
+     * @param humidity  The humidity, in percent
+     * @param pressure  The pressure, in hPa
+     * @param windSpeed The wind speed, in meters per second
+     * @param degrees   The direction the wind is blowing from, in meteorological degrees
+     */
+    public void add(long date, int weatherId, double minTemp, double maxTemp, int humidity,
+            double pressure, double windSpeed, double degrees) {
+        if (mSize == mDates.length) {
+            grow(mSize * 2);
+        }
+        int i = mSize++;
+        mDates[i] = date;
+        mWeatherIds[i] = weatherId;
+        mMinTemps[i] = minTemp;
+        mMaxTemps[i] = maxTemp;
+        mHumidities[i] = humidity;
+        mPressures[i] = pressure;
+        mWindSpeeds[i] = windSpeed;
+        mDegrees[i] = degrees;
+    }
+
+    /**
+     * Appends one day of another batch to the end of this one.
+     *
+     * @param other      The batch to copy the day from. It is left as it is.
+     * @param otherIndex The day to copy
+     */
+    public void add(ForecastBatch other, int otherIndex) {
+        other.checkIndex(otherIndex);
+        add(other.mDates[otherIndex], other.mWeatherIds[otherIndex],
+                other.mMinTemps[otherIndex], other.mMaxTemps[otherIndex],
+                other.mHumidities[otherIndex], other.mPressures[otherIndex],
+                other.mWindSpeeds[otherIndex], other.mDegrees[otherIndex]);
+    }
+
+    /**
+     * Replaces one day of this batch with a day of another one.
+     *
+     * @param index      The day to replace
+     * @param other      The batch to copy the day from, or this one. It is left as it is.
+     * @param otherIndex The day to copy
+     */
+    public void set(int index, ForecastBatch other, int otherIndex) {
+        checkIndex(index);
+        other.checkIndex(otherIndex);
+        mDates[index] = other.mDates[otherIndex];
+        mWeatherIds[index] = other.mWeatherIds[otherIndex];
+        mMinTemps[index] = other.mMinTemps[otherIndex];
+        mMaxTemps[index] = other.mMaxTemps[otherIndex];
+        mHumidities[index] = other.mHumidities[otherIndex];
+        mPressures[index] = other.mPressures[otherIndex];
+        mWindSpeeds[index] = other.mWindSpeeds[otherIndex];
+        mDegrees[index] = other.mDegrees[otherIndex];
+    }
+
+    /**
+     * Appends every day of another batch to the end of this one.
+     *
+     * @param other The batch to copy the days from. It is left as it is.
+     */
+    public void addAll(ForecastBatch other) {
+        int size = mSize + other.mSize;
+        if (size > mDates.length) {
+            grow(Math.max(size, mSize * 2));
+        }
+        System.arraycopy(other.mDates, 0, mDates, mSize, other.mSize);
+        System.arraycopy(other.mWeatherIds, 0, mWeatherIds, mSize, other.mSize);
+        System.arraycopy(other.mMinTemps, 0, mMinTemps, mSize, other.mSize);
+        System.arraycopy(other.mMaxTemps, 0, mMaxTemps, mSize, other.mSize);
+        System.arraycopy(other.mHumidities, 0, mHumidities, mSize, other.mSize);
+        System.arraycopy(other.mPressures, 0, mPressures, mSize, other.mSize);
+        System.arraycopy(other.mWindSpeeds, 0, mWindSpeeds, mSize, other.mSize);
+        System.arraycopy(other.mDegrees, 0, mDegrees, mSize, other.mSize);
+        mSize = size;
+    }
+
+    public long getDate(int index) {
+        checkIndex(index);
+        return mDates[index];
+    }
+
+    public int getWeatherId(int index) {
+        checkIndex(index);
+        return mWeatherIds[index];
+    }
+
+    public double getMinTemp(int index) {
+        checkIndex(index);
+        return mMinTemps[index];
+    }
+
+    public double getMaxTemp(int index) {
+        checkIndex(index);
+        return mMaxTemps[index];
+    }
+
+    public int getHumidity(int index) {
+        checkIndex(index);
+        return mHumidities[index];
+    }
+
+    public double getPressure(int index) {
+        checkIndex(index);
+        return mPressures[index];
+    }
+
+    public double getWindSpeed(int index) {
+        checkIndex(index);
+        return mWindSpeeds[index];
+    }
+
+    public double getDegrees(int index) {
+        checkIndex(index);
+        return mDegrees[index];
+    }
+
+    /**
+     * @param index      A day in this batch
+     * @param other      Another batch, or this one
+     * @param otherIndex A day in the other batch
+     * @return true if the two days have the same date and exactly the same weather
+     */
+    public boolean isSameDay(int index, ForecastBatch other, int otherIndex) {
+        checkIndex(index);
+        other.checkIndex(otherIndex);
+        /* Double.compare tells apart values that == doesn't, such as 0.0 and -0.0 */
+        return mDates[index] == other.mDates[otherIndex]
+                && mWeatherIds[index] == other.mWeatherIds[otherIndex]
+                && mHumidities[index] == other.mHumidities[otherIndex]
+                && Double.compare(mMinTemps[index], other.mMinTemps[otherIndex]) == 0
+                && Double.compare(mMaxTemps[index], other.mMaxTemps[otherIndex]) == 0
+                && Double.compare(mPressures[index], other.mPressures[otherIndex]) == 0
+                && Double.compare(mWindSpeeds[index], other.mWindSpeeds[otherIndex]) == 0
+                && Double.compare(mDegrees[index], other.mDegrees[otherIndex]) == 0;
+    }
+
+    /**
+     * Copies one day into a ContentValues, with the same columns the parser has always produced.
+     * The hourly table's columns have the same names, so this serves it too.
+     *
+     * @param index  The day to copy
+     * @param values The ContentValues to copy the day into. Its other values are kept.
+     */
+    public void copyTo(int index, ContentValues values) {
+        checkIndex(index);
+        values.put(WeatherEntry.COLUMN_DATE, mDates[index]);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[index]);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, mHumidities[index]);
+        values.put(WeatherEntry.COLUMN_PRESSURE, mPressures[index]);
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[index]);
+        values.put(WeatherEntry.COLUMN_DEGREES, mDegrees[index]);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[index]);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[index]);
+    }
+
+    /**
+     * @return One ContentValues per day, for code that needs to go through a ContentResolver
+     */
+    public ContentValues[] toContentValues() {
+        ContentValues[] values = new ContentValues[mSize];
+        for (int i = 0; i < mSize; i++) {
+            /* Sized for its columns, so its map never has to grow */
+            values[i] = new ContentValues(COLUMN_COUNT);
+            copyTo(i, values[i]);
+        }
+        return values;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        }
+    }
+
+    private void allocate(int capacity) {
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new int[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    private void grow(int capacity) {
+        long[] dates = mDates;
+        int[] weatherIds = mWeatherIds;
+        double[] minTemps = mMinTemps;
+        double[] maxTemps = mMaxTemps;
+        int[] humidities = mHumidities;
+        double[] pressures = mPressures;
+        double[] windSpeeds = mWindSpeeds;
+        double[] degrees = mDegrees;
+
+        allocate(capacity);
+
+        System.arraycopy(dates, 0, mDates, 0, mSize);
+        System.arraycopy(weatherIds, 0, mWeatherIds, 0, mSize);
+        System.arraycopy(minTemps, 0, mMinTemps, 0, mSize);
+        System.arraycopy(maxTemps, 0, mMaxTemps, 0, mSize);
+        System.arraycopy(humidities, 0, mHumidities, 0, mSize);
+        System.arraycopy(pressures, 0, mPressures, 0, mSize);
+        System.arraycopy(windSpeeds, 0, mWindSpeeds, 0, mSize);
+        System.arraycopy(degrees, 0, mDegrees, 0, mSize);
+    }
+}
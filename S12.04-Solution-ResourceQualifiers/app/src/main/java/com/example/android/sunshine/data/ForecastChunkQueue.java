@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the days of a forecast from the thread parsing it to the thread writing it to the
+ * database, a few days at a time, so the database work overlaps with the download instead of
+ * waiting for all of it. The queue holds at most a fixed number of chunks; a parser that gets
+ * ahead of the writer waits for it, so however big the forecast is, only a few chunks of it are
+ * in memory at once.
+ * <p>
+ * The parser calls {@link #put(ForecastBatch)} for each chunk and then either {@link #finish()}
+ * or, if the forecast turns out to be unusable, {@link #abort()}. The writer calls
+ * {@link #take()} until it returns null and then {@link #close()}. A writer that has to lock
+ * something to write can wait for the first chunk with {@link #awaitChunk()} before it does, so
+ * it doesn't hold the lock while the download hasn't produced anything yet.
+ */
+public final class ForecastChunkQueue {
+
+    /* Markers for the end of the forecast. Neither of them is ever handed to the writer. */
+    private static final ForecastBatch END = new ForecastBatch();
+    private static final ForecastBatch ABORTED = new ForecastBatch();
+
+    /* How often a parser waiting for room checks that the writer is still there */
+    private static final long PUT_POLL_MILLIS = 100;
+
+    private final int mChunkDays;
+    private final BlockingQueue<ForecastBatch> mChunks;
+
+    /* A chunk the writer waited for in awaitChunk, but hasn't taken yet */
+    private ForecastBatch mNext;
+
+    private volatile boolean mAborted;
+    private volatile boolean mClosed;
+
+    /**
+     * @param chunkDays The number of days the parser collects before handing them over
+     * @param maxChunks The number of chunks that can be waiting for the writer
+     */
+    public ForecastChunkQueue(int chunkDays, int maxChunks) {
+        if (chunkDays < 1 || maxChunks < 1) {
+            throw new IllegalArgumentException("Chunks must hold a day and the queue a chunk");
+        }
+        mChunkDays = chunkDays;
+        mChunks = new ArrayBlockingQueue<ForecastBatch>(maxChunks);
+    }
+
+    /**
+     * @return The number of days the parser should collect before calling {@link #put}
+     */
+    public int getChunkDays() {
+        return mChunkDays;
+    }
+
+    /**
+     * Hands a copy of the given days to the writer, waiting for room in the queue if the writer
+     * has fallen behind. The days are copied, so the caller can clear the batch and reuse it.
+     *
+     * @param days The next days of the forecast
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     * @throws IOException            If the writer has stopped
+     */
+    public void put(ForecastBatch days) throws IOException {
+        ForecastBatch chunk = ForecastBatch.obtain();
+        boolean handedOver = false;
+        try {
+            chunk.addAll(days);
+            offer(chunk);
+            handedOver = true;
+        } finally {
+            if (!handedOver) {
+                chunk.recycle();
+            }
+        }
+    }
+
+    /**
+     * Tells the writer that the whole forecast has been handed over.
+     *
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     * @throws IOException            If the writer has stopped
+     */
+    public void finish() throws IOException {
+        offer(END);
+    }
+
+    /**
+     * Tells the writer to throw away what it has written so far. This never waits.
+     */
+    public void abort() {
+        mAborted = true;
+        /* If the queue is full, the writer sees mAborted when it takes the next chunk instead */
+        mChunks.offer(ABORTED);
+    }
+
+    /**
+     * Waits until the next chunk of the forecast, or the end of it, has been handed over,
+     * without taking it.
+     *
+     * @throws InterruptedException  If the thread is interrupted while waiting
+     * @throws CancellationException If the parser aborted the forecast
+     */
+    public void awaitChunk() throws InterruptedException {
+        if (mNext == null) {
+            mNext = mChunks.take();
+        }
+        if (mAborted || mNext == ABORTED) {
+            throw new CancellationException("The forecast was abandoned");
+        }
+    }
+
+    /**
+     * Waits for the next chunk of the forecast.
+     *
+     * @return The next days of the forecast, which the caller must recycle, or null once the
+     * whole forecast has been handed over
+     * @throws InterruptedException  If the thread is interrupted while waiting
+     * @throws CancellationException If the parser aborted the forecast
+     */
+    public ForecastBatch take() throws InterruptedException {
+        ForecastBatch chunk = mNext != null ? mNext : mChunks.take();
+        mNext = null;
+        if (mAborted || chunk == ABORTED) {
+            if (chunk != END && chunk != ABORTED) {
+                chunk.recycle();
+            }
+            throw new CancellationException("The forecast was abandoned");
+        }
+        return chunk == END ? null : chunk;
+    }
+
+    /**
+     * Tells the parser the writer has stopped taking chunks, and recycles any it didn't take.
+     * The writer must call this when it is done, however it stops.
+     */
+    public void close() {
+        mClosed = true;
+        if (mNext != null && mNext != END && mNext != ABORTED) {
+            mNext.recycle();
+        }
+        mNext = null;
+        ForecastBatch chunk;
+        while ((chunk = mChunks.poll()) != null) {
+            if (chunk != END && chunk != ABORTED) {
+                chunk.recycle();
+            }
+        }
+    }
+
+    /**
+     * @return true once the writer has stopped taking chunks
+     */
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    private void offer(ForecastBatch chunk) throws IOException {
+        try {
+            while (!mClosed) {
+                if (mChunks.offer(chunk, PUT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    /*
+                     * If the writer closed the queue after we checked, but emptied it before the
+                     * chunk went in, no one will take or recycle it, so it's taken back here.
+                     * Otherwise close() got it, and recycled it.
+                     */
+                    if (mClosed && mChunks.remove(chunk)) {
+                        break;
+                    }
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while handing over the forecast");
+        }
+        throw new IOException("The forecast writer has stopped");
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The latest forecast, saved by the sync in a small binary file that can be read back without
+ * parsing JSON or querying SQLite. Starting the app and showing a notification only need the
+ * forecast as it was when it was last stored, so they read this instead.
+ * <p>
+ * The file holds a header followed by the forecast column by column, like a
+ * {@link ForecastBatch}, with every value at a fixed offset:
+ * <pre>
+ *     int    magic ("SNSF")
+ *     int    version
+ *     int    number of days, n
+ *     int    reserved, 0
+ *     long   time the snapshot was written, in milliseconds
+ *     double latitude of the city
+ *     double longitude of the city
+ *     long[n]   dates
+ *     int[n]    weather ids
+ *     int[n]    humidities
+ *     double[n] min temperatures, max temperatures, pressures, wind speeds, wind directions
+ * </pre>
+ * all big-endian. A snapshot is read by mapping the file into memory, and each value is read from
+ * the mapping when it's asked for, so nothing is copied or decoded up front.
+ */
+public final class ForecastSnapshot {
+
+    private static final String TAG = ForecastSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast.snapshot";
+
+    private static final int MAGIC = 0x534e5346;
+
+    /* Change this whenever the layout changes; a snapshot of another version is ignored */
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 40;
+    private static final int OFFSET_SIZE = 8;
+    private static final int OFFSET_WRITTEN_AT = 16;
+    private static final int OFFSET_LATITUDE = 24;
+    private static final int OFFSET_LONGITUDE = 32;
+
+    /* The columns saveStoredForecast reads, in the order ForecastBatch#add takes them */
+    private static final String[] STORED_FORECAST_PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+    };
+
+    /* Every snapshot write goes through this, so two syncs can't interleave their files */
+    private static final Object sWriteLock = new Object();
+
+    private final ByteBuffer mBuffer;
+    private final int mSize;
+
+    private ForecastSnapshot(ByteBuffer buffer, int size) {
+        mBuffer = buffer;
+        mSize = size;
+    }
+
+    /**
+     * @param context Used to find the app's files directory
+     * @return The file the snapshot is kept in
+     */
+    public static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Saves a forecast as the latest snapshot, replacing the last one. The new file is written
+     * alongside the old one and renamed over it, so a reader sees either the whole of the old
+     * snapshot or the whole of the new one.
+     *
+     * @param context   Used to find the app's files directory
+     * @param weather   The days of the forecast. It is not recycled.
+     * @param latitude  The latitude of the forecast's city
+     * @param longitude The longitude of the forecast's city
+     * @return true if the snapshot was saved
+     */
+    public static boolean save(Context context, ForecastBatch weather, double latitude,
+            double longitude) {
+        try {
+            write(getFile(context), weather, latitude, longitude, System.currentTimeMillis());
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't save the forecast snapshot", e);
+            return false;
+        }
+    }
+
+    /**
+     * Saves the forecast our ContentProvider has stored, from today on, as the latest snapshot.
+     * This is for when the forecast was written a few days at a time and there is no batch of
+     * the whole of it to save, so call it once the write has been committed.
+     *
+     * @param context   Used to access the ContentResolver and the app's files directory
+     * @param latitude  The latitude of the forecast's city
+     * @param longitude The longitude of the forecast's city
+     * @return true if the snapshot was saved
+     */
+    public static boolean saveStoredForecast(Context context, double latitude,
+            double longitude) {
+        ContentResolver resolver = context.getContentResolver();
+        Cursor cursor = resolver.query(
+                WeatherEntry.CONTENT_URI,
+                STORED_FORECAST_PROJECTION,
+                WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return false;
+        }
+
+        ForecastBatch weather = ForecastBatch.obtain();
+        try {
+            while (cursor.moveToNext()) {
+                weather.add(cursor.getLong(0), cursor.getInt(1), cursor.getDouble(2),
+                        cursor.getDouble(3), cursor.getInt(4), cursor.getDouble(5),
+                        cursor.getDouble(6), cursor.getDouble(7));
+            }
+            return save(context, weather, latitude, longitude);
+        } finally {
+            cursor.close();
+            weather.recycle();
+        }
+    }
+
+    /**
+     * Reads the latest snapshot.
+     *
+     * @param context Used to find the app's files directory
+     * @return The snapshot, or null if there isn't one or it can't be read
+     */
+    public static ForecastSnapshot load(Context context) {
+        try {
+            return read(getFile(context));
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read the forecast snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the latest snapshot, for when the forecast it holds is no longer wanted.
+     *
+     * @param context Used to find the app's files directory
+     */
+    public static void delete(Context context) {
+        synchronized (sWriteLock) {
+            getFile(context).delete();
+        }
+    }
+
+    static void write(File file, ForecastBatch weather, double latitude, double longitude,
+            long writtenAt) throws IOException {
+        int size = weather.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + size * rowBytes());
+
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0)
+                .putLong(writtenAt).putDouble(latitude).putDouble(longitude);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(weather.getDate(i));
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putInt(weather.getWeatherId(i));
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putInt(weather.getHumidity(i));
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putDouble(weather.getMinTemp(i));
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putDouble(weather.getMaxTemp(i));
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putDouble(weather.getPressure(i));
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putDouble(weather.getWindSpeed(i));
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putDouble(weather.getDegrees(i));
+        }
+        buffer.flip();
+
+        synchronized (sWriteLock) {
+            File temporary = new File(file.getPath() + ".tmp");
+            FileOutputStream out = new FileOutputStream(temporary);
+            try {
+                FileChannel channel = out.getChannel();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+
+            if (!temporary.renameTo(file)) {
+                temporary.delete();
+                throw new IOException("Couldn't replace " + file);
+            }
+        }
+    }
+
+    static ForecastSnapshot read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        ByteBuffer buffer;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            /* The mapping stays valid after the file is closed, or replaced by the next sync */
+            FileChannel channel = in.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+
+        if (buffer.capacity() < HEADER_BYTES
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION) {
+            Log.w(TAG, "Ignoring a forecast snapshot that isn't version " + VERSION);
+            return null;
+        }
+
+        int size = buffer.getInt(OFFSET_SIZE);
+        if (size < 0 || buffer.capacity() != HEADER_BYTES + (long) size * rowBytes()) {
+            Log.w(TAG, "Ignoring a forecast snapshot of the wrong length");
+            return null;
+        }
+
+        return new ForecastSnapshot(buffer, size);
+    }
+
+    /**
+     * @return The number of days in the snapshot
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return When the snapshot was written, in milliseconds since the epoch
+     */
+    public long getWrittenAt() {
+        return mBuffer.getLong(OFFSET_WRITTEN_AT);
+    }
+
+    public double getCityLatitude() {
+        return mBuffer.getDouble(OFFSET_LATITUDE);
+    }
+
+    public double getCityLongitude() {
+        return mBuffer.getDouble(OFFSET_LONGITUDE);
+    }
+
+    public long getDate(int index) {
+        return mBuffer.getLong(offset(0, 8, index));
+    }
+
+    public int getWeatherId(int index) {
+        return mBuffer.getInt(offset(8, 4, index));
+    }
+
+    public int getHumidity(int index) {
+        return mBuffer.getInt(offset(12, 4, index));
+    }
+
+    public double getMinTemp(int index) {
+        return mBuffer.getDouble(offset(16, 8, index));
+    }
+
+    public double getMaxTemp(int index) {
+        return mBuffer.getDouble(offset(24, 8, index));
+    }
+
+    public double getPressure(int index) {
+        return mBuffer.getDouble(offset(32, 8, index));
+    }
+
+    public double getWindSpeed(int index) {
+        return mBuffer.getDouble(offset(40, 8, index));
+    }
+
+    public double getDegrees(int index) {
+        return mBuffer.getDouble(offset(48, 8, index));
+    }
+
+    /**
+     * @param date A normalized UTC date, in milliseconds
+     * @return The index of the day with that date, or -1 if there isn't one
+     */
+    public int indexOfDate(long date) {
+        for (int i = 0; i < mSize; i++) {
+            if (getDate(i) == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param date A normalized UTC date, in milliseconds
+     * @return true if the snapshot has the weather for that day or any day after it
+     */
+    public boolean hasDaysFrom(long date) {
+        return mSize > 0 && getDate(mSize - 1) >= date;
+    }
+
+    /**
+     * Returns the days in the snapshot from a given date onwards as a Cursor, for code written
+     * against the weather table. The Cursor has the given columns of the weather table, in the
+     * same order.
+     *
+     * @param projection The columns to return, from {@link WeatherEntry}
+     * @param fromDate   The normalized UTC date of the first day to return, in milliseconds
+     * @return A Cursor over the days, oldest first
+     */
+    public Cursor toCursor(String[] projection, long fromDate) {
+        MatrixCursor cursor = new MatrixCursor(projection, mSize);
+        for (int i = 0; i < mSize; i++) {
+            if (getDate(i) < fromDate) {
+                continue;
+            }
+            Object[] row = new Object[projection.length];
+            for (int column = 0; column < projection.length; column++) {
+                row[column] = getValue(i, projection[column]);
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private Object getValue(int index, String column) {
+        if (WeatherEntry.COLUMN_DATE.equals(column)) {
+            return getDate(index);
+        } else if (WeatherEntry.COLUMN_WEATHER_ID.equals(column)) {
+            return getWeatherId(index);
+        } else if (WeatherEntry.COLUMN_MIN_TEMP.equals(column)) {
+            return getMinTemp(index);
+        } else if (WeatherEntry.COLUMN_MAX_TEMP.equals(column)) {
+            return getMaxTemp(index);
+        } else if (WeatherEntry.COLUMN_HUMIDITY.equals(column)) {
+            return getHumidity(index);
+        } else if (WeatherEntry.COLUMN_PRESSURE.equals(column)) {
+            return getPressure(index);
+        } else if (WeatherEntry.COLUMN_WIND_SPEED.equals(column)) {
+            return getWindSpeed(index);
+        } else if (WeatherEntry.COLUMN_DEGREES.equals(column)) {
+            return getDegrees(index);
+        } else if (WeatherEntry._ID.equals(column)) {
+            /* The row's position stands in for its id, which the snapshot doesn't keep */
+            return index;
+        }
+        throw new IllegalArgumentException("Unknown column: " + column);
+    }
+
+    /*
+     * The offset of one value: columnOffset is where the column starts, per day of the snapshot,
+     * after the header, and width is the size of each value in the column
+     */
+    private int offset(int columnOffset, int width, int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        }
+        return HEADER_BYTES + columnOffset * mSize + width * index;
+    }
+
+    /* The bytes each day takes up: a long, two ints and five doubles */
+    private static int rowBytes() {
+        return 8 + 4 + 4 + 5 * 8;
+    }
+}
@@ -20,6 +20,7 @@ import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
 
 public final class SunshinePreferences {
 
@@ -31,6 +32,18 @@ public final class SunshinePreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    /*
+     * The cache validators (ETag and Last-Modified) the weather server sent along with the
+     * forecast that is currently stored in the database. Since the database only ever holds one
+     * location's forecast, we store a single set of validators together with the URL they belong
+     * to and the day the forecast was parsed on. Our rows are dated relative to the day they were
+     * parsed, so validators from a previous day must not be used to skip a sync.
+     */
+    private static final String PREF_VALIDATOR_URL = "validator_url";
+    private static final String PREF_VALIDATOR_DAY = "validator_day";
+    private static final String PREF_ETAG = "etag";
+    private static final String PREF_LAST_MODIFIED = "last_modified";
+
     /**
      * Helper method to handle setting location details in Preferences (city name, latitude,
      * longitude)
@@ -50,6 +63,32 @@ public final class SunshinePreferences {
         editor.apply();
     }
 
+    /**
+     * Saves the location's coordinates like {@link #setLocationDetails(Context, double, double)},
+     * but only if they differ from the ones already saved. A sync reports the same coordinates
+     * almost every time, and this saves us writing the preferences file for nothing.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param lat     the latitude of the city
+     * @param lon     the longitude of the city
+     * @return true if the coordinates changed and were saved
+     */
+    public static boolean updateLocationDetails(Context context, double lat, double lon) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+
+        long latBits = Double.doubleToRawLongBits(lat);
+        long lonBits = Double.doubleToRawLongBits(lon);
+
+        /* The defaults can never be the saved values, as they differ from the values we compare */
+        if (sp.getLong(PREF_COORD_LAT, ~latBits) == latBits
+                && sp.getLong(PREF_COORD_LONG, ~lonBits) == lonBits) {
+            return false;
+        }
+
+        setLocationDetails(context, lat, lon);
+        return true;
+    }
+
     /**
      * Resets the location coordinates stores in SharedPreferences.
      *
@@ -64,6 +103,77 @@ public final class SunshinePreferences {
         editor.apply();
     }
 
+    /**
+     * Saves the cache validators that were sent with the forecast that was just stored in the
+     * database. These are sent back to the server on the next sync for the same URL so that it
+     * can tell us if the forecast hasn't changed.
+     *
+     * @param context      Context used to get the SharedPreferences
+     * @param url          The URL the forecast was requested from
+     * @param eTag         The ETag header of the response, or null if there wasn't one
+     * @param lastModified The Last-Modified header of the response, or null if there wasn't one
+     */
+    public static void saveForecastValidators(Context context, String url, String eTag,
+            String lastModified) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+
+        if (eTag == null && lastModified == null) {
+            editor.remove(PREF_VALIDATOR_URL);
+            editor.remove(PREF_VALIDATOR_DAY);
+        } else {
+            editor.putString(PREF_VALIDATOR_URL, url);
+            editor.putLong(PREF_VALIDATOR_DAY, SunshineDateUtils.getNormalizedUtcDateForToday());
+        }
+        editor.putString(PREF_ETAG, eTag);
+        editor.putString(PREF_LAST_MODIFIED, lastModified);
+        editor.apply();
+    }
+
+    /**
+     * Returns the cache validators for the forecast stored in the database, as long as that
+     * forecast was requested from the given URL and parsed today.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param url     The URL that is about to be requested
+     * @return an array containing the ETag and Last-Modified values (either of which may be
+     * null), or null if there are no usable validators for this URL
+     */
+    public static String[] getForecastValidators(Context context, String url) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+
+        if (!url.equals(sp.getString(PREF_VALIDATOR_URL, null))) {
+            return null;
+        }
+
+        long validatorDay = sp.getLong(PREF_VALIDATOR_DAY, 0);
+        if (validatorDay != SunshineDateUtils.getNormalizedUtcDateForToday()) {
+            return null;
+        }
+
+        String[] validators = new String[2];
+        validators[0] = sp.getString(PREF_ETAG, null);
+        validators[1] = sp.getString(PREF_LAST_MODIFIED, null);
+        return validators;
+    }
+
+    /**
+     * Resets the cache validators stored in SharedPreferences, forcing the next sync to download
+     * the full forecast.
+     *
+     * @param context Context used to get the SharedPreferences
+     */
+    public static void resetForecastValidators(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+
+        editor.remove(PREF_VALIDATOR_URL);
+        editor.remove(PREF_VALIDATOR_DAY);
+        editor.remove(PREF_ETAG);
+        editor.remove(PREF_LAST_MODIFIED);
+        editor.apply();
+    }
+
     /**
      * Returns the location currently set in Preferences. The default location this method
      * will return is "94043,USA", which is Mountain View, California. Mountain View is the
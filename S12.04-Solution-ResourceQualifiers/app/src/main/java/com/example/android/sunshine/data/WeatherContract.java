@@ -56,6 +56,15 @@ public class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
+    /*
+     * The path for the three-hourly forecast. A range of it is looked at with
+     *
+     *     content://com.example.android.sunshine/hourly/<start>/<end>
+     *
+     * where start and end are UTC times in milliseconds.
+     */
+    public static final String PATH_HOURLY = "hourly";
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -135,4 +144,65 @@ public class WeatherContract {
             return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
         }
     }
+
+    /*
+     * Inner class that defines the table contents of the hourly table, which holds the forecast
+     * in three hour steps rather than a day at a time. Its columns have the same names and
+     * meanings as the weather table's, apart from the date, so a ForecastBatch can be written
+     * to either.
+     */
+    public static final class HourlyEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query the hourly table from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_HOURLY)
+                .build();
+
+        /* Used internally as the name of our hourly table. */
+        public static final String TABLE_NAME = "hourly";
+
+        /* The length of time each row of the hourly forecast covers */
+        public static final long PERIOD_IN_MILLIS = 3 * 60 * 60 * 1000;
+
+        /*
+         * The UTC time the three hours start at, in milliseconds, which is always a multiple of
+         * PERIOD_IN_MILLIS. Unlike the weather table's date, this is not normalized to the start
+         * of a day.
+         */
+        public static final String COLUMN_DATE = "date";
+
+        /* Weather ID as returned by API, used to identify the icon to be used */
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+
+        /* Min and max temperatures in °C over the three hours */
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+
+        /* Humidity is stored as a float representing percentage */
+        public static final String COLUMN_HUMIDITY = "humidity";
+
+        /* Pressure is stored as a float representing hPa */
+        public static final String COLUMN_PRESSURE = "pressure";
+
+        /* Wind speed is stored as a float representing wind speed in m/s */
+        public static final String COLUMN_WIND_SPEED = "wind";
+
+        /* Meteorological degrees the wind blows from, as in the weather table */
+        public static final String COLUMN_DEGREES = "degrees";
+
+        /**
+         * Builds a URI for the rows of the hourly forecast that start at or after one time and
+         * before another.
+         *
+         * @param start The UTC time to start at, in milliseconds
+         * @param end   The UTC time to end before, in milliseconds
+         * @return Uri to query the rows in that range
+         */
+        public static Uri buildHourlyUriWithRange(long start, long end) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(Long.toString(start))
+                    .appendPath(Long.toString(end))
+                    .build();
+        }
+    }
 }
\ No newline at end of file
@@ -15,10 +15,14 @@
  */
 package com.example.android.sunshine.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
+import com.example.android.sunshine.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
 /**
@@ -34,7 +38,8 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
     /*
      * If you change the database schema, you must increment the database version or the onUpgrade
-     * method will not be called.
+     * method will not be called. Add a step for the new version to WeatherMigrations as well, so
+     * that existing databases are upgraded rather than wiped.
      *
      * The reason DATABASE_VERSION starts at 3 is because Sunshine has been used in conjunction
      * with the Android course for a while now. Believe it or not, older versions of Sunshine
@@ -43,10 +48,120 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      * use-case, we wanted to watch out for it and warn you what could happen if you mistakenly
      * version your databases.
      */
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 5;
+
+    /*
+     * The index every query for the forecast list is answered from. It holds the columns of
+     * MainActivity.MAIN_FORECAST_PROJECTION, sorted by date, so the list's query reads today's
+     * rows onwards from the index alone, already in order, without touching the table. If the
+     * list needs another column, it must be added here too, in a new migration step, or
+     * TestQueryPlans fails.
+     *
+     * Every query WeatherProvider serves, and what answers it:
+     *
+     *     weather, date >= ? ORDER BY date, the list's columns   this index, covering
+     *     weather, date >= ?, _ID only                           either index, covering
+     *     weather, date = ?, the notification's columns         the UNIQUE(date) index
+     *     weather, date = ?, every column                        the UNIQUE(date) index
+     *     hourly, date >= ? AND date < ?                         the UNIQUE(date) index
+     *
+     * ForecastMerger also reads every stored row of the table it merges a sync into, inside the
+     * sync's transaction. That is a whole-table read on purpose: the table only holds the days
+     * or hours of one forecast, and the merger needs all of them to know which to keep.
+     */
+    static final String WEATHER_FORECAST_INDEX = "weather_forecast";
+
+    /*
+     * How many pages the write-ahead log may grow to before a commit copies it back into the
+     * database. A sync writes a few dozen pages at most, so this only matters for the rare very
+     * large write, which is checkpointed by the sync thread that made it.
+     */
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+
+    /* What the write-ahead log is truncated back to once it has been checkpointed */
+    private static final long JOURNAL_SIZE_LIMIT_BYTES = 512 * 1024;
+
+    private final Context mContext;
+    private final boolean mWriteAheadLogging;
 
     public WeatherDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, true);
+    }
+
+    /**
+     * @param context           Used to open the database
+     * @param name              The name of the database file
+     * @param writeAheadLogging true to use write-ahead logging where the device supports it,
+     *                          false to keep SQLite's rollback journal
+     */
+    WeatherDbHelper(Context context, String name, boolean writeAheadLogging) {
+        super(context, name, null, DATABASE_VERSION);
+        mContext = context;
+        mWriteAheadLogging = writeAheadLogging
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
+        /*
+         * With write-ahead logging, the sync writing a forecast no longer blocks the loaders
+         * reading the old one. Readers see the database as it was when the write began until it
+         * commits, and SQLiteDatabase gives them connections of their own to do it on.
+         */
+        if (mWriteAheadLogging && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    /**
+     * Called when the database is opened, before it is created or upgraded. Only called from
+     * Jelly Bean on; before that, {@link #onOpen(SQLiteDatabase)} configures the database.
+     *
+     * @param db The database.
+     */
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(SQLiteDatabase db) {
+        if (mWriteAheadLogging) {
+            configureWriteAheadLog(db);
+        }
+    }
+
+    /**
+     * Called when the database has been opened. Before Jelly Bean, SQLiteOpenHelper can't turn
+     * on write-ahead logging itself, so it is turned on here.
+     *
+     * @param db The database.
+     */
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (mWriteAheadLogging && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                && !db.isReadOnly() && db.enableWriteAheadLogging()) {
+            configureWriteAheadLog(db);
+        }
+    }
+
+    /*
+     * In write-ahead logging mode, NORMAL only syncs the log when it is checkpointed rather than
+     * on every commit. A power cut can lose the last forecast we stored, which the next sync
+     * downloads again, but can't corrupt the database.
+     *
+     * The page size is left at the platform's default, which matches the filesystem's blocks;
+     * SQLite can't change it once a database is in write-ahead logging mode anyway.
+     */
+    private static void configureWriteAheadLog(SQLiteDatabase db) {
+        db.execSQL("PRAGMA synchronous = NORMAL");
+        /* These two report their new value as a row, which execSQL refuses */
+        runPragma(db, "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES);
+        runPragma(db, "PRAGMA journal_size_limit = " + JOURNAL_SIZE_LIMIT_BYTES);
+    }
+
+    private static void runPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     /**
@@ -99,15 +214,51 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
          * that SQL with the execSQL method of our SQLite database object.
          */
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+
+        /*
+         * The hourly table has the same columns. Its unique date is also what range queries on
+         * it are answered from, as SQLite keeps an index for it.
+         */
+        final String SQL_CREATE_HOURLY_TABLE =
+
+                "CREATE TABLE " + HourlyEntry.TABLE_NAME + " (" +
+
+                HourlyEntry._ID               + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+
+                HourlyEntry.COLUMN_DATE       + " INTEGER NOT NULL, "                 +
+
+                HourlyEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL,"                  +
+
+                HourlyEntry.COLUMN_MIN_TEMP   + " REAL NOT NULL, "                    +
+                HourlyEntry.COLUMN_MAX_TEMP   + " REAL NOT NULL, "                    +
+
+                HourlyEntry.COLUMN_HUMIDITY   + " REAL NOT NULL, "                    +
+                HourlyEntry.COLUMN_PRESSURE   + " REAL NOT NULL, "                    +
+
+                HourlyEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, "                    +
+                HourlyEntry.COLUMN_DEGREES    + " REAL NOT NULL, "                    +
+
+                " UNIQUE (" + HourlyEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_HOURLY_TABLE);
+
+        sqLiteDatabase.execSQL("CREATE INDEX " + WEATHER_FORECAST_INDEX
+                + " ON " + WeatherEntry.TABLE_NAME + " ("
+                + WeatherEntry.COLUMN_DATE + ", "
+                + WeatherEntry.COLUMN_MAX_TEMP + ", "
+                + WeatherEntry.COLUMN_MIN_TEMP + ", "
+                + WeatherEntry.COLUMN_WEATHER_ID + ")");
     }
 
     /**
-     * This database is only a cache for online data, so its upgrade policy is simply to discard
-     * the data and call through to onCreate to recreate the table. Note that this only fires if
-     * you change the version number for your database (in our case, DATABASE_VERSION). It does NOT
-     * depend on the version number for your application found in your app/build.gradle file. If
-     * you want to update the schema without wiping data, commenting out the current body of this
-     * method should be your top priority before modifying this method.
+     * Upgrades the database one version at a time with the steps in {@link WeatherMigrations},
+     * keeping the forecast that's stored, so a new version of the schema doesn't make every
+     * device download the forecast again at the same moment. Note that this only fires if you
+     * change the version number for your database (in our case, DATABASE_VERSION). It does NOT
+     * depend on the version number for your application found in your app/build.gradle file.
+     * <p>
+     * A database older than the oldest version there are steps for, or from a version we don't
+     * know, is only a cache for online data, so it is discarded and created again.
      *
      * @param sqLiteDatabase Database that is being upgraded
      * @param oldVersion     The old database version
@@ -115,7 +266,21 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        if (WeatherMigrations.canMigrate(oldVersion, newVersion)) {
+            WeatherMigrations.migrate(sqLiteDatabase, oldVersion, newVersion);
+            return;
+        }
+
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HourlyEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
+
+        /*
+         * The snapshot holds the forecast that was just dropped. Without it, the app sees there
+         * is no forecast and syncs straight away. The validators describe that forecast too, and
+         * would let the server answer that sync with a 304.
+         */
+        ForecastSnapshot.delete(mContext);
+        SunshinePreferences.resetForecastValidators(mContext);
     }
-}
\ No newline at end of file
+}
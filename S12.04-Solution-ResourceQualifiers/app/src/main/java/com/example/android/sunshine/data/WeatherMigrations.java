@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.data.WeatherContract.HourlyEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+/**
+ * Upgrades the weather database from one version to the next while keeping the forecast in it,
+ * so that changing the schema doesn't send every device back to the server at once.
+ * <p>
+ * There is one step for each version, which upgrades a database of the version before it. A
+ * step changes as little as it can: ALTER TABLE ... ADD COLUMN for a new column, CREATE TABLE or
+ * CREATE INDEX for new ones, and {@link #rebuildTable} for anything ALTER TABLE can't do, such as
+ * changing a column's type or constraints. A step creates things as they were at its version,
+ * not as {@link WeatherDbHelper#onCreate} creates them now, so it must never change once it has
+ * been released.
+ */
+final class WeatherMigrations {
+
+    /* The oldest version there are steps from. Older databases are rebuilt instead. */
+    static final int OLDEST_MIGRATABLE_VERSION = 3;
+
+    /* One step of an upgrade, from the version before it */
+    interface Step {
+        void migrate(SQLiteDatabase db);
+    }
+
+    /* STEPS[i] upgrades version OLDEST_MIGRATABLE_VERSION + i to the version after it */
+    private static final Step[] STEPS = {
+
+            /* 3 to 4: the three-hourly forecast */
+            new Step() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + HourlyEntry.TABLE_NAME + " ("
+                            + HourlyEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + HourlyEntry.COLUMN_DATE + " INTEGER NOT NULL, "
+                            + HourlyEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL,"
+                            + HourlyEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, "
+                            + HourlyEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, "
+                            + HourlyEntry.COLUMN_HUMIDITY + " REAL NOT NULL, "
+                            + HourlyEntry.COLUMN_PRESSURE + " REAL NOT NULL, "
+                            + HourlyEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, "
+                            + HourlyEntry.COLUMN_DEGREES + " REAL NOT NULL, "
+                            + " UNIQUE (" + HourlyEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);");
+                }
+            },
+
+            /* 4 to 5: the covering index for the forecast list */
+            new Step() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE INDEX " + WeatherDbHelper.WEATHER_FORECAST_INDEX
+                            + " ON " + WeatherEntry.TABLE_NAME + " ("
+                            + WeatherEntry.COLUMN_DATE + ", "
+                            + WeatherEntry.COLUMN_MAX_TEMP + ", "
+                            + WeatherEntry.COLUMN_MIN_TEMP + ", "
+                            + WeatherEntry.COLUMN_WEATHER_ID + ")");
+                }
+            },
+    };
+
+    private WeatherMigrations() {
+    }
+
+    /**
+     * @param oldVersion The version of the database
+     * @param newVersion The version to upgrade it to
+     * @return true if there are steps all the way from one to the other
+     */
+    static boolean canMigrate(int oldVersion, int newVersion) {
+        return oldVersion >= OLDEST_MIGRATABLE_VERSION
+                && oldVersion <= newVersion
+                && newVersion <= OLDEST_MIGRATABLE_VERSION + STEPS.length;
+    }
+
+    /**
+     * Runs the steps from one version to another, in order. SQLiteOpenHelper upgrades within a
+     * transaction, so if a step fails, none of them take effect.
+     *
+     * @param db         The database to upgrade
+     * @param oldVersion The version of the database
+     * @param newVersion The version to upgrade it to
+     * @throws IllegalArgumentException If there aren't steps all the way from one to the other
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (!canMigrate(oldVersion, newVersion)) {
+            throw new IllegalArgumentException(
+                    "Can't migrate from version " + oldVersion + " to " + newVersion);
+        }
+        for (int version = oldVersion; version < newVersion; version++) {
+            STEPS[version - OLDEST_MIGRATABLE_VERSION].migrate(db);
+        }
+    }
+
+    /**
+     * Changes a table in a way ALTER TABLE can't, by renaming it out of the way, creating it
+     * again and copying its rows across. Indexes on the old table are dropped with it, so the
+     * step must create any the new table needs afterwards.
+     *
+     * @param db        The database, within the upgrade's transaction
+     * @param table     The table to rebuild
+     * @param createSql The CREATE TABLE statement for the new table, under the same name
+     * @param columns   The columns to copy, which both tables must have
+     */
+    static void rebuildTable(SQLiteDatabase db, String table, String createSql,
+            String[] columns) {
+        String oldTable = table + "_old";
+        db.execSQL("ALTER TABLE " + table + " RENAME TO " + oldTable);
+        db.execSQL(createSql);
+
+        StringBuilder columnList = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            columnList.append(i == 0 ? "" : ", ").append(columns[i]);
+        }
+        db.execSQL("INSERT INTO " + table + " (" + columnList + ")"
+                + " SELECT " + columnList + " FROM " + oldTable);
+        db.execSQL("DROP TABLE " + oldTable);
+    }
+}
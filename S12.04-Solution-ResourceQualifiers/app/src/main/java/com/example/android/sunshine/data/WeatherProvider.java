@@ -17,15 +17,23 @@ package com.example.android.sunshine.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
  * bulkInsert data, query data, and delete data.
@@ -45,6 +53,8 @@ public class WeatherProvider extends ContentProvider {
      */
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_HOURLY = 200;
+    public static final int CODE_HOURLY_WITH_RANGE = 201;
 
     /*
      * The URI Matcher used by this content provider. The leading "s" in this variable name
@@ -54,6 +64,35 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    /*
+     * The columns a batch is inserted into, in the order they are bound. The weather and hourly
+     * tables have the same ones.
+     */
+    static final String[] BATCH_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+    };
+
+    private static volatile boolean sCompiledInsertEnabled = true;
+
+    /**
+     * Chooses how the days of a {@link ForecastBatch} are inserted: with one INSERT statement
+     * compiled for the whole transaction, which each day's values are bound to in turn, or with
+     * SQLiteDatabase#insert and a ContentValues for each day, which builds and compiles the
+     * INSERT again for every one of them. The rows are the same either way.
+     *
+     * @param enabled true to insert with a compiled statement
+     */
+    public static void setCompiledInsertEnabled(boolean enabled) {
+        sCompiledInsertEnabled = enabled;
+    }
+
     /**
      * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
      * CODE_WEATHER_WITH_DATE constants defined above.
@@ -96,6 +135,16 @@ public class WeatherProvider extends ContentProvider {
          */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        /* This URI is content://com.example.android.sunshine/hourly/ */
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY, CODE_HOURLY);
+
+        /*
+         * This URI would look something like
+         * content://com.example.android.sunshine/hourly/1472212800000/1472299200000, for the
+         * rows of the hourly forecast from the first time up to the second.
+         */
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY + "/#/#", CODE_HOURLY_WITH_RANGE);
+
         return matcher;
     }
 
@@ -142,20 +191,25 @@ public class WeatherProvider extends ContentProvider {
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
 
-        switch (sUriMatcher.match(uri)) {
+        int match = sUriMatcher.match(uri);
+        switch (match) {
 
+            /* The hourly forecast is inserted the same way, but its dates aren't normalized */
             case CODE_WEATHER:
+            case CODE_HOURLY:
+                String table = getTableName(match);
                 db.beginTransaction();
                 int rowsInserted = 0;
                 try {
                     for (ContentValues value : values) {
                         long weatherDate =
                                 value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-                        if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
+                        if (match == CODE_WEATHER
+                                && !SunshineDateUtils.isDateNormalized(weatherDate)) {
                             throw new IllegalArgumentException("Date must be normalized to insert");
                         }
 
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        long _id = db.insert(table, null, value);
                         if (_id != -1) {
                             rowsInserted++;
                         }
@@ -176,6 +230,544 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Inserts the days of a forecast batch, or the rows of an hourly one, in the same way as
+     * {@link #bulkInsert(Uri, ContentValues[])}, but without a ContentValues per day. A batch can't
+     * be passed through a ContentResolver, so this is only reachable from our own process; use
+     * {@link #bulkInsert(ContentResolver, Uri, ForecastBatch)} to get to it.
+     *
+     * @param uri   The content:// URI of the insertion request.
+     * @param batch The days to add to the database. It is not recycled.
+     *
+     * @return The number of days that were inserted.
+     */
+    public int bulkInsert(@NonNull Uri uri, @NonNull ForecastBatch batch) {
+        String table = getTableName(sUriMatcher.match(uri));
+        if (table == null) {
+            throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsInserted;
+
+        db.beginTransaction();
+        BatchInserter inserter = null;
+        try {
+            inserter = new BatchInserter(db, table);
+            rowsInserted = inserter.insert(batch);
+            db.setTransactionSuccessful();
+        } finally {
+            if (inserter != null) {
+                inserter.close();
+            }
+            db.endTransaction();
+        }
+
+        if (rowsInserted > 0) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * Replaces all of the weather, or all of the hourly forecast, with a new forecast, writing
+     * only what has changed. In one transaction, each day of the new forecast is compared with
+     * the day of the same date that is already stored: a day that is the same is left alone, one
+     * that differs is updated and one that is new is inserted. Stored days the new forecast
+     * doesn't have, and any before today, are deleted. Observers of the URI are notified once,
+     * and only if a row actually changed, so a sync that brings nothing new reloads nothing.
+     * <p>
+     * Anyone reading the weather sees the old forecast until the whole new one is in place. If
+     * the new forecast has no days from today on, the old one is kept.
+     * <p>
+     * Like {@link #bulkInsert(Uri, ForecastBatch)}, this is only reachable from our own process;
+     * use {@link #replaceForecast(ContentResolver, Uri, ForecastBatch)} to get to it.
+     *
+     * @param uri      The content:// URI of the weather or the hourly forecast.
+     * @param forecast The new forecast. It is not recycled.
+     *
+     * @return The number of days of the new forecast that are now stored.
+     */
+    public int replaceForecast(@NonNull Uri uri, @NonNull ForecastBatch forecast) {
+        String table = getTableName(sUriMatcher.match(uri));
+        if (table == null) {
+            throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int daysStored;
+        int rowsChanged = 0;
+
+        db.beginTransaction();
+        ForecastMerger merger = null;
+        try {
+            merger = new ForecastMerger(db, table);
+            daysStored = merger.merge(forecast);
+            if (daysStored > 0) {
+                merger.finish();
+                rowsChanged = merger.getRowsChanged();
+                db.setTransactionSuccessful();
+            }
+        } finally {
+            if (merger != null) {
+                merger.close();
+            }
+            db.endTransaction();
+        }
+
+        if (rowsChanged > 0) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+
+        return daysStored;
+    }
+
+    /**
+     * Replaces all of the weather, or all of the hourly forecast, with a forecast that arrives a
+     * chunk at a time, merging each chunk as soon as it's taken from the queue. The forecast is
+     * merged into the stored one as {@link #replaceForecast(Uri, ForecastBatch)} describes, in
+     * one transaction, so anyone reading the weather sees the old forecast until the whole new
+     * one is in place. The transaction isn't begun until the first chunk has arrived, so a slow
+     * download doesn't keep the database locked before there is anything to write. If the
+     * parser aborts the forecast, or it turns out to have no days from today on, the old
+     * forecast is kept.
+     * <p>
+     * Like {@link #bulkInsert(Uri, ForecastBatch)}, this is only reachable from our own process;
+     * use {@link #replaceForecast(ContentResolver, Uri, ForecastChunkQueue)} to get to it.
+     *
+     * @param uri    The content:// URI of the weather or the hourly forecast.
+     * @param chunks The queue to take the new forecast from. It is closed when this returns.
+     *
+     * @return The number of days of the new forecast that are now stored.
+     * @throws InterruptedException If the thread is interrupted while waiting for a chunk
+     * @throws java.util.concurrent.CancellationException If the parser aborted the forecast
+     */
+    public int replaceForecast(@NonNull Uri uri, @NonNull ForecastChunkQueue chunks)
+            throws InterruptedException {
+        try {
+            String table = getTableName(sUriMatcher.match(uri));
+            if (table == null) {
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+
+            chunks.awaitChunk();
+
+            final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            int daysStored = 0;
+            int rowsChanged = 0;
+
+            db.beginTransaction();
+            ForecastMerger merger = null;
+            try {
+                /* Every chunk is merged with the same statements */
+                merger = new ForecastMerger(db, table);
+                ForecastBatch chunk;
+                while ((chunk = chunks.take()) != null) {
+                    try {
+                        daysStored += merger.merge(chunk);
+                    } finally {
+                        chunk.recycle();
+                    }
+                }
+
+                if (daysStored > 0) {
+                    merger.finish();
+                    rowsChanged = merger.getRowsChanged();
+                    db.setTransactionSuccessful();
+                }
+            } finally {
+                if (merger != null) {
+                    merger.close();
+                }
+                db.endTransaction();
+            }
+
+            if (rowsChanged > 0) {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+
+            return daysStored;
+        } finally {
+            chunks.close();
+        }
+    }
+
+    /**
+     * Replaces all of the weather, or all of the hourly forecast, with a new forecast through
+     * the given ContentResolver. When the provider for the URI is a WeatherProvider in our own
+     * process, only what has changed is written, as
+     * {@link #replaceForecast(Uri, ForecastBatch)} describes. Otherwise the forecast is replaced
+     * with a delete and a bulkInsert.
+     *
+     * @param resolver The ContentResolver to find the provider with
+     * @param uri      The content:// URI of the weather or the hourly forecast.
+     * @param forecast The new forecast. It is not recycled.
+     *
+     * @return The number of days of the new forecast that are now stored.
+     */
+    public static int replaceForecast(ContentResolver resolver, Uri uri,
+            ForecastBatch forecast) {
+        ContentProviderClient client = resolver.acquireContentProviderClient(uri);
+        if (client != null) {
+            try {
+                ContentProvider provider = client.getLocalContentProvider();
+                if (provider instanceof WeatherProvider) {
+                    return ((WeatherProvider) provider).replaceForecast(uri, forecast);
+                }
+            } finally {
+                client.release();
+            }
+        }
+
+        if (forecast.size() == 0) {
+            return 0;
+        }
+        resolver.delete(uri, null, null);
+        return resolver.bulkInsert(uri, forecast.toContentValues());
+    }
+
+    /**
+     * Replaces all of the weather with a forecast that arrives a chunk at a time, through the
+     * given ContentResolver. When the provider for the URI is a WeatherProvider in our own
+     * process, the chunks are merged as they arrive, as
+     * {@link #replaceForecast(Uri, ForecastChunkQueue)} describes. Otherwise they are collected
+     * and the forecast is replaced with a delete and a bulkInsert once they have all arrived.
+     *
+     * @param resolver The ContentResolver to find the provider with
+     * @param uri      The content:// URI of the weather.
+     * @param chunks   The queue to take the new forecast from. It is closed when this returns.
+     *
+     * @return The number of days of the new forecast that are now stored.
+     * @throws InterruptedException If the thread is interrupted while waiting for a chunk
+     * @throws java.util.concurrent.CancellationException If the parser aborted the forecast
+     */
+    public static int replaceForecast(ContentResolver resolver, Uri uri,
+            ForecastChunkQueue chunks) throws InterruptedException {
+        ContentProviderClient client = resolver.acquireContentProviderClient(uri);
+        if (client != null) {
+            try {
+                ContentProvider provider = client.getLocalContentProvider();
+                if (provider instanceof WeatherProvider) {
+                    return ((WeatherProvider) provider).replaceForecast(uri, chunks);
+                }
+            } finally {
+                client.release();
+            }
+        }
+
+        ForecastBatch forecast = ForecastBatch.obtain();
+        try {
+            ForecastBatch chunk;
+            while ((chunk = chunks.take()) != null) {
+                forecast.addAll(chunk);
+                chunk.recycle();
+            }
+
+            if (forecast.size() == 0) {
+                return 0;
+            }
+            resolver.delete(uri, null, null);
+            return resolver.bulkInsert(uri, forecast.toContentValues());
+        } finally {
+            chunks.close();
+            forecast.recycle();
+        }
+    }
+
+    /*
+     * Merges a new forecast into the weather or hourly table, within a transaction the caller
+     * has begun, so that only the rows that changed are written. The days already stored are
+     * read once, when this is created, and each new day is compared with the stored day of the
+     * same date. A day that is inserted joins the stored days, so if the forecast has its date
+     * again, that day is compared with it rather than inserted twice. Once the whole forecast has
+     * been merged, finish() deletes the stored days it didn't have, along with any before today.
+     * The caller must close it before ending the transaction.
+     */
+    private static final class ForecastMerger {
+        private final SQLiteDatabase mDb;
+        private final String mTable;
+        private final long mToday;
+
+        private final BatchInserter mInserter;
+        private final SQLiteStatement mUpdate;
+
+        /* The stored days, and which of them the new forecast has had so far */
+        private final ForecastBatch mStored;
+        private final Map<Long, Integer> mStoredIndices;
+        private boolean[] mKept;
+
+        private int mRowsChanged;
+
+        ForecastMerger(SQLiteDatabase db, String table) {
+            mDb = db;
+            mTable = table;
+            mToday = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+            mStored = ForecastBatch.obtain();
+            SQLiteStatement update = null;
+            BatchInserter inserter = null;
+            try {
+                Cursor cursor = db.query(table, BATCH_COLUMNS, null, null, null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        mStored.add(cursor.getLong(0), cursor.getInt(1), cursor.getDouble(2),
+                                cursor.getDouble(3), cursor.getInt(4), cursor.getDouble(5),
+                                cursor.getDouble(6), cursor.getDouble(7));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                mStoredIndices = new HashMap<Long, Integer>(mStored.size() * 2);
+                for (int i = 0; i < mStored.size(); i++) {
+                    mStoredIndices.put(mStored.getDate(i), i);
+                }
+                mKept = new boolean[mStored.size()];
+
+                update = db.compileStatement(buildUpdateSql(table));
+                inserter = new BatchInserter(db, table);
+            } finally {
+                if (inserter == null) {
+                    if (update != null) {
+                        update.close();
+                    }
+                    mStored.recycle();
+                }
+            }
+            mUpdate = update;
+            mInserter = inserter;
+        }
+
+        /*
+         * Writes the days of a batch that are new or have changed, and returns the number of
+         * its days that are stored, changed or not. Days before today are left out.
+         */
+        int merge(ForecastBatch batch) {
+            int daysStored = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                long date = batch.getDate(i);
+                if (date < mToday) {
+                    continue;
+                }
+
+                Integer stored = mStoredIndices.get(date);
+                if (stored == null) {
+                    if (mInserter.insert(batch, i)) {
+                        addKeptDay(batch, i);
+                        mRowsChanged++;
+                        daysStored++;
+                    }
+                    continue;
+                }
+
+                /* A date the forecast repeats is only counted once */
+                if (!mKept[stored]) {
+                    mKept[stored] = true;
+                    daysStored++;
+                }
+                if (!batch.isSameDay(i, mStored, stored)) {
+                    /* In the order of buildUpdateSql, which ends with the date */
+                    mUpdate.bindLong(1, batch.getWeatherId(i));
+                    mUpdate.bindDouble(2, batch.getMinTemp(i));
+                    mUpdate.bindDouble(3, batch.getMaxTemp(i));
+                    mUpdate.bindLong(4, batch.getHumidity(i));
+                    mUpdate.bindDouble(5, batch.getPressure(i));
+                    mUpdate.bindDouble(6, batch.getWindSpeed(i));
+                    mUpdate.bindDouble(7, batch.getDegrees(i));
+                    mUpdate.bindLong(8, date);
+                    mUpdate.execute();
+                    mStored.set(stored, batch, i);
+                    mRowsChanged++;
+                }
+            }
+            return daysStored;
+        }
+
+        /* Adds a day that was just inserted to the stored days, as one the forecast has had */
+        private void addKeptDay(ForecastBatch batch, int i) {
+            int index = mStored.size();
+            mStored.add(batch, i);
+            mStoredIndices.put(batch.getDate(i), index);
+            if (index == mKept.length) {
+                mKept = Arrays.copyOf(mKept, Math.max(index * 2, 16));
+            }
+            mKept[index] = true;
+        }
+
+        /* Deletes the stored days that the new forecast didn't have, or that are past */
+        void finish() {
+            SQLiteStatement delete = mDb.compileStatement("DELETE FROM " + mTable
+                    + " WHERE " + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?");
+            try {
+                for (int i = 0; i < mStored.size(); i++) {
+                    if (!mKept[i]) {
+                        delete.bindLong(1, mStored.getDate(i));
+                        delete.execute();
+                        mRowsChanged++;
+                    }
+                }
+            } finally {
+                delete.close();
+            }
+        }
+
+        /* The number of rows inserted, updated or deleted so far */
+        int getRowsChanged() {
+            return mRowsChanged;
+        }
+
+        void close() {
+            mUpdate.close();
+            mInserter.close();
+            mStored.recycle();
+        }
+
+        private static String buildUpdateSql(String table) {
+            StringBuilder sql = new StringBuilder("UPDATE ")
+                    .append(table)
+                    .append(" SET ");
+            /* Every column but the date, which comes first in BATCH_COLUMNS */
+            for (int i = 1; i < BATCH_COLUMNS.length; i++) {
+                sql.append(i == 1 ? "" : ", ").append(BATCH_COLUMNS[i]).append(" = ?");
+            }
+            return sql.append(" WHERE ")
+                    .append(BATCH_COLUMNS[0])
+                    .append(" = ?")
+                    .toString();
+        }
+    }
+
+    /*
+     * Inserts the days of batches into the weather or hourly table, within a transaction the
+     * caller has begun. The INSERT is compiled once, when this is created, and each day's values
+     * are bound to it by position, so nothing is built or boxed for each day. The caller must
+     * close it before ending the transaction.
+     */
+    private static final class BatchInserter {
+        private final SQLiteDatabase mDb;
+        private final String mTable;
+        private final boolean mDaily;
+
+        /* Only one of these is used, depending on whether compiled inserts are enabled */
+        private final SQLiteStatement mStatement;
+        private final ContentValues mValue;
+
+        BatchInserter(SQLiteDatabase db, String table) {
+            mDb = db;
+            mTable = table;
+            mDaily = WeatherContract.WeatherEntry.TABLE_NAME.equals(table);
+            if (sCompiledInsertEnabled) {
+                mStatement = db.compileStatement(buildInsertSql(table));
+                mValue = null;
+            } else {
+                mStatement = null;
+                mValue = new ContentValues();
+            }
+        }
+
+        int insert(ForecastBatch batch) {
+            int rowsInserted = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                if (insert(batch, i)) {
+                    rowsInserted++;
+                }
+            }
+            return rowsInserted;
+        }
+
+        /* Inserts one day of a batch, and returns whether it was inserted */
+        boolean insert(ForecastBatch batch, int i) {
+            if (mDaily && !SunshineDateUtils.isDateNormalized(batch.getDate(i))) {
+                throw new IllegalArgumentException("Date must be normalized to insert");
+            }
+
+            long _id;
+            if (mStatement != null) {
+                /* In the order of BATCH_COLUMNS. Binding indices start at 1. */
+                mStatement.bindLong(1, batch.getDate(i));
+                mStatement.bindLong(2, batch.getWeatherId(i));
+                mStatement.bindDouble(3, batch.getMinTemp(i));
+                mStatement.bindDouble(4, batch.getMaxTemp(i));
+                mStatement.bindLong(5, batch.getHumidity(i));
+                mStatement.bindDouble(6, batch.getPressure(i));
+                mStatement.bindDouble(7, batch.getWindSpeed(i));
+                mStatement.bindDouble(8, batch.getDegrees(i));
+                _id = mStatement.executeInsert();
+            } else {
+                /* SQLiteDatabase#insert only takes a ContentValues, so we reuse one */
+                batch.copyTo(i, mValue);
+                _id = mDb.insert(mTable, null, mValue);
+            }
+            return _id != -1;
+        }
+
+        void close() {
+            if (mStatement != null) {
+                mStatement.close();
+            }
+        }
+
+        /*
+         * INSERT OR REPLACE does what the tables' ON CONFLICT REPLACE already did for
+         * SQLiteDatabase#insert: a day that is already there is replaced.
+         */
+        private static String buildInsertSql(String table) {
+            StringBuilder sql = new StringBuilder("INSERT OR REPLACE INTO ")
+                    .append(table)
+                    .append(" (");
+            for (int i = 0; i < BATCH_COLUMNS.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(BATCH_COLUMNS[i]);
+            }
+            sql.append(") VALUES (");
+            for (int i = 0; i < BATCH_COLUMNS.length; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            return sql.append(')').toString();
+        }
+    }
+
+    /**
+     * Inserts the days of a forecast batch through the given ContentResolver. When the provider
+     * for the URI is a WeatherProvider running in our own process, which it always is in
+     * Sunshine, the batch is handed to it directly. Otherwise the batch is converted to
+     * ContentValues and inserted with {@link ContentResolver#bulkInsert}.
+     *
+     * @param resolver The ContentResolver to find the provider with
+     * @param uri      The content:// URI of the insertion request.
+     * @param batch    The days to add to the database. It is not recycled.
+     *
+     * @return The number of days that were inserted.
+     */
+    public static int bulkInsert(ContentResolver resolver, Uri uri, ForecastBatch batch) {
+        ContentProviderClient client = resolver.acquireContentProviderClient(uri);
+        if (client != null) {
+            try {
+                ContentProvider provider = client.getLocalContentProvider();
+                if (provider instanceof WeatherProvider) {
+                    return ((WeatherProvider) provider).bulkInsert(uri, batch);
+                }
+            } finally {
+                client.release();
+            }
+        }
+        return resolver.bulkInsert(uri, batch.toContentValues());
+    }
+
+    /*
+     * Returns the table that the rows of a whole forecast URI are kept in, or null if the URI
+     * isn't one
+     */
+    private static String getTableName(int match) {
+        switch (match) {
+            case CODE_WEATHER:
+                return WeatherContract.WeatherEntry.TABLE_NAME;
+            case CODE_HOURLY:
+                return HourlyEntry.TABLE_NAME;
+            default:
+                return null;
+        }
+    }
+
     /**
      * Handles query requests from clients. We will use this method in Sunshine to query for all
      * of our weather data as well as to query for the weather on a particular day.
@@ -285,6 +877,43 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
 
+            /*
+             * A URI like content://com.example.android.sunshine/hourly/1472212800000/1472299200000
+             * asks for the rows of the hourly forecast that start in that range, which the index
+             * on their date finds without looking at the rest of the table.
+             */
+            case CODE_HOURLY_WITH_RANGE: {
+                String[] range = new String[]{
+                        uri.getPathSegments().get(1),
+                        uri.getPathSegments().get(2)};
+
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        HourlyEntry.TABLE_NAME,
+                        projection,
+                        HourlyEntry.COLUMN_DATE + " >= ? AND "
+                                + HourlyEntry.COLUMN_DATE + " < ?",
+                        range,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            /* content://com.example.android.sunshine/hourly/ is the whole hourly forecast */
+            case CODE_HOURLY: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        HourlyEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -324,6 +953,21 @@ public class WeatherProvider extends ContentProvider {
                         selection,
                         selectionArgs);
 
+                /*
+                 * What's stored is no longer the forecast the server's validators describe, so
+                 * the next sync must download it in full rather than accept a 304
+                 */
+                if (numRowsDeleted != 0) {
+                    SunshinePreferences.resetForecastValidators(getContext());
+                }
+                break;
+
+            case CODE_HOURLY:
+                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        HourlyEntry.TABLE_NAME,
+                        selection,
+                        selectionArgs);
+
                 break;
 
             default:
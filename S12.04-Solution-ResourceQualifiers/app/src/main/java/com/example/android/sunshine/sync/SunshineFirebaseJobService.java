@@ -26,7 +26,7 @@ import com.firebase.jobdispatcher.RetryStrategy;
 
 public class SunshineFirebaseJobService extends JobService {
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    private AsyncTask<Void, Void, Boolean> mFetchWeatherTask;
 
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
@@ -41,18 +41,21 @@ public class SunshineFirebaseJobService extends JobService {
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>(){
+        mFetchWeatherTask = new AsyncTask<Void, Void, Boolean>(){
             @Override
-            protected Void doInBackground(Void... voids) {
+            protected Boolean doInBackground(Void... voids) {
                 Context context = getApplicationContext();
-                SunshineSyncTask.syncWeather(context);
-                jobFinished(jobParameters, false);
-                return null;
+                return SunshineSyncTask.syncWeather(context);
             }
 
+            /*
+             * If the sync failed for a reason that is likely to pass, such as a timeout or a
+             * server error, ask the dispatcher to run the job again using the job's retry
+             * strategy rather than waiting for the next scheduled sync.
+             */
             @Override
-            protected void onPostExecute(Void aVoid) {
-                jobFinished(jobParameters, false);
+            protected void onPostExecute(Boolean needsReschedule) {
+                jobFinished(jobParameters, needsReschedule);
             }
         };
 
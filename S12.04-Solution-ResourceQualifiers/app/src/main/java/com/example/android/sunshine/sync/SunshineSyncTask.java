@@ -15,30 +15,88 @@
  */
 package com.example.android.sunshine.sync;
 
-import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
+import android.os.Build;
 import android.text.format.DateUtils;
+import android.util.Log;
 
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastChunkQueue;
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherProvider;
+import com.example.android.sunshine.utilities.ForecastResponse;
+import com.example.android.sunshine.utilities.ForecastValidationReport;
 import com.example.android.sunshine.utilities.NetworkUtils;
 import com.example.android.sunshine.utilities.NotificationUtils;
+import com.example.android.sunshine.utilities.OpenWeatherHourlyJsonUtils;
 import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.ParsedForecast;
+import com.example.android.sunshine.utilities.RetryPolicy;
+import com.example.android.sunshine.utilities.SingleFlight;
 
+import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SunshineSyncTask {
 
+    private static final String TAG = SunshineSyncTask.class.getSimpleName();
+
+    /*
+     * An immediate sync from SunshineSyncIntentService and a scheduled one from
+     * SunshineFirebaseJobService can easily overlap. Rather than queueing them up behind each
+     * other, a sync that starts while another one for the same URL is running just waits for
+     * that one to finish and shares its outcome.
+     */
+    private static final SingleFlight<Void> sSyncsInFlight = new SingleFlight<Void>();
+
+    /*
+     * Syncs for different URLs (the location changed while a sync was running) still download
+     * and parse in parallel, but they take turns replacing the contents of the database.
+     */
+    private static final Object sStoreLock = new Object();
+
+    /*
+     * When a sync writes the forecast while it is still downloading, the parser hands the writer
+     * this many days at a time, and gets this many chunks ahead of it at most.
+     */
+    private static final int PIPELINE_CHUNK_DAYS = 4;
+    private static final int PIPELINE_MAX_CHUNKS = 2;
+
+    private static volatile boolean sPipelinedSyncEnabled = true;
+
+    /**
+     * Chooses whether a sync writes the forecast into the database while it is still downloading,
+     * a few days at a time, or downloads and parses all of it first. Writing while downloading
+     * needs the streaming parser, so it's only done when that is used too.
+     *
+     * @param enabled true to write the forecast while it downloads
+     */
+    public static void setPipelinedSyncEnabled(boolean enabled) {
+        sPipelinedSyncEnabled = enabled;
+    }
+
     /**
      * Performs the network request for updated weather, parses the JSON from that request, and
      * inserts the new weather information into our ContentProvider. Will notify the user that new
      * weather has been loaded if the user hasn't been notified of the weather within the last day
      * AND they haven't disabled notifications in the preferences screen.
      *
+     * If a sync for the same URL is already running, this waits for it to finish instead of
+     * fetching the same forecast again.
+     *
      * @param context Used to access utility methods and the ContentResolver
+     * @return true if the sync failed in a way that is likely to go away on its own, meaning it
+     * should be tried again soon rather than at the next scheduled sync
      */
-    synchronized public static void syncWeather(Context context) {
+    public static boolean syncWeather(final Context context) {
 
         try {
             /*
@@ -46,71 +104,420 @@ public class SunshineSyncTask {
              * weather. It will decide whether to create a URL based off of the latitude and
              * longitude or off of a simple location as a String.
              */
-            URL weatherRequestUrl = NetworkUtils.getUrl(context);
+            final URL weatherRequestUrl = NetworkUtils.getUrl(context);
+
+            sSyncsInFlight.execute(weatherRequestUrl.toString(), new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    syncWeather(context, weatherRequestUrl);
+                    return null;
+                }
+            });
+
+            /*
+             * The three-hourly forecast only comes from servers that have one, and is fetched
+             * after the daily one, so it never holds that up.
+             */
+            final URL hourlyRequestUrl = NetworkUtils.getHourlyUrl(context);
+            if (hourlyRequestUrl != null) {
+                sSyncsInFlight.execute(hourlyRequestUrl.toString(), new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        syncHourlyWeather(context, hourlyRequestUrl);
+                        return null;
+                    }
+                });
+            }
+            return false;
+
+        } catch (Exception e) {
+            Log.e(TAG, "Weather sync failed", e);
+            return RetryPolicy.isRetryable(e);
+        }
+    }
+
+    /**
+     * Does the actual work of a sync for one URL. Only one of these runs at a time for any URL.
+     *
+     * @param context           Used to access utility methods and the ContentResolver
+     * @param weatherRequestUrl The URL to fetch the forecast from
+     * @throws Exception If the forecast can't be fetched, parsed or stored
+     */
+    private static void syncWeather(final Context context, final URL weatherRequestUrl)
+            throws Exception {
+        /*
+         * Use the URL to retrieve and parse the JSON. A dropped connection or an overloaded
+         * server is usually gone a few seconds later, so those failures are retried a couple of
+         * times before we give up on this sync.
+         */
+        FetchedForecast fetchedForecast = RetryPolicy.DEFAULT.execute(
+                new Callable<FetchedForecast>() {
+                    @Override
+                    public FetchedForecast call() throws Exception {
+                        return fetchForecast(context, weatherRequestUrl);
+                    }
+                });
+
+        /* Nothing has changed since our last sync, so there is nothing to parse or store */
+        if (fetchedForecast == null) {
+            return;
+        }
+
+        ParsedForecast forecast = fetchedForecast.forecast;
+        String eTag = fetchedForecast.eTag;
+        String lastModified = fetchedForecast.lastModified;
 
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+        /* If the forecast was written while it downloaded, it's already stored */
+        boolean stored = fetchedForecast.storedDays > 0;
 
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+        /*
+         * In cases where our JSON contained an error code, the parser would have returned null.
+         * We need to check for those cases here to prevent any NullPointerExceptions being
+         * thrown. We also have no reason to insert fresh data if there isn't any to insert.
+         */
+        if (forecast != null) {
+            try {
+                /* Parsing saves nothing, so the city's coordinates are only saved from here */
+                forecast.commitLocationDetails(context);
 
+                ForecastBatch weatherBatch = forecast.getWeather();
+                if (weatherBatch != null && weatherBatch.size() != 0) {
+                    storeForecast(context, weatherRequestUrl, forecast, eTag, lastModified);
+                    stored = true;
+                }
+            } finally {
+                /* The batch's arrays are reused by the next sync */
+                forecast.recycle();
+            }
+        }
+
+        if (stored) {
             /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-             * would have returned null. We need to check for those cases here to prevent any
-             * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
-             * there isn't any to insert.
+             * Finally, after we insert data into the ContentProvider, determine whether or not
+             * we should notify the user that the weather has been refreshed.
              */
-            if (weatherValues != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
-                ContentResolver sunshineContentResolver = context.getContentResolver();
+            boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
 
-                /* Delete old weather data because we don't need to keep multiple days' data */
-                sunshineContentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
+            /*
+             * If the last notification was shown was more than 1 day ago, we want to send
+             * another notification to the user that the weather has been updated. Remember,
+             * it's important that you shouldn't spam your users with notifications.
+             */
+            long timeSinceLastNotification = SunshinePreferences
+                    .getEllapsedTimeSinceLastNotification(context);
 
-                /* Insert our new weather data into Sunshine's ContentProvider */
-                sunshineContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        weatherValues);
+            boolean oneDayPassedSinceLastNotification = false;
 
-                /*
-                 * Finally, after we insert data into the ContentProvider, determine whether or not
-                 * we should notify the user that the weather has been refreshed.
-                 */
-                boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
+            if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
+                oneDayPassedSinceLastNotification = true;
+            }
 
-                /*
-                 * If the last notification was shown was more than 1 day ago, we want to send
-                 * another notification to the user that the weather has been updated. Remember,
-                 * it's important that you shouldn't spam your users with notifications.
-                 */
-                long timeSinceLastNotification = SunshinePreferences
-                        .getEllapsedTimeSinceLastNotification(context);
+            /*
+             * We only want to show the notification if the user wants them shown and we
+             * haven't shown a notification in the past day.
+             */
+            if (notificationsEnabled && oneDayPassedSinceLastNotification) {
+                NotificationUtils.notifyUserOfNewWeather(context);
+            }
 
-                boolean oneDayPassedSinceLastNotification = false;
+            /* If the code reaches this point, we have successfully performed our sync */
+        }
+    }
+
+    /**
+     * Fetches and stores the three-hourly forecast. The coordinates of the location, and the
+     * notification, are left to the daily forecast.
+     *
+     * @param context          Used to access the response cache and the ContentResolver
+     * @param hourlyRequestUrl The URL to fetch the hourly forecast from
+     * @throws Exception If the forecast can't be fetched, parsed or stored
+     */
+    private static void syncHourlyWeather(final Context context, final URL hourlyRequestUrl)
+            throws Exception {
+        ParsedForecast forecast = RetryPolicy.DEFAULT.execute(
+                new Callable<ParsedForecast>() {
+                    @Override
+                    public ParsedForecast call() throws Exception {
+                        return fetchHourlyForecast(context, hourlyRequestUrl);
+                    }
+                });
+
+        /* The server reported an error, or our copy is still current */
+        if (forecast == null) {
+            return;
+        }
 
-                if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
-                    oneDayPassedSinceLastNotification = true;
+        try {
+            ForecastBatch hourlyBatch = forecast.getWeather();
+            if (hourlyBatch.size() != 0) {
+                synchronized (sStoreLock) {
+                    WeatherProvider.replaceForecast(
+                            context.getContentResolver(),
+                            WeatherContract.HourlyEntry.CONTENT_URI,
+                            hourlyBatch);
                 }
+            }
+        } finally {
+            forecast.recycle();
+        }
+    }
+
+    /*
+     * Makes one attempt at downloading and parsing the hourly forecast. Returns null if the
+     * server reported an error or said our copy is still current.
+     */
+    private static ParsedForecast fetchHourlyForecast(Context context, URL hourlyRequestUrl)
+            throws Exception {
+        ForecastResponse hourlyResponse =
+                NetworkUtils.openResponseFromHttpUrl(context, hourlyRequestUrl);
+        try {
+            if (hourlyResponse.isNotModified()) {
+                return null;
+            }
 
+            ForecastValidationReport report = new ForecastValidationReport();
+            ParsedForecast forecast =
+                    OpenWeatherHourlyJsonUtils.getHourlyForecast(hourlyResponse, report);
+            logValidationReport(report);
+            return forecast;
+        } finally {
+            hourlyResponse.close();
+        }
+    }
+
+    /**
+     * Replaces the weather in our ContentProvider with a newly downloaded forecast.
+     *
+     * @param context           Used to access the ContentResolver and the cache validators
+     * @param weatherRequestUrl The URL the forecast came from
+     * @param forecast          The forecast, which must have days
+     * @param eTag              The ETag the server sent with the forecast, if any
+     * @param lastModified      The Last-Modified date the server sent with the forecast, if any
+     */
+    private static void storeForecast(Context context, URL weatherRequestUrl,
+            ParsedForecast forecast, String eTag, String lastModified) {
+        ForecastBatch weatherBatch = forecast.getWeather();
+
+        synchronized (sStoreLock) {
+            /*
+             * Merge our new weather data into Sunshine's ContentProvider, in one transaction that
+             * only writes the days that changed and drops the ones we no longer need. The
+             * provider runs in our process, so the batch is handed to it as is rather than as
+             * ContentValues.
+             */
+            WeatherProvider.replaceForecast(
+                    context.getContentResolver(),
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    weatherBatch);
+
+            /* Keep a copy that can be read back without going through the database */
+            ForecastSnapshot.save(
+                    context,
+                    weatherBatch,
+                    forecast.getCityLatitude(),
+                    forecast.getCityLongitude());
+
+            /*
+             * Remember how the server identified this version of the forecast, so the next
+             * sync can skip all of this work if it hasn't changed.
+             */
+            SunshinePreferences.saveForecastValidators(
+                    context,
+                    weatherRequestUrl.toString(),
+                    eTag,
+                    lastModified);
+        }
+    }
+
+    /**
+     * Makes one attempt at downloading the forecast, parsing it as it arrives. If the forecast we
+     * already have came from this URL, the server is asked to only send it again if it has
+     * changed.
+     *
+     * @param context           Used to access the response cache and the cache validators
+     * @param weatherRequestUrl The URL to fetch the forecast from
+     * @return The parsed forecast and its validators, or null if the server said our forecast is
+     * still current
+     * @throws Exception If the forecast couldn't be downloaded, isn't a forecast, or couldn't be
+     *                   written while it downloaded
+     */
+    private static FetchedForecast fetchForecast(Context context, URL weatherRequestUrl)
+            throws Exception {
+        ForecastResponse weatherResponse =
+                NetworkUtils.openResponseFromHttpUrl(context, weatherRequestUrl);
+        try {
+            if (weatherResponse.isNotModified()) {
+                return null;
+            }
+
+            if (sPipelinedSyncEnabled
+                    && OpenWeatherJsonUtils.isStreamingParserEnabled()
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                return fetchAndStoreForecast(context, weatherRequestUrl, weatherResponse);
+            }
+
+            /* Parse the JSON into a batch of weather values */
+            ForecastValidationReport report = new ForecastValidationReport();
+            ParsedForecast forecast = OpenWeatherJsonUtils.getForecast(weatherResponse, report);
+            logValidationReport(report);
+
+            return new FetchedForecast(
+                    forecast,
+                    weatherResponse.getETag(),
+                    weatherResponse.getLastModified(),
+                    0);
+        } finally {
+            weatherResponse.close();
+        }
+    }
+
+    /**
+     * Parses the forecast as it downloads and writes it into our ContentProvider at the same
+     * time, a few days at a time, on the writer thread. The new forecast replaces the old one in
+     * a single transaction, which is rolled back if the download or the parse fails part way.
+     *
+     * @param context           Used to access the ContentResolver and the cache validators
+     * @param weatherRequestUrl The URL the forecast is coming from
+     * @param weatherResponse   The response the forecast is coming in
+     * @return The forecast's coordinates and validators, and the number of days stored, which is
+     * 0 if the server reported an error or sent no days
+     * @throws Exception If the forecast couldn't be downloaded, isn't a forecast, or couldn't be
+     *                   written
+     */
+    private static FetchedForecast fetchAndStoreForecast(final Context context,
+            final URL weatherRequestUrl, ForecastResponse weatherResponse) throws Exception {
+        final String eTag = weatherResponse.getETag();
+        final String lastModified = weatherResponse.getLastModified();
+        final ForecastChunkQueue chunks =
+                new ForecastChunkQueue(PIPELINE_CHUNK_DAYS, PIPELINE_MAX_CHUNKS);
+
+        /*
+         * Each sync has a writer of its own, so a sync for another URL can parse and wait for its
+         * first chunk while this one writes. They still take turns with the store lock.
+         */
+        ExecutorService forecastWriter = Executors.newSingleThreadExecutor();
+        try {
+            return parseAndStoreForecast(context, weatherRequestUrl, weatherResponse, chunks,
+                    forecastWriter, eTag, lastModified);
+        } finally {
+            forecastWriter.shutdown();
+        }
+    }
+
+    /*
+     * Does the work of fetchAndStoreForecast with the writer it created, which it shuts down
+     * once this returns
+     */
+    private static FetchedForecast parseAndStoreForecast(final Context context,
+            final URL weatherRequestUrl, ForecastResponse weatherResponse,
+            final ForecastChunkQueue chunks, ExecutorService forecastWriter,
+            final String eTag, final String lastModified) throws Exception {
+        Future<Integer> writer = forecastWriter.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
                 /*
-                 * We only want to show the notification if the user wants them shown and we
-                 * haven't shown a notification in the past day.
+                 * Other syncs can write while this one's download hasn't produced any days yet.
+                 * The lock is only taken once there is something to write.
                  */
-                if (notificationsEnabled && oneDayPassedSinceLastNotification) {
-                    NotificationUtils.notifyUserOfNewWeather(context);
+                try {
+                    chunks.awaitChunk();
+                } catch (Exception e) {
+                    chunks.close();
+                    throw e;
                 }
 
-            /* If the code reaches this point, we have successfully performed our sync */
+                synchronized (sStoreLock) {
+                    int storedDays = WeatherProvider.replaceForecast(
+                            context.getContentResolver(),
+                            WeatherContract.WeatherEntry.CONTENT_URI,
+                            chunks);
+                    if (storedDays > 0) {
+                        SunshinePreferences.saveForecastValidators(
+                                context,
+                                weatherRequestUrl.toString(),
+                                eTag,
+                                lastModified);
+                    }
+                    return storedDays;
+                }
+            }
+        });
 
+        ForecastValidationReport report = new ForecastValidationReport();
+        ParsedForecast forecast = null;
+        try {
+            forecast = OpenWeatherJsonUtils.getForecastChunks(
+                    weatherResponse.getReader(), chunks, report);
+            logValidationReport(report);
+        } catch (IOException e) {
+            /* If the writer failed, that's what stopped the parser, and it's reported below */
+            if (!chunks.isClosed()) {
+                throw e;
             }
+        } finally {
+            if (forecast == null) {
+                /* The writer rolls back. The next write can't start until it has. */
+                chunks.abort();
+            }
+        }
 
-        } catch (Exception e) {
-            /* Server probably invalid */
-            e.printStackTrace();
+        try {
+            int storedDays = writer.get();
+            if (forecast != null && storedDays > 0) {
+                /*
+                 * No one kept the whole forecast, which is what kept this sync's memory down, so
+                 * the snapshot is read back from what was just stored
+                 */
+                synchronized (sStoreLock) {
+                    ForecastSnapshot.saveStoredForecast(
+                            context,
+                            forecast.getCityLatitude(),
+                            forecast.getCityLongitude());
+                }
+            }
+            return new FetchedForecast(forecast, eTag, lastModified, storedDays);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (forecast == null && cause instanceof CancellationException) {
+                /* We stopped the writer ourselves, as the server sent an error, not a forecast */
+                return new FetchedForecast(null, eTag, lastModified, 0);
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /*
+     * Days that had to be repaired or left out of the forecast don't fail the sync, but we want
+     * to know how often the server sends them.
+     */
+    private static void logValidationReport(ForecastValidationReport report) {
+        if (report.hasErrors()) {
+            Log.w(TAG, "Repaired or skipped days in the forecast: " + report);
+        }
+    }
+
+    /*
+     * A downloaded and parsed forecast, along with how the server identified that version of it.
+     * A forecast written while it downloaded has no days, only the number of days stored.
+     */
+    private static final class FetchedForecast {
+        final ParsedForecast forecast;
+        final String eTag;
+        final String lastModified;
+        final int storedDays;
+
+        FetchedForecast(ParsedForecast forecast, String eTag, String lastModified,
+                int storedDays) {
+            this.forecast = forecast;
+            this.storedDays = storedDays;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
         }
     }
-}
\ No newline at end of file
+}
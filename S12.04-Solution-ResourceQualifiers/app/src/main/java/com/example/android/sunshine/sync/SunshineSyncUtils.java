@@ -28,6 +28,7 @@ import com.firebase.jobdispatcher.FirebaseJobDispatcher;
 import com.firebase.jobdispatcher.GooglePlayDriver;
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
+import com.firebase.jobdispatcher.RetryStrategy;
 import com.firebase.jobdispatcher.Trigger;
 
 import java.util.concurrent.TimeUnit;
@@ -93,6 +94,12 @@ public class SunshineSyncUtils {
                  * the old one.
                  */
                 .setReplaceCurrent(true)
+                /*
+                 * If a sync fails for a reason that is likely to pass, the job asks to be run
+                 * again. Back off exponentially between those runs so that a long outage doesn't
+                 * keep waking the device up.
+                 */
+                .setRetryStrategy(RetryStrategy.DEFAULT_EXPONENTIAL)
                 /* Once the Job is ready, call the builder's build method to return the Job */
                 .build();
 
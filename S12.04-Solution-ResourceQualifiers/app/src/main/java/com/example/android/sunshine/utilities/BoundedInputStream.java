@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.net.URL;
+
+/**
+ * Guards a response body as it is read. Reading fails with a {@link ResponseTooLargeException}
+ * as soon as more than a maximum number of bytes have come through, and, when the length of the
+ * body is known, with a {@link TruncatedResponseException} if it ends early.
+ */
+class BoundedInputStream extends FilterInputStream {
+
+    private final URL mUrl;
+    private final long mMaxBytes;
+    private final long mExpectedBytes;
+
+    private long mCount;
+
+    /**
+     * @param in            The stream to guard
+     * @param url           The URL the body came from, for error messages
+     * @param maxBytes      The most bytes the body may have
+     * @param expectedBytes The number of bytes the body should have, or -1 if that isn't known
+     */
+    BoundedInputStream(InputStream in, URL url, long maxBytes, long expectedBytes) {
+        super(in);
+        mUrl = url;
+        mMaxBytes = maxBytes;
+        mExpectedBytes = expectedBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b;
+        try {
+            b = in.read();
+        } catch (ProtocolException e) {
+            throw truncated(e);
+        }
+        if (b == -1) {
+            checkComplete();
+        } else {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        /* Never read further past the limit than the single byte that proves it was crossed */
+        long remaining = mMaxBytes - mCount + 1;
+        int bytesRead;
+        try {
+            bytesRead = in.read(buffer, offset, (int) Math.min(length, remaining));
+        } catch (ProtocolException e) {
+            throw truncated(e);
+        }
+        if (bytesRead == -1) {
+            checkComplete();
+        } else {
+            count(bytesRead);
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(Math.min(n, mMaxBytes - mCount + 1));
+        count(skipped);
+        return skipped;
+    }
+
+    /* Counting can't be rewound, so we don't support mark/reset */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long bytes) throws ResponseTooLargeException {
+        mCount += bytes;
+        if (mCount > mMaxBytes) {
+            throw new ResponseTooLargeException(mUrl, mMaxBytes);
+        }
+    }
+
+    /*
+     * Some HttpURLConnection implementations notice a body that ended early themselves, and
+     * report it as a ProtocolException. We report it the same way as if we had noticed it.
+     */
+    private IOException truncated(ProtocolException e) {
+        if (mExpectedBytes == -1 || mCount >= mExpectedBytes) {
+            return e;
+        }
+        IOException truncated = new TruncatedResponseException(mUrl, mCount, mExpectedBytes);
+        truncated.initCause(e);
+        return truncated;
+    }
+
+    private void checkComplete() throws TruncatedResponseException {
+        if (mExpectedBytes != -1 && mCount < mExpectedBytes) {
+            throw new TruncatedResponseException(mUrl, mCount, mExpectedBytes);
+        }
+    }
+}
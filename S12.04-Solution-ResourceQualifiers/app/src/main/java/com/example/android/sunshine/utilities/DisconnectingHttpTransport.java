@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * An {@link HttpTransport} that never reuses a connection. Every request pays for a new TCP (and
+ * TLS) handshake, but no state is shared between requests.
+ * <p>
+ * Calling disconnect() alone isn't enough to guarantee that: a connection whose body was read to
+ * the end may already have been returned to HttpURLConnection's pool. So we also ask the server to
+ * close the connection once it has responded.
+ */
+public class DisconnectingHttpTransport implements HttpTransport {
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+
+    /**
+     * @param connectTimeoutMillis How long to wait for a connection to be established, in
+     *                             milliseconds. 0 waits forever.
+     * @param readTimeoutMillis    How long to wait for data once connected, in milliseconds. 0
+     *                             waits forever.
+     */
+    public DisconnectingHttpTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(mConnectTimeoutMillis);
+        connection.setReadTimeout(mReadTimeoutMillis);
+        connection.setRequestProperty("Connection", "close");
+        return connection;
+    }
+
+    @Override
+    public void release(HttpURLConnection connection, InputStream body, boolean aborted)
+            throws IOException {
+        try {
+            body.close();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
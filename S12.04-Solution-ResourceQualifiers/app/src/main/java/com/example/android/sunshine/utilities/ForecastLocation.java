@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+/**
+ * A place to fetch a forecast for, described the same two ways the user can set their location:
+ * as a query string the weather server understands ("Mountain View, CA 94043"), or as a latitude
+ * and longitude.
+ */
+public final class ForecastLocation {
+
+    private final String mQuery;
+    private final double mLatitude;
+    private final double mLongitude;
+
+    private ForecastLocation(String query, double latitude, double longitude) {
+        mQuery = query;
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    /**
+     * @param query A location query, such as a city name or a postal code
+     * @return A location described by the query
+     */
+    public static ForecastLocation forQuery(String query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must not be null");
+        }
+        return new ForecastLocation(query, 0, 0);
+    }
+
+    /**
+     * @param latitude  The latitude of the location
+     * @param longitude The longitude of the location
+     * @return A location described by its coordinates
+     */
+    public static ForecastLocation forCoordinates(double latitude, double longitude) {
+        return new ForecastLocation(null, latitude, longitude);
+    }
+
+    /**
+     * @return true if this location is described by coordinates rather than a query
+     */
+    public boolean hasCoordinates() {
+        return mQuery == null;
+    }
+
+    /**
+     * @return The location query, or null if this location is described by coordinates
+     */
+    public String getQuery() {
+        return mQuery;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ForecastLocation)) {
+            return false;
+        }
+        ForecastLocation other = (ForecastLocation) o;
+        if (hasCoordinates()) {
+            return other.hasCoordinates()
+                    && Double.compare(mLatitude, other.mLatitude) == 0
+                    && Double.compare(mLongitude, other.mLongitude) == 0;
+        }
+        return mQuery.equals(other.mQuery);
+    }
+
+    @Override
+    public int hashCode() {
+        if (hasCoordinates()) {
+            long bits = Double.doubleToLongBits(mLatitude) * 31
+                    + Double.doubleToLongBits(mLongitude);
+            return (int) (bits ^ (bits >>> 32));
+        }
+        return mQuery.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return hasCoordinates() ? mLatitude + "," + mLongitude : mQuery;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+/**
+ * The body of a response from the weather server, exposed as a stream. Rather than reading the
+ * whole forecast into one String, callers read it incrementally through {@link #getReader()} or
+ * {@link #getInputStream()}. A ForecastResponse holds on to its connection (or, if it was served
+ * by the {@link ForecastResponseCache}, its cache file), so it must always be closed once the
+ * caller is done with it.
+ */
+public final class ForecastResponse implements Closeable {
+
+    private static final String TAG = ForecastResponse.class.getSimpleName();
+
+    /* The weather server always sends its JSON encoded as UTF-8 */
+    private static final String CHARSET = "UTF-8";
+
+    /* HTTP headers used for conditional requests */
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    private final String mUrl;
+    private final String mETag;
+    private final String mLastModified;
+
+    /* These are null for responses served from the cache */
+    private final HttpTransport mTransport;
+    private final HttpURLConnection mConnection;
+    private final CountingInputStream mWireStream;
+
+    private final CountingInputStream mBodyStream;
+    private final InputStream mInputStream;
+
+    private Reader mReader;
+
+    /* Set once reading the body fails with a ResponseTooLargeException */
+    private boolean mTooLarge;
+
+    /**
+     * Creates a response that is read from the network.
+     *
+     * @param transport  The transport that opened the connection, and that will release it
+     * @param connection The connection the response is being read from
+     * @param wireStream The body as it arrives over the network, possibly compressed
+     * @param body       The decompressed body
+     */
+    ForecastResponse(HttpTransport transport, HttpURLConnection connection,
+            CountingInputStream wireStream, InputStream body) {
+        mUrl = connection.getURL().toString();
+        mETag = connection.getHeaderField(HEADER_ETAG);
+        mLastModified = connection.getHeaderField(HEADER_LAST_MODIFIED);
+        mTransport = transport;
+        mConnection = connection;
+        mWireStream = wireStream;
+        mBodyStream = new CountingInputStream(new SizeLimitWatcher(body));
+        mInputStream = new BufferedInputStream(mBodyStream, NetworkUtils.BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a response that is read from the cache.
+     *
+     * @param url          The URL the response was originally requested from
+     * @param body         The cached body
+     * @param eTag         The ETag the response was originally sent with, may be null
+     * @param lastModified The Last-Modified header the response was originally sent with, may be
+     *                     null
+     */
+    ForecastResponse(String url, InputStream body, String eTag, String lastModified) {
+        mUrl = url;
+        mETag = eTag;
+        mLastModified = lastModified;
+        mTransport = null;
+        mConnection = null;
+        mWireStream = null;
+        mBodyStream = new CountingInputStream(body);
+        mInputStream = mBodyStream;
+    }
+
+    /**
+     * Returns true if the server answered a conditional request with 304 Not Modified, meaning
+     * the forecast we already have is still current. In that case, the body is empty.
+     *
+     * @return true if the response is a 304 Not Modified
+     * @throws IOException Related to reading the response status
+     */
+    public boolean isNotModified() throws IOException {
+        return mConnection != null
+                && mConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    /**
+     * @return true if this response was served from the {@link ForecastResponseCache} without
+     * going to the network
+     */
+    public boolean isFromCache() {
+        return mConnection == null;
+    }
+
+    /**
+     * @return The URL this response was requested from
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return The ETag header of the response, or null if the server didn't send one
+     */
+    public String getETag() {
+        return mETag;
+    }
+
+    /**
+     * @return The Last-Modified header of the response, or null if the server didn't send one
+     */
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * @return The number of bytes of the body read from the network so far. If the server
+     * compressed the body, this is the compressed size. This is 0 for cached responses.
+     */
+    public long getCompressedByteCount() {
+        return mWireStream == null ? 0 : mWireStream.getCount();
+    }
+
+    /**
+     * @return The number of bytes of the body that have been decompressed so far. This is at
+     * least as many as were actually consumed by the caller, as the body is read ahead into a
+     * buffer.
+     */
+    public long getDecodedByteCount() {
+        return mBodyStream.getCount();
+    }
+
+    /**
+     * Returns the decompressed bytes of the response body. Only one of this method and
+     * {@link #getReader()} should be used to consume the body.
+     *
+     * @return The buffered response body
+     */
+    public InputStream getInputStream() {
+        return mInputStream;
+    }
+
+    /**
+     * Returns the response body decoded as UTF-8 characters. The same Reader is returned on
+     * every call.
+     *
+     * @return A buffered Reader over the response body
+     * @throws IOException If the body can't be decoded
+     */
+    public Reader getReader() throws IOException {
+        if (mReader == null) {
+            mReader = new BufferedReader(
+                    new InputStreamReader(mInputStream, CHARSET),
+                    NetworkUtils.BUFFER_SIZE);
+        }
+        return mReader;
+    }
+
+    /**
+     * Reads the rest of the body into a String. Only use this when the caller really needs the
+     * whole body at once.
+     *
+     * @return The contents of the body, or null if it is empty
+     * @throws IOException Related to stream reading
+     */
+    public String readString() throws IOException {
+        Reader reader = getReader();
+
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[NetworkUtils.BUFFER_SIZE];
+        int charsRead;
+        while ((charsRead = reader.read(buffer)) != -1) {
+            builder.append(buffer, 0, charsRead);
+        }
+
+        if (builder.length() == 0) {
+            return null;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Hands the connection back to the transport that opened it, which may keep it around for
+     * the next request, and releases the decompression and caching resources.
+     *
+     * @throws IOException Related to closing the stream
+     */
+    @Override
+    public void close() throws IOException {
+        Log.v(TAG, "Read " + getDecodedByteCount() + " bytes (" + getCompressedByteCount()
+                + " over the network) from " + (isFromCache() ? "the cache for " : "") + mUrl);
+        try {
+            if (mTransport != null) {
+                mTransport.release(mConnection, mWireStream, mTooLarge);
+            }
+        } finally {
+            mInputStream.close();
+        }
+    }
+
+    /**
+     * Remembers whether the body was abandoned for going over the size limit, so that
+     * {@link #close()} can tell the transport not to download the rest of it.
+     */
+    private class SizeLimitWatcher extends FilterInputStream {
+
+        SizeLimitWatcher(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return in.read();
+            } catch (ResponseTooLargeException e) {
+                mTooLarge = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return in.read(buffer, offset, length);
+            } catch (ResponseTooLargeException e) {
+                mTooLarge = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return in.skip(n);
+            } catch (ResponseTooLargeException e) {
+                mTooLarge = true;
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small, bounded on-disk cache of forecast responses. Entries are keyed by a canonical form of
+ * the request URL, so two URLs for the same place that only differ in parameter order or in the
+ * precision of their coordinates share an entry. An entry is served until its max-age runs out,
+ * or until the UTC day it was fetched on is over, and the least recently used entries are
+ * evicted once the cache grows past its size limit.
+ * <p>
+ * Bodies are written to the cache while they are being read by the caller, and an entry is only
+ * committed once the whole body has been read.
+ */
+public final class ForecastResponseCache {
+
+    private static final String TAG = ForecastResponseCache.class.getSimpleName();
+
+    private static final String CACHE_DIRECTORY = "forecast-responses";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long TEMP_FILE_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /* Bump this whenever the layout of an entry changes; older entries are then ignored */
+    private static final int ENTRY_VERSION = 2;
+
+    /* A forecast is a few KB, so this holds plenty of locations */
+    private static final long MAX_SIZE_BYTES = 1024 * 1024;
+
+    /*
+     * How long a response is considered fresh when the server doesn't tell us. This is shorter
+     * than our sync interval, so periodic syncs always go to the network, while syncs that happen
+     * right after one another (an app restart, or an immediate sync) are served locally.
+     */
+    private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /*
+     * Coordinates are rounded to this many decimal places (about a kilometer) in cache keys.
+     * Weather doesn't change at a finer resolution than that.
+     */
+    private static final int COORDINATE_DECIMALS = 2;
+
+    private static final String LAT_PARAM = "lat";
+    private static final String LON_PARAM = "lon";
+
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    private static ForecastResponseCache sInstance;
+
+    private final File mDirectory;
+    private final long mMaxSizeBytes;
+
+    /**
+     * Returns the cache shared by the whole app, stored in the app's cache directory so the
+     * system can clear it when it runs low on storage.
+     *
+     * @param context Used to find the cache directory
+     * @return The app's forecast response cache
+     */
+    public static synchronized ForecastResponseCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(),
+                    CACHE_DIRECTORY);
+            sInstance = new ForecastResponseCache(directory, MAX_SIZE_BYTES);
+        }
+        return sInstance;
+    }
+
+    ForecastResponseCache(File directory, long maxSizeBytes) {
+        mDirectory = directory;
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Returns the cached response for this URL if there is one and it is still fresh.
+     *
+     * @param url The URL that is about to be requested
+     * @return The cached response, which the caller must close, or null on a cache miss
+     */
+    public ForecastResponse get(URL url) {
+        return get(url, SunshineDateUtils.getNormalizedUtcDateForToday());
+    }
+
+    /**
+     * Returns the cached response for this URL if it is still fresh and was fetched today. The
+     * forecast parser dates each day of a response relative to the day it parses it on, so a
+     * response fetched on another UTC day would be stored a day off, however long its max-age.
+     *
+     * @param url   The URL that is about to be requested
+     * @param today The normalized UTC date of today
+     * @return The cached response, which the caller must close, or null on a cache miss
+     */
+    synchronized ForecastResponse get(URL url, long today) {
+        String key = canonicalize(url);
+        File entry = getEntryFile(key);
+        if (!entry.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(entry), NetworkUtils.BUFFER_SIZE));
+
+            if (in.readInt() != ENTRY_VERSION || !key.equals(in.readUTF())) {
+                in.close();
+                return null;
+            }
+
+            long expiresAtMillis = in.readLong();
+            long fetchDay = in.readLong();
+            if (System.currentTimeMillis() >= expiresAtMillis || fetchDay != today) {
+                in.close();
+                entry.delete();
+                return null;
+            }
+
+            String eTag = emptyToNull(in.readUTF());
+            String lastModified = emptyToNull(in.readUTF());
+
+            /* Mark the entry as recently used, so it is the last to be evicted */
+            entry.setLastModified(System.currentTimeMillis());
+
+            return new ForecastResponse(url.toString(), in, eTag, lastModified);
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable cache entry for " + url, e);
+            closeQuietly(in);
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Wraps the body of a network response so that it is written to the cache as the caller
+     * reads it. If the response must not be cached, the body is returned unchanged.
+     *
+     * @param url        The URL that was requested
+     * @param connection The connection the response came from, used to read its headers
+     * @param body       The decompressed response body
+     * @return A stream that reads the body and caches it along the way
+     * @throws IOException Related to reading the response status
+     */
+    InputStream wrapForStore(URL url, HttpURLConnection connection, InputStream body)
+            throws IOException {
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            return body;
+        }
+
+        long maxAgeMillis = getMaxAgeMillis(connection.getHeaderField(HEADER_CACHE_CONTROL));
+        if (maxAgeMillis <= 0) {
+            return body;
+        }
+
+        String key = canonicalize(url);
+        File temp = null;
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                return body;
+            }
+
+            /* Each writer gets its own file, so concurrent requests can't corrupt each other */
+            temp = File.createTempFile(hash(key), TEMP_SUFFIX, mDirectory);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp), NetworkUtils.BUFFER_SIZE));
+            out.writeInt(ENTRY_VERSION);
+            out.writeUTF(key);
+            out.writeLong(System.currentTimeMillis() + maxAgeMillis);
+            out.writeLong(SunshineDateUtils.getNormalizedUtcDateForToday());
+            out.writeUTF(nullToEmpty(connection.getHeaderField(HEADER_ETAG)));
+            out.writeUTF(nullToEmpty(connection.getHeaderField(HEADER_LAST_MODIFIED)));
+
+            return new EntryWriter(body, out, temp, getEntryFile(key));
+        } catch (IOException e) {
+            /* Failing to cache is no reason to fail the request */
+            Log.w(TAG, "Unable to cache response for " + url, e);
+            if (temp != null) {
+                temp.delete();
+            }
+            return body;
+        }
+    }
+
+    /**
+     * Removes every entry from the cache.
+     */
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Moves a completely written entry into place and evicts the least recently used entries
+     * until the cache fits within its size limit again.
+     */
+    private synchronized void commit(File temp, File entry) {
+        entry.delete();
+        if (!temp.renameTo(entry)) {
+            temp.delete();
+            return;
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<File> entries = new ArrayList<File>(Arrays.asList(files));
+        Collections.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long lhs = a.lastModified();
+                long rhs = b.lastModified();
+                return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+            }
+        });
+
+        long totalBytes = 0;
+        for (File file : entries) {
+            totalBytes += file.length();
+        }
+
+        for (File file : entries) {
+            if (totalBytes <= mMaxSizeBytes) {
+                break;
+            }
+            /*
+             * Never evict the entry we just wrote, or entries other threads are still writing.
+             * Temporary files that haven't been touched for a while were left behind by a
+             * process that died mid-write, and can go.
+             */
+            if (file.equals(entry)) {
+                continue;
+            }
+            if (file.getName().endsWith(TEMP_SUFFIX)
+                    && System.currentTimeMillis() - file.lastModified() < TEMP_FILE_GRACE_MILLIS) {
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    private File getEntryFile(String key) {
+        return new File(mDirectory, hash(key));
+    }
+
+    /**
+     * Returns a form of the URL that is identical for every URL we consider to be the same
+     * request: the scheme and host are lower cased, the query parameters are sorted, and
+     * coordinates are rounded to COORDINATE_DECIMALS decimal places.
+     *
+     * @param url The URL to canonicalize
+     * @return The canonical form of the URL, used as the cache key
+     */
+    static String canonicalize(URL url) {
+        List<String> parameters = new ArrayList<String>();
+        String query = url.getQuery();
+        if (query != null && query.length() > 0) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = equals < 0 ? parameter : parameter.substring(0, equals);
+                String value = equals < 0 ? "" : parameter.substring(equals + 1);
+
+                if (LAT_PARAM.equals(name) || LON_PARAM.equals(name)) {
+                    try {
+                        value = String.format(Locale.US, "%." + COORDINATE_DECIMALS + "f",
+                                Double.parseDouble(value));
+                    } catch (NumberFormatException e) {
+                        /* Not a coordinate we understand, so keep it as it is */
+                    }
+                }
+                parameters.add(name + "=" + value);
+            }
+        }
+        Collections.sort(parameters);
+
+        StringBuilder canonical = new StringBuilder();
+        canonical.append(url.getProtocol().toLowerCase(Locale.US))
+                .append("://")
+                .append(url.getHost().toLowerCase(Locale.US));
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            canonical.append(':').append(url.getPort());
+        }
+        canonical.append(url.getPath());
+        for (int i = 0; i < parameters.size(); i++) {
+            canonical.append(i == 0 ? '?' : '&').append(parameters.get(i));
+        }
+        return canonical.toString();
+    }
+
+    /**
+     * Works out how long a response may be served from the cache, from its Cache-Control
+     * header.
+     *
+     * @param cacheControl The Cache-Control header of the response, may be null
+     * @return The max-age in milliseconds, or 0 if the response must not be cached
+     */
+    static long getMaxAgeMillis(String cacheControl) {
+        if (cacheControl == null) {
+            return DEFAULT_MAX_AGE_MILLIS;
+        }
+
+        for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+            directive = directive.trim();
+            if (directive.equals("no-store") || directive.equals("no-cache")) {
+                return 0;
+            }
+            if (directive.startsWith("max-age=")) {
+                try {
+                    return TimeUnit.SECONDS.toMillis(Long.parseLong(directive.substring(8)));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return DEFAULT_MAX_AGE_MILLIS;
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.length() == 0 ? null : value;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            /* Nothing more we can do */
+        }
+    }
+
+    /**
+     * Copies everything that is read from the body into a temporary cache file, and commits that
+     * file once the end of the body has been reached. If the body is closed early, or turns out
+     * to be larger than the whole cache, the temporary file is discarded.
+     */
+    private class EntryWriter extends FilterInputStream {
+
+        private final DataOutputStream mOut;
+        private final File mTemp;
+        private final File mEntry;
+
+        private long mBytesWritten;
+        private boolean mReachedEnd;
+        private boolean mAbandoned;
+
+        EntryWriter(InputStream body, DataOutputStream out, File temp, File entry) {
+            super(body);
+            mOut = out;
+            mTemp = temp;
+            mEntry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                mReachedEnd = true;
+            } else if (!mAbandoned) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int bytesRead = in.read(buffer, offset, length);
+            if (bytesRead == -1) {
+                mReachedEnd = true;
+            } else if (!mAbandoned) {
+                write(buffer, offset, bytesRead);
+            }
+            return bytesRead;
+        }
+
+        /* Skipping would leave a hole in the cached body */
+        @Override
+        public long skip(long n) throws IOException {
+            abandon();
+            return in.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (mReachedEnd && !mAbandoned) {
+                    try {
+                        mOut.close();
+                        commit(mTemp, mEntry);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Unable to commit cache entry", e);
+                        mTemp.delete();
+                    }
+                } else {
+                    abandon();
+                }
+            }
+        }
+
+        private void write(byte[] buffer, int offset, int length) {
+            mBytesWritten += length;
+            if (mBytesWritten > mMaxSizeBytes) {
+                abandon();
+                return;
+            }
+            try {
+                mOut.write(buffer, offset, length);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to write cache entry", e);
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (mAbandoned) {
+                return;
+            }
+            mAbandoned = true;
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                /* We are throwing the file away anyway */
+            }
+            mTemp.delete();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+/**
+ * The outcome of fetching the forecast for one location as part of
+ * {@link NetworkUtils#fetchForecasts}: either the forecast JSON, or the reason it couldn't be
+ * fetched. One location failing doesn't affect the others.
+ */
+public final class ForecastResult {
+
+    private final ForecastLocation mLocation;
+    private final String mJson;
+    private final Exception mError;
+
+    private ForecastResult(ForecastLocation location, String json, Exception error) {
+        mLocation = location;
+        mJson = json;
+        mError = error;
+    }
+
+    static ForecastResult success(ForecastLocation location, String json) {
+        return new ForecastResult(location, json, null);
+    }
+
+    static ForecastResult failure(ForecastLocation location, Exception error) {
+        return new ForecastResult(location, null, error);
+    }
+
+    /**
+     * @return The location this result is for
+     */
+    public ForecastLocation getLocation() {
+        return mLocation;
+    }
+
+    /**
+     * @return true if the forecast was fetched
+     */
+    public boolean isSuccessful() {
+        return mError == null;
+    }
+
+    /**
+     * @return The forecast JSON, or null if the fetch failed or the server sent an empty body
+     */
+    public String getJson() {
+        return mJson;
+    }
+
+    /**
+     * @return Why the forecast couldn't be fetched, or null if it was
+     */
+    public Exception getError() {
+        return mError;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What {@link OpenWeatherJsonUtils} found wrong with the days of a forecast while parsing it.
+ * A day with a field that is missing or makes no sense is either repaired, if the field is one
+ * we can sensibly fill in, or skipped, so the rest of the forecast can still be used. This counts
+ * how often that happened, and which fields were to blame.
+ * <p>
+ * A report is filled in by one parse at a time and is not thread safe.
+ */
+public final class ForecastValidationReport {
+
+    private int mDays;
+    private int mSkippedDays;
+    private int mRepairedDays;
+
+    /* Sorted, so that the report always reads the same way */
+    private final Map<String, Integer> mFieldErrors = new TreeMap<String, Integer>();
+
+    void recordFieldError(String field) {
+        Integer errors = mFieldErrors.get(field);
+        mFieldErrors.put(field, errors == null ? 1 : errors + 1);
+    }
+
+    void recordDay(boolean skipped, boolean repaired) {
+        mDays++;
+        if (skipped) {
+            mSkippedDays++;
+        } else if (repaired) {
+            mRepairedDays++;
+        }
+    }
+
+    /* Adds another report's counts to this one's */
+    void add(ForecastValidationReport other) {
+        mDays += other.mDays;
+        mSkippedDays += other.mSkippedDays;
+        mRepairedDays += other.mRepairedDays;
+        for (Map.Entry<String, Integer> errors : other.mFieldErrors.entrySet()) {
+            Integer ours = mFieldErrors.get(errors.getKey());
+            mFieldErrors.put(errors.getKey(),
+                    ours == null ? errors.getValue() : ours + errors.getValue());
+        }
+    }
+
+    /**
+     * @return The number of days in the forecast, including the ones that were skipped
+     */
+    public int getDayCount() {
+        return mDays;
+    }
+
+    /**
+     * @return The number of days left out of the forecast because they couldn't be repaired
+     */
+    public int getSkippedDays() {
+        return mSkippedDays;
+    }
+
+    /**
+     * @return The number of days kept in the forecast after one of their fields was repaired
+     */
+    public int getRepairedDays() {
+        return mRepairedDays;
+    }
+
+    /**
+     * @param field The name of the field in the forecast JSON, such as "humidity" or "deg"
+     * @return The number of days on which that field was missing or made no sense
+     */
+    public int getFieldErrors(String field) {
+        Integer errors = mFieldErrors.get(field);
+        return errors == null ? 0 : errors;
+    }
+
+    /**
+     * @return The number of errors for each field that had any, by field name
+     */
+    public Map<String, Integer> getFieldErrors() {
+        return Collections.unmodifiableMap(mFieldErrors);
+    }
+
+    /**
+     * @return true if any day had to be repaired or skipped
+     */
+    public boolean hasErrors() {
+        return !mFieldErrors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return mDays + " days, " + mSkippedDays + " skipped, " + mRepairedDays + " repaired, "
+                + "field errors " + mFieldErrors;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Thrown when the weather server answers with an error status (4xx or 5xx). Unlike the plain
+ * IOException HttpURLConnection throws for these, this keeps the status code, so callers can tell
+ * a server that is briefly overloaded from a request that will never succeed.
+ */
+public class HttpStatusException extends IOException {
+
+    private final int mStatusCode;
+    private final long mRetryAfterMillis;
+
+    /**
+     * @param statusCode      The HTTP status code of the response
+     * @param url             The URL that was requested
+     * @param retryAfterMillis How long the server asked us to wait before trying again, or -1 if
+     *                        it didn't say
+     */
+    public HttpStatusException(int statusCode, URL url, long retryAfterMillis) {
+        super("HTTP " + statusCode + " from " + url);
+        mStatusCode = statusCode;
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return The HTTP status code of the response
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * @return How long the server asked us to wait in its Retry-After header, or -1 if it didn't
+     */
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+
+    /**
+     * @return true for 5xx responses, which mean the server failed rather than the request
+     */
+    public boolean isServerError() {
+        return mStatusCode >= 500 && mStatusCode < 600;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Creates and releases the connections {@link NetworkUtils} uses to talk to the weather server.
+ * Implementations decide how connections are configured and whether they are reused once a
+ * response has been consumed.
+ */
+public interface HttpTransport {
+
+    /**
+     * Creates a connection to the given URL. The connection must not be connected yet, so that
+     * callers can still add request headers.
+     *
+     * @param url The URL to connect to
+     * @return A configured, unconnected connection
+     * @throws IOException Related to opening the connection
+     */
+    HttpURLConnection open(URL url) throws IOException;
+
+    /**
+     * Called once the caller is done with a response. Implementations must close the body.
+     *
+     * @param connection A connection returned by {@link #open(URL)}
+     * @param body       The raw response body of that connection, as read from the network
+     * @param aborted    true if reading the body was given up on because it was too large, so
+     *                   the rest of it must not be read
+     * @throws IOException Related to closing the body
+     */
+    void release(HttpURLConnection connection, InputStream body, boolean aborted)
+            throws IOException;
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+/**
+ * Turns the numbers in a forecast into doubles, giving exactly the same result as
+ * {@link Double#parseDouble(String)} but without its cost for the short decimals a forecast is
+ * made of, such as 1013.25 or -3.5. Those are read a digit at a time straight from the text, with
+ * no intermediate objects.
+ * <p>
+ * A decimal with at most 15 significant digits and a power of ten no larger than 10^22 either
+ * way is exactly representable as a whole number of at most 2^53 times or divided by an exact
+ * power of ten. A single multiplication or division of doubles is correctly rounded, so it gives
+ * the same double as any correct parser. Anything else, including anything that isn't a plain
+ * decimal, is handed to Double.parseDouble, which also throws for text that isn't a number.
+ */
+final class JsonNumberParser {
+
+    /* The most significant digits that are sure to fit exactly in the 53 bits of a double */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /* The powers of ten that are exact doubles */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    /* Exponents with more digits than this are left to Double.parseDouble */
+    private static final int MAX_EXPONENT_DIGITS = 4;
+
+    private JsonNumberParser() {
+    }
+
+    /**
+     * @param text A number, such as "1013.25" or "-2e-3"
+     * @return The double Double.parseDouble would return for the same text
+     * @throws NumberFormatException If the text isn't a number
+     */
+    static double parseDouble(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+
+        boolean negative = false;
+        if (i < length && text.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+
+        /* The whole part */
+        for (; i < length; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            anyDigits = true;
+            if (mantissa != 0 || digit != 0) {
+                if (++significantDigits > MAX_EXACT_DIGITS) {
+                    return slowParseDouble(text);
+                }
+                mantissa = mantissa * 10 + digit;
+            }
+        }
+
+        /* The fraction, each digit of which is another power of ten down */
+        if (i < length && text.charAt(i) == '.') {
+            for (i++; i < length; i++) {
+                int digit = text.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                anyDigits = true;
+                exponent--;
+                if (mantissa != 0 || digit != 0) {
+                    if (++significantDigits > MAX_EXACT_DIGITS) {
+                        return slowParseDouble(text);
+                    }
+                    mantissa = mantissa * 10 + digit;
+                }
+            }
+        }
+
+        if (!anyDigits) {
+            return slowParseDouble(text);
+        }
+
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                negativeExponent = text.charAt(i) == '-';
+                i++;
+            }
+            int exponentStart = i;
+            int explicitExponent = 0;
+            for (; i < length; i++) {
+                int digit = text.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                explicitExponent = explicitExponent * 10 + digit;
+            }
+            if (i == exponentStart || i - exponentStart > MAX_EXPONENT_DIGITS) {
+                return slowParseDouble(text);
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        /* Anything else after the number, such as a suffix or whitespace */
+        if (i != length) {
+            return slowParseDouble(text);
+        }
+
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+
+        double value;
+        if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return slowParseDouble(text);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double slowParseDouble(CharSequence text) {
+        return Double.parseDouble(text.toString());
+    }
+}
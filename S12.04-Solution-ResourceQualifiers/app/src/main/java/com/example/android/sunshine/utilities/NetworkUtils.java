@@ -16,17 +16,31 @@
 package com.example.android.sunshine.utilities;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.net.Uri;
 import android.util.Log;
 
+import com.example.android.sunshine.BuildConfig;
 import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -45,16 +59,25 @@ public final class NetworkUtils {
      * completely random weather data. This is incredibly useful for testing the robustness of your
      * application, as different weather JSON will provide edge cases for some of your methods.
      *
-     * If you'd prefer to test with the weather data that you will see in the videos on Udacity,
-     * you can do so by setting the FORECAST_BASE_URL to STATIC_WEATHER_URL below.
+     * The URL the app uses comes from the build: it is BuildConfig.FORECAST_BASE_URL, which
+     * defaults to STATIC_WEATHER_URL so you see the weather data from the videos on Udacity.
+     * Build with -PforecastBaseUrl=... to use DYNAMIC_WEATHER_URL instead, or to test offline or
+     * under load against the fakeweatherserver module. Tests can call setForecastBaseUrl.
      */
-    private static final String DYNAMIC_WEATHER_URL =
+    public static final String DYNAMIC_WEATHER_URL =
             "https://andfun-weather.udacity.com/weather";
 
-    private static final String STATIC_WEATHER_URL =
+    public static final String STATIC_WEATHER_URL =
             "https://andfun-weather.udacity.com/staticweather";
 
-    private static final String FORECAST_BASE_URL = STATIC_WEATHER_URL;
+    private static volatile String sForecastBaseUrl = BuildConfig.FORECAST_BASE_URL;
+
+    /*
+     * The three-hourly forecast comes from a URL of its own, which is also set by the build, with
+     * -PhourlyForecastBaseUrl=... The Udacity servers don't have one, so by default it's empty
+     * and the hourly forecast isn't fetched at all.
+     */
+    private static volatile String sHourlyForecastBaseUrl = BuildConfig.HOURLY_FORECAST_BASE_URL;
 
     /*
      * NOTE: These values only effect responses from OpenWeatherMap, NOT from the fake weather
@@ -69,6 +92,8 @@ public final class NetworkUtils {
     private static final String units = "metric";
     /* The number of days we want our API to return */
     private static final int numDays = 14;
+    /* The number of three hour periods in those days, for the hourly forecast */
+    private static final int numPeriods = numDays * 8;
 
     /* The query parameter allows us to provide a location string to the API */
     private static final String QUERY_PARAM = "q";
@@ -83,9 +108,99 @@ public final class NetworkUtils {
     /* The days parameter allows us to designate how many days of weather data we want */
     private static final String DAYS_PARAM = "cnt";
 
+    /* Size of the buffers used when reading a response body, in bytes or chars */
+    static final int BUFFER_SIZE = 8 * 1024;
+
+    /* Request headers used to make a conditional request for a forecast we already have */
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    /*
+     * Forecast JSON compresses very well, so we ask the server to compress it. Note that once we
+     * set Accept-Encoding ourselves, HttpURLConnection no longer decompresses the body for us.
+     */
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+
+    /* Sent with 429 and 503 responses to say how long to wait before asking again */
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    /*
+     * Without timeouts, a stalled server can hang a sync indefinitely. These are generous enough
+     * for a slow mobile network while still letting a sync fail in a reasonable amount of time.
+     */
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 20 * 1000;
+
+    /*
+     * A 14 day forecast is a few kilobytes of JSON, so anything near this size means something
+     * is broken upstream. Reading it anyway could run the sync process out of memory.
+     */
+    public static final long DEFAULT_MAX_RESPONSE_BYTES = 1024 * 1024;
+
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+    /* The largest response body we will read, before or after decompression */
+    private static volatile long sMaxResponseBytes = DEFAULT_MAX_RESPONSE_BYTES;
+
+    /*
+     * How many forecasts fetchForecasts downloads at once by default. HttpURLConnection keeps at
+     * most 5 idle connections per host, so this lets every request reuse a pooled connection.
+     */
+    public static final int DEFAULT_PARALLEL_REQUESTS = 4;
+
+    /* The transport used to create connections; reuses connections between requests by default */
+    private static volatile HttpTransport sTransport =
+            new PooledHttpTransport(CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+
+    /**
+     * Replaces the transport used for every request made through NetworkUtils, for example to
+     * change timeouts or to stop reusing connections.
+     *
+     * @param transport The transport to use from now on
+     */
+    public static void setTransport(HttpTransport transport) {
+        sTransport = transport;
+    }
+
+    /**
+     * Replaces the base URL every forecast URL is built on, for example to point the app at a
+     * local fake weather server.
+     *
+     * @param forecastBaseUrl The new base URL, such as DYNAMIC_WEATHER_URL
+     */
+    public static void setForecastBaseUrl(String forecastBaseUrl) {
+        sForecastBaseUrl = forecastBaseUrl;
+    }
+
+    /**
+     * Replaces the base URL every hourly forecast URL is built on.
+     *
+     * @param hourlyForecastBaseUrl The new base URL, or null or an empty String to stop fetching
+     *                              the hourly forecast
+     */
+    public static void setHourlyForecastBaseUrl(String hourlyForecastBaseUrl) {
+        sHourlyForecastBaseUrl = hourlyForecastBaseUrl;
+    }
+
+    /**
+     * Sets the largest response body, in bytes, that requests made through NetworkUtils will
+     * read. The limit applies both to the body as it arrives and to its decompressed size.
+     *
+     * @param maxBytes The new limit
+     */
+    public static void setMaxResponseBytes(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        sMaxResponseBytes = maxBytes;
+    }
+
     /**
      * Retrieves the proper URL to query for the weather data. The reason for both this method as
-     * well as {@link #buildUrlWithLocationQuery(String)} is two fold.
+     * well as {@link #buildUrlWithLocationQuery(String, String, int)} is two fold.
      * <p>
      * 1) You should be able to just use one method when you need to create the URL within the
      * app instead of calling both methods.
@@ -98,14 +213,49 @@ public final class NetworkUtils {
      * @return URL to query weather service
      */
     public static URL getUrl(Context context) {
+        return buildUrl(context, sForecastBaseUrl, numDays);
+    }
+
+    /**
+     * Retrieves the URL to query for the three-hourly forecast of the same location as
+     * {@link #getUrl(Context)}.
+     *
+     * @param context used to access other Utility methods
+     * @return URL to query weather service, or null if there is no hourly forecast to fetch
+     */
+    public static URL getHourlyUrl(Context context) {
+        String hourlyForecastBaseUrl = sHourlyForecastBaseUrl;
+        if (hourlyForecastBaseUrl == null || hourlyForecastBaseUrl.length() == 0) {
+            return null;
+        }
+        return buildUrl(context, hourlyForecastBaseUrl, numPeriods);
+    }
+
+    private static URL buildUrl(Context context, String baseUrl, int count) {
         if (SunshinePreferences.isLocationLatLonAvailable(context)) {
             double[] preferredCoordinates = SunshinePreferences.getLocationCoordinates(context);
             double latitude = preferredCoordinates[0];
             double longitude = preferredCoordinates[1];
-            return buildUrlWithLatitudeLongitude(latitude, longitude);
+            return buildUrlWithLatitudeLongitude(baseUrl, latitude, longitude, count);
         } else {
             String locationQuery = SunshinePreferences.getPreferredWeatherLocation(context);
-            return buildUrlWithLocationQuery(locationQuery);
+            return buildUrlWithLocationQuery(baseUrl, locationQuery, count);
+        }
+    }
+
+    /**
+     * Builds the URL to query for the weather at any location, rather than the one in
+     * SunshinePreferences.
+     *
+     * @param location The location to get the forecast for
+     * @return URL to query weather service
+     */
+    public static URL getUrl(ForecastLocation location) {
+        if (location.hasCoordinates()) {
+            return buildUrlWithLatitudeLongitude(sForecastBaseUrl, location.getLatitude(),
+                    location.getLongitude(), numDays);
+        } else {
+            return buildUrlWithLocationQuery(sForecastBaseUrl, location.getQuery(), numDays);
         }
     }
 
@@ -113,17 +263,20 @@ public final class NetworkUtils {
      * Builds the URL used to talk to the weather server using latitude and longitude of a
      * location.
      *
+     * @param baseUrl   The URL of the forecast to query
      * @param latitude  The latitude of the location
      * @param longitude The longitude of the location
+     * @param count     The number of days, or of periods, to ask for
      * @return The Url to use to query the weather server.
      */
-    private static URL buildUrlWithLatitudeLongitude(Double latitude, Double longitude) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+    private static URL buildUrlWithLatitudeLongitude(String baseUrl, Double latitude,
+            Double longitude, int count) {
+        Uri weatherQueryUri = Uri.parse(baseUrl).buildUpon()
                 .appendQueryParameter(LAT_PARAM, String.valueOf(latitude))
                 .appendQueryParameter(LON_PARAM, String.valueOf(longitude))
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(count))
                 .build();
 
         try {
@@ -140,15 +293,18 @@ public final class NetworkUtils {
      * Builds the URL used to talk to the weather server using a location. This location is based
      * on the query capabilities of the weather provider that we are using.
      *
+     * @param baseUrl       The URL of the forecast to query
      * @param locationQuery The location that will be queried for.
+     * @param count         The number of days, or of periods, to ask for
      * @return The URL to use to query the weather server.
      */
-    private static URL buildUrlWithLocationQuery(String locationQuery) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+    private static URL buildUrlWithLocationQuery(String baseUrl, String locationQuery,
+            int count) {
+        Uri weatherQueryUri = Uri.parse(baseUrl).buildUpon()
                 .appendQueryParameter(QUERY_PARAM, locationQuery)
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(count))
                 .build();
 
         try {
@@ -162,29 +318,344 @@ public final class NetworkUtils {
     }
 
     /**
-     * This method returns the entire result from the HTTP response.
+     * Opens a connection to the given URL and returns its body as a stream, so that the response
+     * can be consumed as it arrives rather than being held in memory all at once. The caller is
+     * responsible for closing the returned {@link ForecastResponse}.
+     *
+     * @param url The URL to fetch the HTTP response from.
+     * @return The streaming body of the HTTP response
+     * @throws IOException Related to network and stream reading
+     */
+    public static ForecastResponse openResponseFromHttpUrl(URL url) throws IOException {
+        HttpURLConnection urlConnection = openConnection(url);
+        return connect(urlConnection, null);
+    }
+
+    /**
+     * Same as {@link #openResponseFromHttpUrl(URL)}, but backed by the app's
+     * {@link ForecastResponseCache}: a fresh cached response for an equivalent URL is returned
+     * without going to the network, and a response from the network is cached as it is read.
+     * <p>
+     * Also, if the forecast currently stored in the database came from this URL, and the
+     * database still has it, the request is made conditional on that forecast having changed.
+     * Check {@link ForecastResponse#isNotModified()} before reading the body.
+     *
+     * @param context used to access the cache and the stored cache validators
+     * @param url     The URL to fetch the HTTP response from.
+     * @return The streaming body of the HTTP response
+     * @throws IOException Related to network and stream reading
+     */
+    public static ForecastResponse openResponseFromHttpUrl(Context context, URL url)
+            throws IOException {
+        ForecastResponseCache cache = ForecastResponseCache.getInstance(context);
+        ForecastResponse cachedResponse = cache.get(url);
+        if (cachedResponse != null) {
+            return cachedResponse;
+        }
+
+        HttpURLConnection urlConnection = openConnection(url);
+
+        String[] validators = SunshinePreferences.getForecastValidators(context, url.toString());
+        if (validators != null && hasForecastFromToday(context)) {
+            String eTag = validators[0];
+            String lastModified = validators[1];
+            if (eTag != null) {
+                urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, eTag);
+            }
+            if (lastModified != null) {
+                urlConnection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+
+        return connect(urlConnection, cache);
+    }
+
+    /*
+     * The validators describe the forecast we stored, not what is stored now. If the weather was
+     * emptied since, a 304 would leave us with nothing to show until tomorrow, so we only ask
+     * for one while there are rows from today onwards.
+     */
+    private static boolean hasForecastFromToday(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                null);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.getCount() != 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Creates a connection to the given URL through the current transport, with the request
+     * headers every request shares.
+     *
+     * @param url The URL to connect to
+     * @return A connection that has not been connected yet
+     * @throws IOException Related to opening the connection
+     */
+    private static HttpURLConnection openConnection(URL url) throws IOException {
+        HttpURLConnection urlConnection = sTransport.open(url);
+        urlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+        return urlConnection;
+    }
+
+    /**
+     * Sends the request and wraps the response body, decompressing it as it is read if the server
+     * compressed it. The connection is released if anything goes wrong before the
+     * ForecastResponse is handed to the caller.
+     * <p>
+     * Error responses are reported as an {@link HttpStatusException}, so callers can tell which
+     * of them are worth retrying. Bodies over the size limit fail with a
+     * {@link ResponseTooLargeException}, and bodies that end early with a
+     * {@link TruncatedResponseException}.
+     *
+     * @param urlConnection A connection that has not been connected yet
+     * @param cache         The cache to store the response in, or null to not cache it
+     * @return The streaming body of the HTTP response
+     * @throws IOException Related to network and stream reading
+     */
+    private static ForecastResponse connect(HttpURLConnection urlConnection,
+            ForecastResponseCache cache) throws IOException {
+        try {
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw new HttpStatusException(responseCode, urlConnection.getURL(),
+                        getRetryAfterMillis(urlConnection.getHeaderField(HEADER_RETRY_AFTER)));
+            }
+
+            /*
+             * Refuse a body we know is too big before reading any of it. The limit is checked
+             * again as the body is read, since the header may be missing or wrong, and once more
+             * after decompression, so a small compressed body can't expand without bound.
+             */
+            long maxBytes = sMaxResponseBytes;
+            long contentLength = getContentLength(urlConnection);
+            if (contentLength > maxBytes) {
+                throw new ResponseTooLargeException(urlConnection.getURL(), maxBytes);
+            }
+
+            CountingInputStream wireStream =
+                    new CountingInputStream(urlConnection.getInputStream());
+
+            /* A 304 has no body, so there is nothing to decompress */
+            InputStream decodedStream = wireStream;
+            if (responseCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                InputStream guardedStream = new BoundedInputStream(
+                        wireStream, urlConnection.getURL(), maxBytes, contentLength);
+                decodedStream = new BoundedInputStream(
+                        decode(guardedStream, urlConnection.getContentEncoding()),
+                        urlConnection.getURL(), maxBytes, -1);
+            }
+
+            if (cache != null) {
+                decodedStream = cache.wrapForStore(
+                        urlConnection.getURL(), urlConnection, decodedStream);
+            }
+
+            return new ForecastResponse(sTransport, urlConnection, wireStream, decodedStream);
+        } catch (IOException e) {
+            urlConnection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * HttpURLConnection#getContentLength() is an int, and getContentLengthLong() isn't available
+     * on older devices, so we read the header ourselves.
+     *
+     * @param urlConnection A connection whose response headers have arrived
+     * @return The Content-Length of the response, or -1 if it isn't known
+     */
+    private static long getContentLength(HttpURLConnection urlConnection) {
+        String contentLength = urlConnection.getHeaderField(HEADER_CONTENT_LENGTH);
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses a Retry-After header. The header may also be an HTTP date, but the weather server
+     * only ever sends a number of seconds, so that is all we look for.
+     *
+     * @param retryAfter The value of the header, may be null
+     * @return The delay in milliseconds, or -1 if there is no usable delay
+     */
+    private static long getRetryAfterMillis(String retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Wraps the raw response stream in a decompressing stream matching the Content-Encoding the
+     * server used.
+     *
+     * @param in              The raw response body
+     * @param contentEncoding The Content-Encoding header of the response, may be null
+     * @return A stream of the decompressed body
+     * @throws IOException Related to reading the compression header
+     */
+    private static InputStream decode(InputStream in, String contentEncoding)
+            throws IOException {
+        if (ENCODING_GZIP.equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+
+        if (ENCODING_DEFLATE.equalsIgnoreCase(contentEncoding)) {
+            /*
+             * "deflate" is supposed to mean zlib-wrapped data, but plenty of servers send raw
+             * deflate data instead. A zlib header is two bytes, the first with compression method
+             * 8 and the pair being a multiple of 31, so we peek at those to tell them apart.
+             */
+            BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+            buffered.mark(2);
+            int first = buffered.read();
+            int second = buffered.read();
+            buffered.reset();
+
+            boolean zlibWrapped = first != -1 && second != -1
+                    && (first & 0x0F) == 8
+                    && ((first << 8) | second) % 31 == 0;
+
+            final Inflater inflater = new Inflater(!zlibWrapped);
+            return new InflaterInputStream(buffered, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    /* An Inflater we create ourselves isn't released by InflaterInputStream */
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        return in;
+    }
+
+    /**
+     * This method returns the entire result from the HTTP response. Prefer
+     * {@link #openResponseFromHttpUrl(URL)} when the caller can consume the body incrementally.
      *
      * @param url The URL to fetch the HTTP response from.
      * @return The contents of the HTTP response, null if no response
      * @throws IOException Related to network and stream reading
      */
     public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        ForecastResponse response = openResponseFromHttpUrl(url);
         try {
-            InputStream in = urlConnection.getInputStream();
+            return response.readString();
+        } finally {
+            response.close();
+        }
+    }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+    /**
+     * Same as {@link #fetchForecasts(List, int)}, with at most
+     * {@link #DEFAULT_PARALLEL_REQUESTS} requests in flight at once.
+     *
+     * @param locations The locations to fetch forecasts for
+     * @return One result per location, in the order of the locations
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public static List<ForecastResult> fetchForecasts(List<ForecastLocation> locations)
+            throws InterruptedException {
+        return fetchForecasts(locations, DEFAULT_PARALLEL_REQUESTS);
+    }
+
+    /**
+     * Fetches the forecasts for many locations at once. Up to maxParallelRequests requests are
+     * in flight at any time, so the whole batch finishes in a fraction of the time it would take
+     * to fetch the locations one after another, which lets the radio go back to sleep sooner,
+     * without opening a connection per location all at once.
+     * <p>
+     * Every location gets a result, in the same order as the locations were given. A location
+     * that fails is reported through {@link ForecastResult#getError()} and doesn't stop the
+     * others. This blocks until every request has completed, so it must not be called on the
+     * main thread.
+     *
+     * @param locations           The locations to fetch forecasts for
+     * @param maxParallelRequests The most requests to have in flight at once
+     * @return One result per location, in the order of the locations
+     * @throws InterruptedException If the calling thread is interrupted while waiting. Any
+     *                              requests still in flight are cancelled.
+     */
+    public static List<ForecastResult> fetchForecasts(List<ForecastLocation> locations,
+            int maxParallelRequests) throws InterruptedException {
+        List<URL> urls = new ArrayList<URL>(locations.size());
+        for (ForecastLocation location : locations) {
+            urls.add(getUrl(location));
+        }
+        return fetchForecasts(locations, urls, maxParallelRequests);
+    }
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
+    /**
+     * Does the work of {@link #fetchForecasts(List, int)} with URLs that have already been
+     * built for each location.
+     */
+    static List<ForecastResult> fetchForecasts(final List<ForecastLocation> locations,
+            final List<URL> urls, int maxParallelRequests) throws InterruptedException {
+        if (maxParallelRequests < 1) {
+            throw new IllegalArgumentException(
+                    "maxParallelRequests must be at least 1: " + maxParallelRequests);
+        }
+
+        int locationCount = locations.size();
+        List<ForecastResult> results = new ArrayList<ForecastResult>(locationCount);
+        if (locationCount == 0) {
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(maxParallelRequests, locationCount));
+        try {
+            List<Future<String>> responses = new ArrayList<Future<String>>(locationCount);
+            for (int i = 0; i < locationCount; i++) {
+                final URL url = urls.get(i);
+                final ForecastLocation location = locations.get(i);
+                responses.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        if (url == null) {
+                            throw new MalformedURLException("No URL for " + location);
+                        }
+                        return getResponseFromHttpUrl(url);
+                    }
+                }));
             }
-            scanner.close();
-            return response;
+
+            for (int i = 0; i < locationCount; i++) {
+                ForecastLocation location = locations.get(i);
+                try {
+                    results.add(ForecastResult.success(location, responses.get(i).get()));
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    results.add(ForecastResult.failure(location,
+                            cause instanceof Exception ? (Exception) cause : e));
+                }
+            }
+            return results;
         } finally {
-            urlConnection.disconnect();
+            /* Cancels whatever is still running if we were interrupted */
+            executor.shutdownNow();
         }
     }
-}
\ No newline at end of file
+}
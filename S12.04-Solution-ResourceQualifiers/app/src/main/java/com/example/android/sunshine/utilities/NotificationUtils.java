@@ -15,6 +15,7 @@ import android.support.v4.content.ContextCompat;
 
 import com.example.android.sunshine.DetailActivity;
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 
@@ -53,20 +54,12 @@ public class NotificationUtils {
      */
     public static void notifyUserOfNewWeather(Context context) {
 
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
         /* Build the URI for today's weather in order to show up to date data in notification */
-        Uri todaysWeatherUri = WeatherContract.WeatherEntry
-                .buildWeatherUriWithDate(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+        Uri todaysWeatherUri = WeatherContract.WeatherEntry.buildWeatherUriWithDate(today);
 
-        /*
-         * The MAIN_FORECAST_PROJECTION array passed in as the second parameter is defined in our WeatherContract
-         * class and is used to limit the columns returned in our cursor.
-         */
-        Cursor todayWeatherCursor = context.getContentResolver().query(
-                todaysWeatherUri,
-                WEATHER_NOTIFICATION_PROJECTION,
-                null,
-                null,
-                null);
+        Cursor todayWeatherCursor = queryTodaysWeather(context, todaysWeatherUri, today);
 
         /*
          * If todayWeatherCursor is empty, moveToFirst will return false. If our cursor is not
@@ -141,6 +134,34 @@ public class NotificationUtils {
         todayWeatherCursor.close();
     }
 
+    /**
+     * Reads today's weather from the snapshot the last sync saved, as that's much quicker than
+     * querying the database. The database is only queried if the snapshot doesn't have today.
+     *
+     * @param context          Used to read the snapshot and query our ContentProvider
+     * @param todaysWeatherUri The URI of today's weather in our ContentProvider
+     * @param today            Today's normalized UTC date
+     * @return A Cursor with WEATHER_NOTIFICATION_PROJECTION, starting with today's weather if
+     * there is any
+     */
+    private static Cursor queryTodaysWeather(Context context, Uri todaysWeatherUri, long today) {
+        ForecastSnapshot snapshot = ForecastSnapshot.load(context);
+        if (snapshot != null && snapshot.indexOfDate(today) != -1) {
+            return snapshot.toCursor(WEATHER_NOTIFICATION_PROJECTION, today);
+        }
+
+        /*
+         * The WEATHER_NOTIFICATION_PROJECTION array passed in as the second parameter is used to
+         * limit the columns returned in our cursor.
+         */
+        return context.getContentResolver().query(
+                todaysWeatherUri,
+                WEATHER_NOTIFICATION_PROJECTION,
+                null,
+                null,
+                null);
+    }
+
     /**
      * Constructs and returns the summary of a particular day's forecast using various utility
      * methods and resources for formatting. This method is only used to create the text for the
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.os.Build;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a bulk response, which holds the forecasts of many cities at once:
+ * <pre>
+ *     {"cod":"200","cnt":2,"list":[{"city":{...},"list":[...]},{"city":{...},"list":[...]}]}
+ * </pre>
+ * Each element of the outer list is exactly what the server sends for one city. The payload is
+ * split into those elements without parsing them, and then they are parsed in parallel, each the
+ * same way {@link OpenWeatherJsonUtils} parses a single forecast. The caller provides the
+ * threads, and decides how long they live.
+ */
+public final class OpenWeatherBulkJsonUtils {
+
+    /*
+     * Responses with fewer cities than this are parsed on the calling thread, as handing them out
+     * to other threads would cost more than it saves
+     */
+    private static final int MIN_PARALLEL_CITIES = 4;
+
+    private OpenWeatherBulkJsonUtils() {
+    }
+
+    /**
+     * Parses the forecasts of every city in a bulk response. A city the server reported an error
+     * for, or whose forecast isn't a forecast at all, doesn't fail the others; its place in the
+     * list is null instead.
+     *
+     * @param bulkJsonStr The bulk response from the server
+     * @param executor    The executor to parse the cities on
+     * @param report      Where to record the days that had to be repaired or skipped, for every
+     *                    city together. May be null.
+     * @return One forecast per city, in the order of the response, or null if the server
+     * reported an error for the whole request. Their days come from
+     * {@link com.example.android.sunshine.data.ForecastBatch#obtain()}, so recycle each forecast
+     * when you're done with it.
+     * @throws JSONException        If the response isn't a list of forecasts
+     * @throws InterruptedException If the thread is interrupted while the cities are parsed
+     */
+    public static List<ParsedForecast> getForecastsFromJson(String bulkJsonStr,
+            ExecutorService executor, ForecastValidationReport report)
+            throws JSONException, InterruptedException {
+        List<String> cities = splitCities(bulkJsonStr);
+        if (cities == null) {
+            return null;
+        }
+
+        List<ParsedForecast> forecasts = new ArrayList<ParsedForecast>(cities.size());
+        ForecastValidationReport[] reports = new ForecastValidationReport[cities.size()];
+        boolean parsed = false;
+        try {
+            if (cities.size() < MIN_PARALLEL_CITIES) {
+                for (int i = 0; i < cities.size(); i++) {
+                    reports[i] = new ForecastValidationReport();
+                    forecasts.add(parseCity(cities.get(i), reports[i]));
+                }
+            } else {
+                parseCities(cities, reports, executor, forecasts);
+            }
+            parsed = true;
+        } finally {
+            if (!parsed) {
+                recycleAll(forecasts);
+            }
+        }
+
+        /* Each city was given a report of its own, as reports aren't thread safe */
+        if (report != null) {
+            for (ForecastValidationReport cityReport : reports) {
+                report.add(cityReport);
+            }
+        }
+        return forecasts;
+    }
+
+    private static void parseCities(List<String> cities, ForecastValidationReport[] reports,
+            ExecutorService executor, List<ParsedForecast> forecasts) throws InterruptedException {
+        List<Callable<ParsedForecast>> tasks =
+                new ArrayList<Callable<ParsedForecast>>(cities.size());
+        for (int i = 0; i < cities.size(); i++) {
+            final String city = cities.get(i);
+            final ForecastValidationReport cityReport = new ForecastValidationReport();
+            reports[i] = cityReport;
+            tasks.add(new Callable<ParsedForecast>() {
+                @Override
+                public ParsedForecast call() {
+                    return parseCity(city, cityReport);
+                }
+            });
+        }
+
+        /* invokeAll only returns once every task is done, so none of them is left running */
+        List<Future<ParsedForecast>> results = executor.invokeAll(tasks);
+        Throwable failure = null;
+        for (Future<ParsedForecast> result : results) {
+            try {
+                forecasts.add(result.get());
+            } catch (ExecutionException e) {
+                /* Keep collecting, so that the caller can recycle every city that was parsed */
+                forecasts.add(null);
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /* Parses one city, the way the single forecast parser in use would */
+    private static ParsedForecast parseCity(String city, ForecastValidationReport report) {
+        try {
+            if (OpenWeatherJsonUtils.isStreamingParserEnabled()
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                return OpenWeatherJsonUtils.getForecastFromReader(new StringReader(city), report);
+            }
+            return OpenWeatherJsonUtils.getForecastFromJson(city, report);
+        } catch (JSONException e) {
+            return null;
+        } catch (IOException e) {
+            /* The city is read from a String, so this is never thrown */
+            return null;
+        }
+    }
+
+    private static void recycleAll(List<ParsedForecast> forecasts) {
+        for (ParsedForecast forecast : forecasts) {
+            if (forecast != null) {
+                forecast.recycle();
+            }
+        }
+    }
+
+    /**
+     * Splits a bulk response into the JSON of each city, by finding the elements of its
+     * top-level "list" array. Only strings and brackets are looked at, so this is much quicker
+     * than parsing, and the cities can then be parsed on separate threads.
+     *
+     * @param bulkJsonStr The bulk response from the server
+     * @return The JSON of each city, in order, or null if the server reported an error
+     * @throws JSONException If the response has no list, the list has an empty element, or its
+     *                       brackets don't match up
+     */
+    static List<String> splitCities(String bulkJsonStr) throws JSONException {
+        List<String> cities = null;
+        boolean inList = false;
+        /* The key of the top-level value being read, and whether a key is what comes next */
+        String lastKey = null;
+        boolean expectingKey = false;
+        int depth = 0;
+        int cityStart = -1;
+
+        int length = bulkJsonStr.length();
+        for (int i = 0; i < length; i++) {
+            char c = bulkJsonStr.charAt(i);
+            switch (c) {
+                case '"': {
+                    int end = findStringEnd(bulkJsonStr, i);
+                    if (depth == 1 && expectingKey) {
+                        lastKey = bulkJsonStr.substring(i + 1, end);
+                        expectingKey = false;
+                    }
+                    i = end;
+                    break;
+                }
+                case '{':
+                case '[':
+                    if (c == '[' && depth == 1 && cities == null
+                            && OpenWeatherJsonUtils.OWM_LIST.equals(lastKey)) {
+                        cities = new ArrayList<String>();
+                        inList = true;
+                        cityStart = i + 1;
+                    }
+                    depth++;
+                    expectingKey = c == '{' && depth == 1;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    if (depth < 0) {
+                        throw new JSONException("Unmatched " + c + " at " + i);
+                    }
+                    if (inList && depth == 1) {
+                        addCity(bulkJsonStr, cityStart, i, true, cities);
+                        inList = false;
+                    }
+                    break;
+                case ',':
+                    if (inList && depth == 2) {
+                        addCity(bulkJsonStr, cityStart, i, false, cities);
+                        cityStart = i + 1;
+                    }
+                    expectingKey = depth == 1;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (depth != 0) {
+            throw new JSONException("Unterminated bulk response");
+        }
+
+        if (cities == null) {
+            /* A bulk response without a list can only be an error */
+            JSONObject bulkJson = new JSONObject(bulkJsonStr);
+            if (bulkJson.has(OpenWeatherJsonUtils.OWM_MESSAGE_CODE)
+                    && bulkJson.getInt(OpenWeatherJsonUtils.OWM_MESSAGE_CODE)
+                    != HttpURLConnection.HTTP_OK) {
+                return null;
+            }
+            throw new JSONException("No value for " + OpenWeatherJsonUtils.OWM_LIST);
+        }
+        return Collections.unmodifiableList(cities);
+    }
+
+    /* The index of the quote that ends the string starting at the given quote */
+    private static int findStringEnd(String json, int start) throws JSONException {
+        for (int i = start + 1; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        throw new JSONException("Unterminated string at " + start);
+    }
+
+    /*
+     * Adds the element between start and end. Only an empty list, as in [], may have an element
+     * that is only whitespace; anywhere else, as in [a,,b], dropping it would move every city
+     * after it to the wrong place, so it is rejected.
+     */
+    private static void addCity(String json, int start, int end, boolean last,
+            List<String> cities) throws JSONException {
+        String city = json.substring(start, end).trim();
+        if (city.length() != 0) {
+            cities.add(city);
+        } else if (!last || !cities.isEmpty()) {
+            throw new JSONException("Empty element in list at " + start);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.WeatherContract.HourlyEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_CITY;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_COORD;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_HUMIDITY;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_LATITUDE;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_LIST;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_LONGITUDE;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_MESSAGE_CODE;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_PRESSURE;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_WEATHER;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_WEATHER_ID;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_WINDSPEED;
+import static com.example.android.sunshine.utilities.OpenWeatherJsonUtils.OWM_WIND_DIRECTION;
+
+/**
+ * Parses OpenWeatherMap's three-hourly forecast, which has a row for every three hours rather
+ * than one for each day. Each row carries its own time, and its values are grouped differently:
+ * <pre>
+ *     {"dt":1487246400,
+ *      "main":{"temp":12.3,"temp_min":11.9,"temp_max":12.3,"pressure":1013,"humidity":81},
+ *      "weather":[{"id":500}],
+ *      "wind":{"speed":4.1,"deg":225}}
+ * </pre>
+ * The rows go into a {@link ForecastBatch}, like the days of the daily forecast, and are checked,
+ * repaired or skipped the same way. Each row is put at the start of the three hours its time
+ * falls in, so that rows for the same three hours always have the same date.
+ */
+public final class OpenWeatherHourlyJsonUtils {
+
+    /* The time the row starts at, in seconds since the epoch */
+    private static final String OWM_TIME = "dt";
+
+    /* Temperatures, pressure and humidity are children of the "main" object */
+    private static final String OWM_MAIN = "main";
+    private static final String OWM_MIN = "temp_min";
+    private static final String OWM_MAX = "temp_max";
+
+    /* Wind speed and direction are children of the "wind" object */
+    private static final String OWM_WIND = "wind";
+
+    private static final long SECOND_IN_MILLIS = 1000;
+
+    private OpenWeatherHourlyJsonUtils() {
+    }
+
+    /**
+     * Parses the hourly forecast in a response from the weather server, with the streaming
+     * parser if it is enabled and available, or else with the org.json parser, as
+     * {@link OpenWeatherJsonUtils#getForecast(ForecastResponse, ForecastValidationReport)} does.
+     *
+     * @param response The response to read the forecast JSON from
+     * @param report   Where to record the rows that had to be repaired or skipped. May be null.
+     * @return The forecast, or null if the server reported an error. Its rows come from
+     * {@link ForecastBatch#obtain()}, so recycle it when you're done with it.
+     * @throws IOException   If the response can't be read
+     * @throws JSONException If the JSON isn't an hourly forecast
+     */
+    public static ParsedForecast getHourlyForecast(ForecastResponse response,
+            ForecastValidationReport report) throws IOException, JSONException {
+        if (OpenWeatherJsonUtils.isStreamingParserEnabled()
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return getHourlyForecastFromReader(response.getReader(), report);
+        }
+        return getHourlyForecastFromJson(response.readString(), report);
+    }
+
+    /**
+     * Parses hourly forecast JSON with org.json. A row without a time is left out, as is one
+     * that {@link OpenWeatherJsonUtils} would leave out of the daily forecast.
+     *
+     * @param forecastJsonStr JSON response from server
+     * @param report          Where to record the rows that had to be repaired or skipped. May be
+     *                        null.
+     * @return The forecast, or null if the server reported an error. Its rows come from
+     * {@link ForecastBatch#obtain()}, so recycle it when you're done with it.
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ParsedForecast getHourlyForecastFromJson(String forecastJsonStr,
+            ForecastValidationReport report) throws JSONException {
+        ForecastBatch batch = ForecastBatch.obtain();
+        ParsedForecast forecast = null;
+        try {
+            forecast = readForecast(forecastJsonStr, batch,
+                    OpenWeatherJsonUtils.nonNull(report));
+        } finally {
+            if (forecast == null) {
+                batch.recycle();
+            }
+        }
+        return forecast;
+    }
+
+    /**
+     * Parses hourly forecast JSON in a single pass with a JsonReader, producing exactly the same
+     * rows as {@link #getHourlyForecastFromJson(String, ForecastValidationReport)}. The JSON is
+     * read through to its end.
+     *
+     * @param forecastJson The JSON response from the server. It is not closed.
+     * @param report       Where to record the rows that had to be repaired or skipped. May be
+     *                     null.
+     * @return The forecast, or null if the server reported an error. Its rows come from
+     * {@link ForecastBatch#obtain()}, so recycle it when you're done with it.
+     * @throws IOException   If the JSON can't be read or is malformed
+     * @throws JSONException If the JSON is well formed, but isn't an hourly forecast
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ParsedForecast getHourlyForecastFromReader(Reader forecastJson,
+            ForecastValidationReport report) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(forecastJson);
+        ForecastBatch batch = ForecastBatch.obtain();
+        ParsedForecast forecast = null;
+        try {
+            forecast = readForecast(reader, batch, OpenWeatherJsonUtils.nonNull(report));
+        } catch (IllegalStateException e) {
+            throw new JSONException(e.getMessage());
+        } catch (NumberFormatException e) {
+            throw new JSONException(e.getMessage());
+        } finally {
+            if (forecast == null) {
+                batch.recycle();
+            }
+        }
+        return forecast;
+    }
+
+    private static ParsedForecast readForecast(String forecastJsonStr, ForecastBatch batch,
+            ForecastValidationReport report) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        /* Is there an error? Location invalid or server probably down */
+        if (forecastJson.has(OWM_MESSAGE_CODE)
+                && forecastJson.getInt(OWM_MESSAGE_CODE) != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+
+        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityCoord = forecastJson.getJSONObject(OWM_CITY).getJSONObject(OWM_COORD);
+        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        for (int i = 0; i < jsonWeatherArray.length(); i++) {
+            JSONObject period = jsonWeatherArray.optJSONObject(i);
+            if (period == null) {
+                report.recordFieldError(OWM_LIST);
+                report.recordDay(true, false);
+                continue;
+            }
+
+            double time = period.optDouble(OWM_TIME, Double.NaN);
+
+            double weatherId = Double.NaN;
+            JSONArray weatherArray = period.optJSONArray(OWM_WEATHER);
+            JSONObject weatherObject = weatherArray == null ? null : weatherArray.optJSONObject(0);
+            if (weatherObject != null) {
+                weatherId = weatherObject.optDouble(OWM_WEATHER_ID, Double.NaN);
+            }
+
+            double low = Double.NaN;
+            double high = Double.NaN;
+            double humidity = Double.NaN;
+            double pressure = Double.NaN;
+            JSONObject main = period.optJSONObject(OWM_MAIN);
+            if (main != null) {
+                low = main.optDouble(OWM_MIN, Double.NaN);
+                high = main.optDouble(OWM_MAX, Double.NaN);
+                humidity = main.optDouble(OWM_HUMIDITY, Double.NaN);
+                pressure = main.optDouble(OWM_PRESSURE, Double.NaN);
+            }
+
+            double windSpeed = Double.NaN;
+            double windDirection = Double.NaN;
+            JSONObject wind = period.optJSONObject(OWM_WIND);
+            if (wind != null) {
+                windSpeed = wind.optDouble(OWM_WINDSPEED, Double.NaN);
+                windDirection = wind.optDouble(OWM_WIND_DIRECTION, Double.NaN);
+            }
+
+            addPeriod(batch, report, time, weatherId, low, high, humidity, pressure,
+                    windSpeed, windDirection);
+        }
+
+        return new ParsedForecast(batch, cityLatitude, cityLongitude);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static ParsedForecast readForecast(JsonReader reader, ForecastBatch batch,
+            ForecastValidationReport report) throws IOException, JSONException {
+        int errorCode = HttpURLConnection.HTTP_OK;
+        double[] cityCoordinates = null;
+        boolean sawList = false;
+
+        /* As in the daily parser, we only act on the fields once we've seen them all */
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                errorCode = reader.nextInt();
+            } else if (OWM_CITY.equals(name)) {
+                cityCoordinates = OpenWeatherJsonUtils.readCityCoordinates(reader);
+            } else if (OWM_LIST.equals(name) && errorCode == HttpURLConnection.HTTP_OK) {
+                batch.clear();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readPeriod(reader, batch, report);
+                }
+                reader.endArray();
+                sawList = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JSONException("Unexpected data after the forecast");
+        }
+
+        if (errorCode != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+        if (!sawList) {
+            throw new JSONException("No value for " + OWM_LIST);
+        }
+        if (cityCoordinates == null) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+
+        return new ParsedForecast(batch, cityCoordinates[0], cityCoordinates[1]);
+    }
+
+    /* Reads one row of the forecast, treating anything missing or of the wrong type as NaN */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readPeriod(JsonReader reader, ForecastBatch batch,
+            ForecastValidationReport report) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            report.recordFieldError(OWM_LIST);
+            report.recordDay(true, false);
+            return;
+        }
+
+        double time = Double.NaN;
+        double weatherId = Double.NaN;
+        double low = Double.NaN;
+        double high = Double.NaN;
+        double humidity = Double.NaN;
+        double pressure = Double.NaN;
+        double windSpeed = Double.NaN;
+        double windDirection = Double.NaN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_TIME.equals(name)) {
+                time = OpenWeatherJsonUtils.readNumber(reader);
+            } else if (OWM_WEATHER.equals(name)) {
+                weatherId = OpenWeatherJsonUtils.readWeatherId(reader);
+            } else if (OWM_MAIN.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String mainName = reader.nextName();
+                    if (OWM_MIN.equals(mainName)) {
+                        low = OpenWeatherJsonUtils.readNumber(reader);
+                    } else if (OWM_MAX.equals(mainName)) {
+                        high = OpenWeatherJsonUtils.readNumber(reader);
+                    } else if (OWM_HUMIDITY.equals(mainName)) {
+                        humidity = OpenWeatherJsonUtils.readNumber(reader);
+                    } else if (OWM_PRESSURE.equals(mainName)) {
+                        pressure = OpenWeatherJsonUtils.readNumber(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WIND.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String windName = reader.nextName();
+                    if (OWM_WINDSPEED.equals(windName)) {
+                        windSpeed = OpenWeatherJsonUtils.readNumber(reader);
+                    } else if (OWM_WIND_DIRECTION.equals(windName)) {
+                        windDirection = OpenWeatherJsonUtils.readNumber(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        addPeriod(batch, report, time, weatherId, low, high, humidity, pressure, windSpeed,
+                windDirection);
+    }
+
+    /*
+     * Adds a row, as both parsers read it, if it has a time to put it at. The time is rounded
+     * down to the start of its three hours, like the weather table's dates are to the start of
+     * their day. The rest of its values are checked just like a day's.
+     */
+    private static void addPeriod(ForecastBatch batch, ForecastValidationReport report,
+            double time, double weatherId, double low, double high, double humidity,
+            double pressure, double windSpeed, double windDirection) {
+        if (!(time > 0) || Double.isInfinite(time)) {
+            report.recordFieldError(OWM_TIME);
+            report.recordDay(true, false);
+            return;
+        }
+        long start = (long) time * SECOND_IN_MILLIS;
+        start -= start % HourlyEntry.PERIOD_IN_MILLIS;
+        OpenWeatherJsonUtils.addDay(batch, report, start, weatherId, low, high, humidity,
+                pressure, windSpeed, windDirection);
+    }
+}
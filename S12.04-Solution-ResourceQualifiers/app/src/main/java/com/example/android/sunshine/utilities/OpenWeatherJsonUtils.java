@@ -15,16 +15,22 @@
  */
 package com.example.android.sunshine.utilities;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
-import com.example.android.sunshine.data.SunshinePreferences;
-import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastChunkQueue;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 
 /**
@@ -33,20 +39,20 @@ import java.net.HttpURLConnection;
 public final class OpenWeatherJsonUtils {
 
     /* Location information */
-    private static final String OWM_CITY = "city";
-    private static final String OWM_COORD = "coord";
+    static final String OWM_CITY = "city";
+    static final String OWM_COORD = "coord";
 
     /* Location coordinate */
-    private static final String OWM_LATITUDE = "lat";
-    private static final String OWM_LONGITUDE = "lon";
+    static final String OWM_LATITUDE = "lat";
+    static final String OWM_LONGITUDE = "lon";
 
     /* Weather information. Each day's forecast info is an element of the "list" array */
-    private static final String OWM_LIST = "list";
+    static final String OWM_LIST = "list";
 
-    private static final String OWM_PRESSURE = "pressure";
-    private static final String OWM_HUMIDITY = "humidity";
-    private static final String OWM_WINDSPEED = "speed";
-    private static final String OWM_WIND_DIRECTION = "deg";
+    static final String OWM_PRESSURE = "pressure";
+    static final String OWM_HUMIDITY = "humidity";
+    static final String OWM_WINDSPEED = "speed";
+    static final String OWM_WIND_DIRECTION = "deg";
 
     /* All temperatures are children of the "temp" object */
     private static final String OWM_TEMPERATURE = "temp";
@@ -55,10 +61,69 @@ public final class OpenWeatherJsonUtils {
     private static final String OWM_MAX = "max";
     private static final String OWM_MIN = "min";
 
-    private static final String OWM_WEATHER = "weather";
-    private static final String OWM_WEATHER_ID = "id";
+    static final String OWM_WEATHER = "weather";
+    static final String OWM_WEATHER_ID = "id";
 
-    private static final String OWM_MESSAGE_CODE = "cod";
+    static final String OWM_MESSAGE_CODE = "cod";
+
+    /*
+     * The range of OpenWeatherMap's condition codes, from thunderstorms (2xx) to extreme and
+     * other conditions (9xx)
+     */
+    private static final int MIN_WEATHER_ID = 200;
+    private static final int MAX_WEATHER_ID = 999;
+
+    /* Temperatures in Celsius outside this range can only be a mistake, such as Kelvin */
+    private static final double MIN_TEMPERATURE = -100;
+    private static final double MAX_TEMPERATURE = 100;
+
+    /*
+     * Whether getForecast uses the streaming parser (on devices that have JsonReader) or
+     * the org.json one. Both produce exactly the same rows.
+     */
+    private static volatile boolean sStreamingParserEnabled = true;
+
+    /**
+     * Chooses which parser {@link #getForecast(ForecastResponse, ForecastValidationReport)}
+     * uses.
+     * The streaming parser is only available from Honeycomb on; older devices always use the
+     * org.json parser.
+     *
+     * @param enabled true to parse with JsonReader, false to parse with org.json
+     */
+    public static void setStreamingParserEnabled(boolean enabled) {
+        sStreamingParserEnabled = enabled;
+    }
+
+    /**
+     * @return true if the streaming parser is enabled, though it may not be available
+     */
+    public static boolean isStreamingParserEnabled() {
+        return sStreamingParserEnabled;
+    }
+
+    /**
+     * Parses the forecast in a response from the weather server, with the streaming parser if
+     * it is enabled and available, or else with the org.json parser. The rows are the same
+     * either way.
+     * <p>
+     * Parsing has no side effects. Nothing is saved until the caller commits the result.
+     *
+     * @param response The response to read the forecast JSON from
+     * @param report   Where to record the days that had to be repaired or skipped. May be null.
+     * @return The forecast, or null if the server reported an error. Its days come from
+     * {@link ForecastBatch#obtain()}, so recycle it when you're done with it.
+     * @throws IOException   If the response can't be read
+     * @throws JSONException If the JSON isn't a forecast
+     */
+    public static ParsedForecast getForecast(ForecastResponse response,
+            ForecastValidationReport report) throws IOException, JSONException {
+        if (sStreamingParserEnabled
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return getForecastFromReader(response.getReader(), report);
+        }
+        return getForecastFromJson(response.readString(), report);
+    }
 
     /**
      * This method parses JSON from a web response and returns an array of Strings
@@ -76,6 +141,37 @@ public final class OpenWeatherJsonUtils {
      */
     public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
             throws JSONException {
+        return commitAndConvert(context, getForecastFromJson(forecastJsonStr, null));
+    }
+
+    /**
+     * Parses forecast JSON with org.json. A day with a field that is missing or
+     * makes no sense is repaired if it can be, and left out if it can't, rather than failing
+     * the whole forecast; see {@link #addDay}. Only JSON that isn't a forecast at all fails.
+     *
+     * @param forecastJsonStr JSON response from server
+     * @param report          Where to record the days that had to be repaired or skipped. May be
+     *                        null.
+     * @return The forecast, or null if the server reported an error. Its days come from
+     * {@link ForecastBatch#obtain()}, so recycle it when you're done with it.
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ParsedForecast getForecastFromJson(String forecastJsonStr,
+            ForecastValidationReport report) throws JSONException {
+        ForecastBatch batch = ForecastBatch.obtain();
+        ParsedForecast forecast = null;
+        try {
+            forecast = readForecast(forecastJsonStr, batch, nonNull(report));
+        } finally {
+            if (forecast == null) {
+                batch.recycle();
+            }
+        }
+        return forecast;
+    }
+
+    private static ParsedForecast readForecast(String forecastJsonStr, ForecastBatch batch,
+            ForecastValidationReport report) throws JSONException {
 
         JSONObject forecastJson = new JSONObject(forecastJsonStr);
 
@@ -103,10 +199,6 @@ public final class OpenWeatherJsonUtils {
         double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
         double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
 
-        SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
-
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
-
         /*
          * OWM returns daily forecasts based upon the local time of the city that is being asked
          * for, which means that we need to know the GMT offset to translate this data properly.
@@ -122,37 +214,46 @@ public final class OpenWeatherJsonUtils {
 
             long dateTimeMillis;
             double pressure;
-            int humidity;
+            double humidity;
             double windSpeed;
             double windDirection;
 
             double high;
             double low;
 
-            int weatherId;
-
-            /* Get the JSON object representing the day */
-            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
+            double weatherId;
 
             /*
              * We ignore all the datetime values embedded in the JSON and assume that
              * the values are returned in-order by day (which is not guaranteed to be correct).
+             * A day we skip leaves a gap, rather than moving the days after it.
              */
             dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * i;
 
-            pressure = dayForecast.getDouble(OWM_PRESSURE);
-            humidity = dayForecast.getInt(OWM_HUMIDITY);
-            windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-            windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+            /* Get the JSON object representing the day */
+            JSONObject dayForecast = jsonWeatherArray.optJSONObject(i);
+            if (dayForecast == null) {
+                report.recordFieldError(OWM_LIST);
+                report.recordDay(true, false);
+                continue;
+            }
+
+            /* Anything missing or not a number is NaN, which addDay checks for */
+            pressure = dayForecast.optDouble(OWM_PRESSURE, Double.NaN);
+            humidity = dayForecast.optDouble(OWM_HUMIDITY, Double.NaN);
+            windSpeed = dayForecast.optDouble(OWM_WINDSPEED, Double.NaN);
+            windDirection = dayForecast.optDouble(OWM_WIND_DIRECTION, Double.NaN);
 
             /*
              * Description is in a child array called "weather", which is 1 element long.
              * That element also contains a weather code.
              */
-            JSONObject weatherObject =
-                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            JSONArray weatherArray = dayForecast.optJSONArray(OWM_WEATHER);
+            JSONObject weatherObject = weatherArray == null ? null : weatherArray.optJSONObject(0);
 
-            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+            weatherId = weatherObject == null
+                    ? Double.NaN
+                    : weatherObject.optDouble(OWM_WEATHER_ID, Double.NaN);
 
             /*
              * Temperatures are sent by Open Weather Map in a child object called "temp".
@@ -162,23 +263,448 @@ public final class OpenWeatherJsonUtils {
              * temperature, temporary variable, temporary folder, temporary employee, or many
              * others, and is just a bad variable name.
              */
-            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-            high = temperatureObject.getDouble(OWM_MAX);
-            low = temperatureObject.getDouble(OWM_MIN);
+            JSONObject temperatureObject = dayForecast.optJSONObject(OWM_TEMPERATURE);
+            if (temperatureObject == null) {
+                high = Double.NaN;
+                low = Double.NaN;
+            } else {
+                high = temperatureObject.optDouble(OWM_MAX, Double.NaN);
+                low = temperatureObject.optDouble(OWM_MIN, Double.NaN);
+            }
+
+            addDay(batch, report, dateTimeMillis, weatherId, low, high, humidity, pressure,
+                    windSpeed, windDirection);
+        }
+
+        return new ParsedForecast(batch, cityLatitude, cityLongitude);
+    }
+
+    /**
+     * Parses the same JSON as {@link #getWeatherContentValuesFromJson(Context, String)} and
+     * returns exactly the same rows, but reads it in a single pass with a JsonReader instead of
+     * building a tree of JSONObjects first. Nothing is kept but the values we store, so we don't
+     * pay for a HashMap per object and a boxed number per value, and the forecast is parsed as it
+     * arrives rather than after the whole response has been read into a String.
+     * <p>
+     * The JSON is read through to its end, so a response that is being cached is seen to be
+     * complete.
+     *
+     * @param context      Used to save the location's coordinates
+     * @param forecastJson The JSON response from the server. It is not closed.
+     * @return The weather for each day of the forecast, or null if the server reported an error
+     * @throws IOException   If the JSON can't be read or is malformed
+     * @throws JSONException If the JSON is well formed, but isn't a forecast
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ContentValues[] getWeatherContentValuesFromReader(Context context,
+            Reader forecastJson) throws IOException, JSONException {
+        return commitAndConvert(context, getForecastFromReader(forecastJson, null));
+    }
+
+    /**
+     * Parses forecast JSON with a JsonReader, as
+     * {@link #getWeatherContentValuesFromReader(Context, Reader)} describes. Days that are
+     * missing fields are repaired or left out just as
+     * {@link #getForecastFromJson(String, ForecastValidationReport)} does.
+     *
+     * @param forecastJson The JSON response from the server. It is not closed.
+     * @param report       Where to record the days that had to be repaired or skipped. May be
+     *                     null.
+     * @return The forecast, or null if the server reported an error. Its days come from
+     * {@link ForecastBatch#obtain()}, so recycle it when you're done with it.
+     * @throws IOException   If the JSON can't be read or is malformed
+     * @throws JSONException If the JSON is well formed, but isn't a forecast
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ParsedForecast getForecastFromReader(Reader forecastJson,
+            ForecastValidationReport report) throws IOException, JSONException {
+        /* The JsonReader isn't closed, since that would close the response under the caller */
+        JsonReader reader = new JsonReader(forecastJson);
+        ForecastBatch batch = ForecastBatch.obtain();
+        ParsedForecast forecast = null;
+        try {
+            forecast = readForecast(reader, batch, null, nonNull(report));
+        } catch (IllegalStateException e) {
+            /* JsonReader reports a value of the wrong type like this, org.json with an exception */
+            throw new JSONException(e.getMessage());
+        } catch (NumberFormatException e) {
+            throw new JSONException(e.getMessage());
+        } finally {
+            if (forecast == null) {
+                batch.recycle();
+            }
+        }
+        return forecast;
+    }
+
+    /**
+     * Parses forecast JSON with a JsonReader, handing the days to a writer a chunk at a time as
+     * they are read rather than all together at the end. The writer mustn't keep the forecast
+     * unless this returns true: the coordinates and the error code can come after the days, so a
+     * forecast that turns out to be an error or to be malformed may already be partly handed over.
+     *
+     * @param forecastJson The JSON response from the server. It is not closed.
+     * @param chunks       The queue to hand the days to. It is finished if this returns a
+     *                     forecast, and left for the caller to abort otherwise.
+     * @param report       Where to record the days that had to be repaired or skipped. May be
+     *                     null.
+     * @return The forecast, without its days, if they were all handed over, or null if the server
+     * reported an error
+     * @throws IOException   If the JSON can't be read or is malformed, or the writer has stopped
+     * @throws JSONException If the JSON is well formed, but isn't a forecast
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ParsedForecast getForecastChunks(Reader forecastJson,
+            ForecastChunkQueue chunks, ForecastValidationReport report)
+            throws IOException, JSONException {
+        JsonReader reader = new JsonReader(forecastJson);
+        ForecastBatch batch = ForecastBatch.obtain();
+        try {
+            ParsedForecast forecast = readForecast(reader, batch, chunks, nonNull(report));
+            if (forecast == null) {
+                return null;
+            }
+            chunks.finish();
+            return new ParsedForecast(
+                    null, forecast.getCityLatitude(), forecast.getCityLongitude());
+        } catch (IllegalStateException e) {
+            throw new JSONException(e.getMessage());
+        } catch (NumberFormatException e) {
+            throw new JSONException(e.getMessage());
+        } finally {
+            batch.recycle();
+        }
+    }
+
+    /*
+     * Does what the ContentValues methods have always done with a forecast: saves its
+     * coordinates and returns its days as ContentValues. The forecast is recycled.
+     */
+    private static ContentValues[] commitAndConvert(Context context, ParsedForecast forecast) {
+        if (forecast == null) {
+            return null;
+        }
+        try {
+            forecast.commitLocationDetails(context);
+            return forecast.getWeather().toContentValues();
+        } finally {
+            forecast.recycle();
+        }
+    }
+
+    /*
+     * Reads the forecast into the batch. If there is a queue, the days are handed to it whenever
+     * the batch holds a chunk's worth, and once more at the end, leaving the batch empty.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static ParsedForecast readForecast(JsonReader reader, ForecastBatch batch,
+            ForecastChunkQueue chunks, ForecastValidationReport report)
+            throws IOException, JSONException {
+        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
 
-            ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        int errorCode = HttpURLConnection.HTTP_OK;
+        double[] cityCoordinates = null;
+        boolean sawList = false;
+
+        /* The fields can come in any order, so we only act on them once we've seen them all */
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                errorCode = reader.nextInt();
+            } else if (OWM_CITY.equals(name)) {
+                cityCoordinates = readCityCoordinates(reader);
+            } else if (OWM_LIST.equals(name) && errorCode == HttpURLConnection.HTTP_OK) {
+                if (sawList && chunks != null) {
+                    /* The days we've already handed over can't be taken back */
+                    throw new JSONException("Duplicate " + OWM_LIST);
+                }
+                readDays(reader, normalizedUtcStartDay, batch, chunks, report);
+                sawList = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JSONException("Unexpected data after the forecast");
+        }
 
-            weatherContentValues[i] = weatherValues;
+        /* Is there an error? Location invalid or server probably down */
+        if (errorCode != HttpURLConnection.HTTP_OK) {
+            return null;
         }
 
-        return weatherContentValues;
+        if (!sawList) {
+            throw new JSONException("No value for " + OWM_LIST);
+        }
+        if (cityCoordinates == null) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+
+        if (chunks != null && batch.size() > 0) {
+            chunks.put(batch);
+            batch.clear();
+        }
+
+        return new ParsedForecast(batch, cityCoordinates[0], cityCoordinates[1]);
+    }
+
+    /* Reads the city object and returns its latitude and longitude */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static double[] readCityCoordinates(JsonReader reader)
+            throws IOException, JSONException {
+        double[] coordinates = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (OWM_COORD.equals(reader.nextName())) {
+                double latitude = Double.NaN;
+                double longitude = Double.NaN;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (OWM_LATITUDE.equals(name)) {
+                        latitude = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(name)) {
+                        longitude = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                coordinates = new double[]{
+                        require(latitude, OWM_LATITUDE),
+                        require(longitude, OWM_LONGITUDE)};
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (coordinates == null) {
+            throw new JSONException("No value for " + OWM_COORD);
+        }
+        return coordinates;
+    }
+
+    /* Reads the list array into the batch, one row per day, handing over full chunks */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readDays(JsonReader reader, long normalizedUtcStartDay,
+            ForecastBatch batch, ForecastChunkQueue chunks, ForecastValidationReport report)
+            throws IOException {
+        batch.clear();
+        int day = 0;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            /* As in the org.json parser, we assume the days are in order, starting today */
+            long dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * day++;
+            readDay(reader, dateTimeMillis, batch, report);
+
+            if (chunks != null && batch.size() == chunks.getChunkDays()) {
+                chunks.put(batch);
+                batch.clear();
+            }
+        }
+        reader.endArray();
+    }
+
+    /*
+     * Reads one day of the forecast. Numbers we haven't seen yet, and values that aren't numbers,
+     * are NaN, which addDay checks for. A value of the wrong type is skipped, like org.json's
+     * opt methods do, so that one bad day doesn't stop us reading the rest.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readDay(JsonReader reader, long dateTimeMillis, ForecastBatch batch,
+            ForecastValidationReport report) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            report.recordFieldError(OWM_LIST);
+            report.recordDay(true, false);
+            return;
+        }
+
+        double pressure = Double.NaN;
+        double humidity = Double.NaN;
+        double windSpeed = Double.NaN;
+        double windDirection = Double.NaN;
+        double high = Double.NaN;
+        double low = Double.NaN;
+        double weatherId = Double.NaN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = readNumber(reader);
+            } else if (OWM_HUMIDITY.equals(name)) {
+                humidity = readNumber(reader);
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = readNumber(reader);
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = readNumber(reader);
+            } else if (OWM_WEATHER.equals(name)) {
+                weatherId = readWeatherId(reader);
+            } else if (OWM_TEMPERATURE.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        high = readNumber(reader);
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        low = readNumber(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        addDay(batch, report, dateTimeMillis, weatherId, low, high, humidity, pressure,
+                windSpeed, windDirection);
+    }
+
+    /*
+     * Reads the weather array of a day and returns the condition code of its first element, the
+     * only one that is used, or NaN if there isn't one
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static double readWeatherId(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return Double.NaN;
+        }
+
+        double weatherId = Double.NaN;
+        reader.beginArray();
+        if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                    weatherId = readNumber(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return weatherId;
+    }
+
+    /*
+     * Reads a number, or a string holding one, the way JSONObject#optDouble does. Anything else
+     * is skipped and read as NaN. Numbers are taken as text and converted by JsonNumberParser,
+     * which is much quicker than JsonReader#nextDouble for the short decimals of a forecast.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static double readNumber(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        try {
+            if (token == JsonToken.NUMBER) {
+                double number = JsonNumberParser.parseDouble(reader.nextString());
+                /* Like JsonReader#nextDouble, don't accept a number too big for a double */
+                return Double.isInfinite(number) ? Double.NaN : number;
+            }
+            if (token == JsonToken.STRING) {
+                return JsonNumberParser.parseDouble(reader.nextString());
+            }
+        } catch (NumberFormatException e) {
+            /* A string that isn't a number, or a number too big for a double */
+            return Double.NaN;
+        }
+        reader.skipValue();
+        return Double.NaN;
+    }
+
+    /**
+     * Checks the values of one day, as both parsers read them, and adds the day to the batch if
+     * it's usable. Values that were missing or weren't numbers are NaN.
+     * <p>
+     * A day without a sensible weather condition, temperatures, humidity, pressure or wind speed
+     * is left out, since there's nothing honest we could show in their place. Everything else is
+     * repaired: a humidity outside 0-100% is clamped, a wind direction is brought into 0-360
+     * degrees or, if there isn't one, taken to be 0, and a low and high that are the wrong way
+     * round are swapped. Integer values are truncated, like JSONObject#getInt does.
+     */
+    static void addDay(ForecastBatch batch, ForecastValidationReport report,
+            long dateTimeMillis, double weatherId, double low, double high, double humidity,
+            double pressure, double windSpeed, double windDirection) {
+        boolean skip = false;
+        boolean repaired = false;
+
+        if (!(weatherId >= MIN_WEATHER_ID && weatherId < MAX_WEATHER_ID + 1)) {
+            report.recordFieldError(OWM_WEATHER_ID);
+            skip = true;
+        }
+        if (!(low >= MIN_TEMPERATURE && low <= MAX_TEMPERATURE)) {
+            report.recordFieldError(OWM_MIN);
+            skip = true;
+        }
+        if (!(high >= MIN_TEMPERATURE && high <= MAX_TEMPERATURE)) {
+            report.recordFieldError(OWM_MAX);
+            skip = true;
+        }
+        if (Double.isNaN(humidity)) {
+            report.recordFieldError(OWM_HUMIDITY);
+            skip = true;
+        } else if (humidity < 0 || humidity > 100) {
+            report.recordFieldError(OWM_HUMIDITY);
+            humidity = Math.max(0, Math.min(100, humidity));
+            repaired = true;
+        }
+        if (!(pressure > 0) || Double.isInfinite(pressure)) {
+            report.recordFieldError(OWM_PRESSURE);
+            skip = true;
+        }
+        if (!(windSpeed >= 0) || Double.isInfinite(windSpeed)) {
+            report.recordFieldError(OWM_WINDSPEED);
+            skip = true;
+        }
+        if (Double.isNaN(windDirection) || Double.isInfinite(windDirection)) {
+            report.recordFieldError(OWM_WIND_DIRECTION);
+            windDirection = 0;
+            repaired = true;
+        } else if (windDirection < 0 || windDirection >= 360) {
+            report.recordFieldError(OWM_WIND_DIRECTION);
+            windDirection = ((windDirection % 360) + 360) % 360;
+            repaired = true;
+        }
+        if (!skip && low > high) {
+            report.recordFieldError(OWM_TEMPERATURE);
+            double swap = low;
+            low = high;
+            high = swap;
+            repaired = true;
+        }
+
+        report.recordDay(skip, repaired);
+        if (!skip) {
+            batch.add(dateTimeMillis, (int) weatherId, low, high, (int) humidity, pressure,
+                    windSpeed, windDirection);
+        }
+    }
+
+    /* Lets the parsers record errors without checking whether anyone wants to know about them */
+    static ForecastValidationReport nonNull(ForecastValidationReport report) {
+        return report != null ? report : new ForecastValidationReport();
+    }
+
+    static double require(double value, String name) throws JSONException {
+        if (Double.isNaN(value)) {
+            throw new JSONException("No value for " + name);
+        }
+        return value;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.SunshinePreferences;
+
+/**
+ * Everything {@link OpenWeatherJsonUtils} read from a forecast: the days, and the coordinates of
+ * the city the forecast is for. Parsing doesn't touch anything outside of this, so nothing is
+ * saved until the caller decides to keep the forecast and calls
+ * {@link #commitLocationDetails(Context)}.
+ */
+public final class ParsedForecast {
+
+    private final ForecastBatch mWeather;
+    private final double mCityLatitude;
+    private final double mCityLongitude;
+
+    ParsedForecast(ForecastBatch weather, double cityLatitude, double cityLongitude) {
+        mWeather = weather;
+        mCityLatitude = cityLatitude;
+        mCityLongitude = cityLongitude;
+    }
+
+    /**
+     * @return The days of the forecast, or null if they were handed to a
+     * {@link com.example.android.sunshine.data.ForecastChunkQueue} as they were read
+     */
+    public ForecastBatch getWeather() {
+        return mWeather;
+    }
+
+    public double getCityLatitude() {
+        return mCityLatitude;
+    }
+
+    public double getCityLongitude() {
+        return mCityLongitude;
+    }
+
+    /**
+     * Saves the coordinates of the forecast's city as the location's coordinates, unless they
+     * are what is saved already.
+     *
+     * @param context Used to access SharedPreferences
+     * @return true if the coordinates changed and were saved
+     */
+    public boolean commitLocationDetails(Context context) {
+        return SunshinePreferences.updateLocationDetails(context, mCityLatitude, mCityLongitude);
+    }
+
+    /**
+     * Returns the forecast's days to the pool. The days must not be used after this.
+     */
+    public void recycle() {
+        if (mWeather != null) {
+            mWeather.recycle();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * An {@link HttpTransport} that keeps connections alive so that requests made back to back (for
+ * several locations, or a retry) reuse the same socket and skip the TCP and TLS handshakes.
+ * <p>
+ * HttpURLConnection already keeps a pool of idle keep-alive connections per host. A connection
+ * only goes back into that pool if its body was read to the end and closed without calling
+ * disconnect(), which is exactly what the old "disconnect in a finally block" code prevented.
+ * So when a response is released, we read whatever the caller left unread (up to a small limit)
+ * and close the body. Only if that fails, or the body was abandoned for being too large, do we
+ * give up on the connection.
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+    /*
+     * If more than this much of the body is left unread, it is cheaper to drop the connection
+     * than to download the rest of the body just to be able to reuse the socket.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+
+    /**
+     * @param connectTimeoutMillis How long to wait for a connection to be established, in
+     *                             milliseconds. 0 waits forever.
+     * @param readTimeoutMillis    How long to wait for data once connected, in milliseconds. 0
+     *                             waits forever.
+     */
+    public PooledHttpTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(mConnectTimeoutMillis);
+        connection.setReadTimeout(mReadTimeoutMillis);
+        return connection;
+    }
+
+    @Override
+    public void release(HttpURLConnection connection, InputStream body, boolean aborted)
+            throws IOException {
+        boolean reusable = false;
+        try {
+            /* The rest of a body that was too large is never worth downloading */
+            reusable = !aborted && drain(body);
+        } catch (IOException e) {
+            /* The connection is in an unknown state, so it can't be reused */
+        } finally {
+            body.close();
+            if (!reusable) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Reads and discards the rest of the body.
+     *
+     * @param body The response body
+     * @return true if the end of the body was reached, false if more than MAX_DRAIN_BYTES were
+     * left
+     * @throws IOException Related to stream reading
+     */
+    private static boolean drain(InputStream body) throws IOException {
+        byte[] buffer = new byte[NetworkUtils.BUFFER_SIZE];
+        int drained = 0;
+        int bytesRead;
+        while ((bytesRead = body.read(buffer)) != -1) {
+            drained += bytesRead;
+            if (drained > MAX_DRAIN_BYTES) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
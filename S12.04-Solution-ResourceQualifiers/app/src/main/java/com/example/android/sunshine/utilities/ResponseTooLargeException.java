@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Thrown when a response from the weather server is bigger than we are willing to read, either
+ * because its Content-Length says so up front or because more bytes than that arrived. Reading
+ * stops as soon as the limit is crossed, so a broken server or proxy can't make us run out of
+ * memory.
+ */
+public class ResponseTooLargeException extends IOException {
+
+    private final long mMaxBytes;
+
+    /**
+     * @param url      The URL that was requested
+     * @param maxBytes The limit that was exceeded
+     */
+    public ResponseTooLargeException(URL url, long maxBytes) {
+        super("Response from " + url + " is larger than " + maxBytes + " bytes");
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return The limit that was exceeded, in bytes
+     */
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.util.Log;
+
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Decides whether, and after how long, a failed request to the weather server is worth trying
+ * again, and runs requests under those rules.
+ * <p>
+ * Only failures that are likely to go away on their own are retried: timeouts, refused, reset or
+ * dropped connections, DNS failures, and server errors (5xx, 408 and 429). Anything else, such as
+ * a 404, an oversized response or JSON we can't parse, fails immediately, since asking again would
+ * get the same answer.
+ * <p>
+ * Retries back off exponentially with "full jitter": the wait before retry n is picked at random
+ * between 0 and min(maxDelay, baseDelay * 2^n). The randomness keeps many devices that failed at
+ * the same moment from all coming back at the same moment too.
+ */
+public final class RetryPolicy {
+
+    private static final String TAG = RetryPolicy.class.getSimpleName();
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /*
+     * Three attempts over at most a few seconds of waiting. That heals a dropped connection or a
+     * briefly overloaded server, while a longer outage is left for the job scheduler to retry.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 1000, 8 * 1000);
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Random mRandom;
+
+    /**
+     * @param maxAttempts     The total number of attempts, including the first one
+     * @param baseDelayMillis The upper bound of the wait before the first retry
+     * @param maxDelayMillis  The upper bound of the wait before any retry
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        this(maxAttempts, baseDelayMillis, maxDelayMillis, new Random());
+    }
+
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Random random) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+        }
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mRandom = random;
+    }
+
+    /**
+     * Runs the call, retrying it while it fails with a retryable exception and attempts remain.
+     *
+     * @param call The work to run, which must be safe to run more than once
+     * @param <V>  The type of the call's result
+     * @return The result of the first successful attempt
+     * @throws Exception The exception of the last attempt, if none succeeded
+     */
+    public <V> V execute(Callable<V> call) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                if (attempt >= mMaxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+
+                long delayMillis = getDelayMillis(attempt - 1, e);
+                if (delayMillis < 0) {
+                    /* The server wants us to stay away for longer than we are willing to wait */
+                    throw e;
+                }
+
+                Log.w(TAG, "Attempt " + attempt + " of " + mMaxAttempts + " failed, retrying in "
+                        + delayMillis + "ms: " + e);
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException interrupted) {
+                    /* We were asked to stop, so give up with the failure we already have */
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks how long to wait before the given retry.
+     *
+     * @param retry   The number of retries made so far (0 before the first retry)
+     * @param failure The exception that made the retry necessary
+     * @return The delay in milliseconds, or -1 if the server asked for a longer wait than
+     * maxDelayMillis
+     */
+    long getDelayMillis(int retry, Exception failure) {
+        /* Clamp the shift so a large retry count can't overflow */
+        long ceiling = mBaseDelayMillis << Math.min(retry, 20);
+        if (ceiling <= 0 || ceiling > mMaxDelayMillis) {
+            ceiling = mMaxDelayMillis;
+        }
+        long delayMillis = (long) (mRandom.nextDouble() * (ceiling + 1));
+
+        if (failure instanceof HttpStatusException) {
+            long retryAfterMillis = ((HttpStatusException) failure).getRetryAfterMillis();
+            if (retryAfterMillis > mMaxDelayMillis) {
+                return -1;
+            }
+            delayMillis = Math.max(delayMillis, retryAfterMillis);
+        }
+        return delayMillis;
+    }
+
+    /**
+     * @param e A failure of a request to the weather server
+     * @return true if the same request might succeed if it were tried again a little later
+     */
+    public static boolean isRetryable(Exception e) {
+        if (e instanceof HttpStatusException) {
+            HttpStatusException statusException = (HttpStatusException) e;
+            int statusCode = statusException.getStatusCode();
+            return statusException.isServerError()
+                    || statusCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                    || statusCode == HTTP_TOO_MANY_REQUESTS;
+        }
+
+        /* SocketTimeoutException is an InterruptedIOException too, but one worth retrying */
+        if (e instanceof SocketTimeoutException) {
+            return true;
+        }
+        if (e instanceof InterruptedIOException) {
+            return false;
+        }
+
+        /* The connection dropped part way through the body */
+        if (e instanceof TruncatedResponseException) {
+            return true;
+        }
+
+        /* SocketException covers refused, reset and unreachable connections */
+        return e instanceof SocketException || e instanceof UnknownHostException;
+    }
+}
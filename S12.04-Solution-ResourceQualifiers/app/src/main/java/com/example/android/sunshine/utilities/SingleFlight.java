@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Collapses concurrent calls for the same key into one. The first caller for a key runs the work
+ * on its own thread; anyone who asks for the same key while that work is still in flight waits for
+ * it and gets the same result (or the same exception) instead of doing the work again.
+ *
+ * Nothing is remembered once a call completes. The next caller for that key starts a new call, so
+ * this is not a cache, only a way to stop identical requests from running side by side.
+ *
+ * @param <V> The type of the result shared between callers
+ */
+public final class SingleFlight<V> {
+
+    private final ConcurrentMap<String, FutureTask<V>> mInFlight =
+            new ConcurrentHashMap<String, FutureTask<V>>();
+
+    /**
+     * Runs the call for the given key, or joins the call already running for it.
+     *
+     * @param key  Identifies the work. Calls with equal keys must do the same work.
+     * @param call The work to do if no call for the key is in flight
+     * @return The result of the call, shared with every caller that joined it
+     * @throws Exception Whatever the call threw, rethrown to every caller that joined it
+     */
+    public V execute(String key, Callable<V> call) throws Exception {
+        FutureTask<V> task = new FutureTask<V>(call);
+        FutureTask<V> inFlight = mInFlight.putIfAbsent(key, task);
+
+        if (inFlight == null) {
+            /* We are the first caller for this key, so we do the work */
+            try {
+                task.run();
+            } finally {
+                mInFlight.remove(key, task);
+            }
+            inFlight = task;
+        }
+
+        try {
+            return inFlight.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param key The key to check
+     * @return true if a call for the key is currently running
+     */
+    public boolean isInFlight(String key) {
+        return mInFlight.containsKey(key);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.io.EOFException;
+import java.net.URL;
+
+/**
+ * Thrown when a response body ends before all of the bytes its Content-Length promised have
+ * arrived, usually because the connection dropped. Without this, a cut-off forecast would look
+ * like a complete one until the JSON failed to parse.
+ */
+public class TruncatedResponseException extends EOFException {
+
+    private final long mBytesRead;
+    private final long mExpectedBytes;
+
+    /**
+     * @param url           The URL that was requested
+     * @param bytesRead     How many bytes of the body arrived
+     * @param expectedBytes How many bytes the Content-Length header promised
+     */
+    public TruncatedResponseException(URL url, long bytesRead, long expectedBytes) {
+        super("Response from " + url + " ended after " + bytesRead + " of " + expectedBytes
+                + " bytes");
+        mBytesRead = bytesRead;
+        mExpectedBytes = expectedBytes;
+    }
+
+    /**
+     * @return How many bytes of the body arrived
+     */
+    public long getBytesRead() {
+        return mBytesRead;
+    }
+
+    /**
+     * @return How many bytes the Content-Length header promised
+     */
+    public long getExpectedBytes() {
+        return mExpectedBytes;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.fakeserver;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generates forecast JSON shaped like OpenWeatherMap's daily forecast API, which is what
+ * OpenWeatherJsonUtils in the app expects, or like its three-hourly forecast API, which is what
+ * OpenWeatherHourlyJsonUtils expects. The weather is random, but the same inputs always
+ * generate the same JSON, so a run can be repeated exactly and unchanged forecasts can be
+ * answered with 304 Not Modified.
+ */
+final class FakeForecastGenerator {
+
+    /* Weather condition codes the app has icons and descriptions for */
+    private static final int[] WEATHER_IDS = {
+            200, 211, 300, 500, 501, 502, 511, 600, 601, 701, 741, 800, 801, 802, 803, 804
+    };
+
+    private static final String[] WEATHER_MAINS = {
+            "Thunderstorm", "Thunderstorm", "Drizzle", "Rain", "Rain", "Rain", "Rain", "Snow",
+            "Snow", "Mist", "Fog", "Clear", "Clouds", "Clouds", "Clouds", "Clouds"
+    };
+
+    private static final long DAY_IN_SECONDS = 24 * 60 * 60;
+    private static final long PERIOD_IN_SECONDS = 3 * 60 * 60;
+
+    private FakeForecastGenerator() {
+    }
+
+    /**
+     * @param location     The q parameter of the request, or "lat,lon" for coordinate requests
+     * @param latitude     The latitude to report for the city
+     * @param longitude    The longitude to report for the city
+     * @param days         The number of days in the forecast
+     * @param paddingBytes Roughly how many bytes of fields the app doesn't read to add, spread
+     *                     over the days, to make the payload bigger
+     * @param seed         Seeds the random weather. The same seed gives the same forecast.
+     * @param startSeconds The time of the first day, in seconds since the epoch
+     * @return The forecast JSON
+     */
+    static String generate(String location, double latitude, double longitude, int days,
+            int paddingBytes, long seed, long startSeconds) {
+        Random random = new Random(seed * 31 + location.hashCode());
+
+        StringBuilder json = new StringBuilder(512 + days * 320 + paddingBytes);
+        appendHeader(json, location, latitude, longitude, days);
+
+        int paddingPerDay = days == 0 ? 0 : paddingBytes / days;
+        double baseTemperature = 5 + random.nextDouble() * 20;
+
+        for (int day = 0; day < days; day++) {
+            if (day > 0) {
+                json.append(',');
+            }
+
+            double low = baseTemperature + random.nextGaussian() * 4;
+            double high = low + 3 + random.nextDouble() * 10;
+            int condition = random.nextInt(WEATHER_IDS.length);
+
+            json.append("{\"dt\":").append(startSeconds + day * DAY_IN_SECONDS)
+                    .append(",\"temp\":{\"day\":").append(format((low + high) / 2))
+                    .append(",\"min\":").append(format(low))
+                    .append(",\"max\":").append(format(high))
+                    .append(",\"night\":").append(format(low + 1))
+                    .append(",\"eve\":").append(format(high - 1))
+                    .append(",\"morn\":").append(format(low + 2))
+                    .append("},\"pressure\":").append(format(990 + random.nextDouble() * 40))
+                    .append(",\"humidity\":").append(20 + random.nextInt(80))
+                    .append(",\"weather\":[{\"id\":").append(WEATHER_IDS[condition])
+                    .append(",\"main\":\"").append(WEATHER_MAINS[condition])
+                    .append("\",\"description\":\"").append(
+                            WEATHER_MAINS[condition].toLowerCase(Locale.US))
+                    .append("\",\"icon\":\"01d\"}]")
+                    .append(",\"speed\":").append(format(random.nextDouble() * 12))
+                    .append(",\"deg\":").append(random.nextInt(360))
+                    .append(",\"clouds\":").append(random.nextInt(101));
+
+            appendPadding(json, paddingPerDay);
+            json.append('}');
+        }
+
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * @param location     The q parameter of the request, or "lat,lon" for coordinate requests
+     * @param latitude     The latitude to report for the city
+     * @param longitude    The longitude to report for the city
+     * @param periods      The number of three hour periods in the forecast
+     * @param paddingBytes Roughly how many bytes of fields the app doesn't read to add, spread
+     *                     over the periods, to make the payload bigger
+     * @param seed         Seeds the random weather. The same seed gives the same forecast.
+     * @param startSeconds The time of the first period, in seconds since the epoch
+     * @return The three-hourly forecast JSON
+     */
+    static String generateHourly(String location, double latitude, double longitude,
+            int periods, int paddingBytes, long seed, long startSeconds) {
+        Random random = new Random(seed * 31 + location.hashCode());
+
+        StringBuilder json = new StringBuilder(512 + periods * 360 + paddingBytes);
+        appendHeader(json, location, latitude, longitude, periods);
+
+        int paddingPerPeriod = periods == 0 ? 0 : paddingBytes / periods;
+        double temperature = 5 + random.nextDouble() * 20;
+
+        for (int period = 0; period < periods; period++) {
+            if (period > 0) {
+                json.append(',');
+            }
+
+            /* A random walk, so that one period's weather follows on from the last one's */
+            temperature += random.nextGaussian();
+            double low = temperature - random.nextDouble();
+            double high = temperature + random.nextDouble();
+            int condition = random.nextInt(WEATHER_IDS.length);
+            long time = startSeconds + period * PERIOD_IN_SECONDS;
+
+            json.append("{\"dt\":").append(time)
+                    .append(",\"main\":{\"temp\":").append(format(temperature))
+                    .append(",\"temp_min\":").append(format(low))
+                    .append(",\"temp_max\":").append(format(high))
+                    .append(",\"pressure\":").append(format(990 + random.nextDouble() * 40))
+                    .append(",\"sea_level\":").append(format(1000 + random.nextDouble() * 40))
+                    .append(",\"humidity\":").append(20 + random.nextInt(80))
+                    .append(",\"temp_kf\":0}")
+                    .append(",\"weather\":[{\"id\":").append(WEATHER_IDS[condition])
+                    .append(",\"main\":\"").append(WEATHER_MAINS[condition])
+                    .append("\",\"description\":\"").append(
+                            WEATHER_MAINS[condition].toLowerCase(Locale.US))
+                    .append("\",\"icon\":\"01d\"}]")
+                    .append(",\"clouds\":{\"all\":").append(random.nextInt(101))
+                    .append("},\"wind\":{\"speed\":").append(format(random.nextDouble() * 12))
+                    .append(",\"deg\":").append(format(random.nextDouble() * 360))
+                    .append("},\"dt_txt\":\"").append(formatTime(time)).append('"');
+
+            appendPadding(json, paddingPerPeriod);
+            json.append('}');
+        }
+
+        json.append("]}");
+        return json.toString();
+    }
+
+    private static void appendHeader(StringBuilder json, String location, double latitude,
+            double longitude, int count) {
+        json.append("{\"city\":{\"id\":").append(Math.abs(location.hashCode()))
+                .append(",\"name\":\"").append(escape(location))
+                .append("\",\"coord\":{\"lon\":").append(format(longitude))
+                .append(",\"lat\":").append(format(latitude))
+                .append("},\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0,\"cnt\":").append(count)
+                .append(",\"list\":[");
+    }
+
+    private static void appendPadding(StringBuilder json, int paddingBytes) {
+        if (paddingBytes > 0) {
+            json.append(",\"padding\":\"");
+            for (int i = 0; i < paddingBytes; i++) {
+                json.append((char) ('a' + i % 26));
+            }
+            json.append('"');
+        }
+    }
+
+    /* Formats a time the way dt_txt does, as "2017-02-16 12:00:00" in UTC */
+    private static String formatTime(long seconds) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(seconds * 1000));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
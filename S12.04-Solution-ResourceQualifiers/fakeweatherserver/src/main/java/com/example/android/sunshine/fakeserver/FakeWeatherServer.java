@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.fakeserver;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A stand-in for the Sunshine weather server that runs on a development machine, so the whole
+ * fetch, parse and insert pipeline can be exercised and load tested without network access.
+ * It answers /weather and /staticweather with forecast JSON in the shape OpenWeatherJsonUtils
+ * expects, and /hourly with a three-hourly forecast in the shape OpenWeatherHourlyJsonUtils
+ * expects, for either a q or a lat/lon query.
+ * <p>
+ * Run it with
+ * <pre>
+ *     ./gradlew :fakeweatherserver:run -Pargs="--port=8080 --latency-ms=200 --error-rate=0.1"
+ * </pre>
+ * and point the app at it with
+ * <pre>
+ *     ./gradlew :app:installDebug -PforecastBaseUrl=http://10.0.2.2:8080/weather
+ * </pre>
+ * adding -PhourlyForecastBaseUrl=http://10.0.2.2:8080/hourly to fetch the hourly forecast too.
+ * (10.0.2.2 is the development machine as seen from the emulator.)
+ * <p>
+ * Knobs, all optional:
+ * <ul>
+ * <li>--port: the port to listen on (8080)</li>
+ * <li>--days: the number of days in every forecast, instead of the request's cnt (cnt, or 14).
+ * An hourly forecast has eight periods for each day.</li>
+ * <li>--padding-bytes: extra bytes of fields the app ignores, to make payloads bigger (0)</li>
+ * <li>--latency-ms: how long to wait before answering each request (0)</li>
+ * <li>--error-rate: the fraction of requests, 0 to 1, answered with an error (0)</li>
+ * <li>--error-status: the status code of those errors (503)</li>
+ * <li>--conditional: send ETag/Last-Modified and answer matching requests with 304 (true)</li>
+ * <li>--change-every-ms: how often the forecast for a location changes, 0 for once a day (0)</li>
+ * <li>--max-age: the Cache-Control max-age to send, in seconds, 0 for no-cache (0)</li>
+ * <li>--gzip: compress responses for clients that accept gzip (true)</li>
+ * <li>--seed: seeds the random weather, so runs can be repeated exactly (0)</li>
+ * </ul>
+ */
+public class FakeWeatherServer {
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    private static final int DEFAULT_DAYS = 14;
+    private static final int PERIODS_PER_DAY = 8;
+
+    /* Where a location query puts the city if the request didn't give coordinates */
+    private static final double DEFAULT_LATITUDE = 37.4220;
+    private static final double DEFAULT_LONGITUDE = -122.0841;
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final Random mRandom = new Random();
+
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mNotModifiedCount = new AtomicLong();
+    private final AtomicLong mErrorCount = new AtomicLong();
+
+    private volatile int mDays;
+    private volatile int mPaddingBytes;
+    private volatile long mLatencyMillis;
+    private volatile double mErrorRate;
+    private volatile int mErrorStatus = 503;
+    private volatile boolean mConditional = true;
+    private volatile long mChangeEveryMillis;
+    private volatile int mMaxAgeSeconds;
+    private volatile boolean mGzip = true;
+    private volatile long mSeed;
+
+    /**
+     * Creates a server listening on the given port. Call {@link #start()} to start answering
+     * requests.
+     *
+     * @param port The port to listen on, or 0 for any free port
+     * @throws IOException If the port can't be bound
+     */
+    public FakeWeatherServer(int port) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(port), 0);
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+
+        HttpHandler handler = new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        };
+        mServer.createContext("/weather", handler);
+        mServer.createContext("/staticweather", handler);
+        mServer.createContext("/hourly", handler);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+
+        FakeWeatherServer server = new FakeWeatherServer(getInt(options, "port", 8080))
+                .setDays(getInt(options, "days", 0))
+                .setPaddingBytes(getInt(options, "padding-bytes", 0))
+                .setLatencyMillis(getInt(options, "latency-ms", 0))
+                .setErrorRate(Double.parseDouble(get(options, "error-rate", "0")))
+                .setErrorStatus(getInt(options, "error-status", 503))
+                .setConditional(Boolean.parseBoolean(get(options, "conditional", "true")))
+                .setChangeEveryMillis(getInt(options, "change-every-ms", 0))
+                .setMaxAgeSeconds(getInt(options, "max-age", 0))
+                .setGzip(Boolean.parseBoolean(get(options, "gzip", "true")))
+                .setSeed(Long.parseLong(get(options, "seed", "0")));
+
+        if (!options.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + options.keySet());
+        }
+
+        server.start();
+        System.out.println("Serving fake forecasts at http://localhost:" + server.getPort()
+                + "/weather");
+    }
+
+    public void start() {
+        mServer.start();
+    }
+
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    public int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    /**
+     * @return The number of requests received so far, including errors and 304s
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return The number of requests answered with 304 Not Modified so far
+     */
+    public long getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    /**
+     * @return The number of requests answered with an injected error so far
+     */
+    public long getErrorCount() {
+        return mErrorCount.get();
+    }
+
+    /* Sets the number of days in every forecast, or 0 to use the request's cnt parameter */
+    public FakeWeatherServer setDays(int days) {
+        mDays = days;
+        return this;
+    }
+
+    public FakeWeatherServer setPaddingBytes(int paddingBytes) {
+        mPaddingBytes = paddingBytes;
+        return this;
+    }
+
+    public FakeWeatherServer setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+        return this;
+    }
+
+    /* Sets the fraction of requests, from 0 to 1, that are answered with the error status */
+    public FakeWeatherServer setErrorRate(double errorRate) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("errorRate must be between 0 and 1: " + errorRate);
+        }
+        mErrorRate = errorRate;
+        return this;
+    }
+
+    public FakeWeatherServer setErrorStatus(int errorStatus) {
+        mErrorStatus = errorStatus;
+        return this;
+    }
+
+    /* Sets whether validators are sent and conditional requests are answered with 304 */
+    public FakeWeatherServer setConditional(boolean conditional) {
+        mConditional = conditional;
+        return this;
+    }
+
+    /* Sets how often each location's forecast changes, or 0 for once a day */
+    public FakeWeatherServer setChangeEveryMillis(long changeEveryMillis) {
+        mChangeEveryMillis = changeEveryMillis;
+        return this;
+    }
+
+    /* Sets the Cache-Control max-age to send, or 0 to tell clients not to cache */
+    public FakeWeatherServer setMaxAgeSeconds(int maxAgeSeconds) {
+        mMaxAgeSeconds = maxAgeSeconds;
+        return this;
+    }
+
+    public FakeWeatherServer setGzip(boolean gzip) {
+        mGzip = gzip;
+        return this;
+    }
+
+    public FakeWeatherServer setSeed(long seed) {
+        mSeed = seed;
+        return this;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        mRequestCount.incrementAndGet();
+
+        if (mLatencyMillis > 0) {
+            try {
+                Thread.sleep(mLatencyMillis);
+            } catch (InterruptedException e) {
+                /* The server is shutting down */
+                return;
+            }
+        }
+
+        Headers responseHeaders = exchange.getResponseHeaders();
+
+        double errorRate = mErrorRate;
+        boolean fail;
+        synchronized (mRandom) {
+            fail = errorRate > 0 && mRandom.nextDouble() < errorRate;
+        }
+        if (fail) {
+            mErrorCount.incrementAndGet();
+            responseHeaders.set("Retry-After", "1");
+            send(exchange, mErrorStatus,
+                    "{\"cod\":\"" + mErrorStatus + "\",\"message\":\"Injected error\"}");
+            return;
+        }
+
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        double latitude = DEFAULT_LATITUDE;
+        double longitude = DEFAULT_LONGITUDE;
+        String location = query.get("q");
+        try {
+            if (query.containsKey("lat") && query.containsKey("lon")) {
+                latitude = Double.parseDouble(query.get("lat"));
+                longitude = Double.parseDouble(query.get("lon"));
+                location = query.get("lat") + "," + query.get("lon");
+            }
+        } catch (NumberFormatException e) {
+            location = null;
+        }
+        if (location == null) {
+            send(exchange, 404, "{\"cod\":\"404\",\"message\":\"city not found\"}");
+            return;
+        }
+
+        boolean hourly = exchange.getRequestURI().getPath().startsWith("/hourly");
+
+        /* For an hourly forecast, cnt is the number of periods rather than of days */
+        int count = mDays * (hourly ? PERIODS_PER_DAY : 1);
+        if (count <= 0) {
+            count = DEFAULT_DAYS * (hourly ? PERIODS_PER_DAY : 1);
+            if (query.containsKey("cnt")) {
+                try {
+                    count = Integer.parseInt(query.get("cnt"));
+                } catch (NumberFormatException e) {
+                    /* Fall back to the default */
+                }
+            }
+        }
+
+        /*
+         * The forecast only changes when its version does, so repeated requests within a version
+         * get identical bytes and a matching ETag.
+         */
+        long now = System.currentTimeMillis();
+        long today = now - now % DAY_IN_MILLIS;
+        long changeEveryMillis = mChangeEveryMillis;
+        long versionStart = changeEveryMillis > 0 ? now - now % changeEveryMillis : today;
+
+        String json = hourly
+                ? FakeForecastGenerator.generateHourly(location, latitude, longitude, count,
+                        mPaddingBytes, mSeed ^ versionStart, today / 1000)
+                : FakeForecastGenerator.generate(location, latitude, longitude, count,
+                        mPaddingBytes, mSeed ^ versionStart, today / 1000);
+
+        if (mMaxAgeSeconds > 0) {
+            responseHeaders.set("Cache-Control", "max-age=" + mMaxAgeSeconds);
+        } else {
+            responseHeaders.set("Cache-Control", "no-cache");
+        }
+
+        if (mConditional) {
+            String eTag = "\"" + Integer.toHexString(json.hashCode()) + "-"
+                    + Integer.toHexString(json.length()) + "\"";
+            responseHeaders.set("ETag", eTag);
+            responseHeaders.set("Last-Modified", formatHttpDate(versionStart));
+
+            if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                mNotModifiedCount.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+
+        send(exchange, 200, json);
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(CHARSET);
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (mGzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(bytes);
+            gzip.close();
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery)
+            throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(parameter.substring(0, equals), CHARSET),
+                        URLDecoder.decode(parameter.substring(equals + 1), CHARSET));
+            }
+        }
+        return query;
+    }
+
+    private static String formatHttpDate(long millis) {
+        SimpleDateFormat format =
+                new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    private static String get(Map<String, String> options, String name, String defaultValue) {
+        String value = options.remove(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static int getInt(Map<String, String> options, String name, int defaultValue) {
+        return Integer.parseInt(get(options, name, Integer.toString(defaultValue)));
+    }
+}